@@ -0,0 +1,323 @@
+/*
+ * Copyright (C) 2017-2018 Manbang Group
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.wlqq.phantom.communication.compiler;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.AnnotationMirror;
+import javax.lang.model.element.AnnotationValue;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.element.VariableElement;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.util.Elements;
+import javax.lang.model.util.Types;
+import javax.tools.Diagnostic;
+
+/**
+ * 为使用 {@code @PhantomService} 注解的服务类生成分派器 {@code <服务类>_PhantomDispatcher}，
+ * 按 {@code @RemoteMethod} 方法名直接调用服务方法，避免反射查找及调用
+ * <p>
+ * 生成的分派器与反射调用的匹配规则一致：实参个数相同（最后一个参数为 Object[] 时不少于固定参数个数），
+ * 各实参为 null 或是对应参数类型（基本类型为其包装类型）的实例。以下方法不生成分派代码，调用时回退到反射：
+ * <ul>
+ * <li>private 方法</li>
+ * <li>有 char 参数的方法（反射调用不匹配 Character 实参）</li>
+ * <li>多个方法使用同一个远程方法名（反射调用的匹配顺序取决于 getDeclaredMethods 的顺序）</li>
+ * </ul>
+ * private 服务类（或外部类为 private）无法在同一个包中访问，不生成分派器
+ */
+public class PhantomServiceProcessor extends AbstractProcessor {
+    private static final String PHANTOM_SERVICE = "com.wlqq.phantom.communication.PhantomService";
+    private static final String REMOTE_METHOD = "com.wlqq.phantom.communication.RemoteMethod";
+    private static final String SERVICE_DISPATCHER = "com.wlqq.phantom.communication.ServiceDispatcher";
+    private static final String METHOD_NOT_FOUND_EXCEPTION = "com.wlqq.phantom.communication.MethodNotFoundException";
+    private static final String INVOCATION_TARGET_EXCEPTION = "java.lang.reflect.InvocationTargetException";
+    private static final String DISPATCHER_SUFFIX = "_PhantomDispatcher";
+    private static final String OBJECT_ARRAY = "java.lang.Object[]";
+    private static final String INDENT = "    ";
+
+    private static final Map<TypeKind, String> BOXED_TYPES = new HashMap<>();
+
+    static {
+        BOXED_TYPES.put(TypeKind.BOOLEAN, "java.lang.Boolean");
+        BOXED_TYPES.put(TypeKind.BYTE, "java.lang.Byte");
+        BOXED_TYPES.put(TypeKind.SHORT, "java.lang.Short");
+        BOXED_TYPES.put(TypeKind.INT, "java.lang.Integer");
+        BOXED_TYPES.put(TypeKind.LONG, "java.lang.Long");
+        BOXED_TYPES.put(TypeKind.FLOAT, "java.lang.Float");
+        BOXED_TYPES.put(TypeKind.DOUBLE, "java.lang.Double");
+    }
+
+    @Override
+    public Set<String> getSupportedAnnotationTypes() {
+        return Collections.singleton(PHANTOM_SERVICE);
+    }
+
+    @Override
+    public SourceVersion getSupportedSourceVersion() {
+        return SourceVersion.latestSupported();
+    }
+
+    @Override
+    public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
+        final TypeElement annotation = processingEnv.getElementUtils().getTypeElement(PHANTOM_SERVICE);
+        if (annotation == null) {
+            return false;
+        }
+
+        for (Element element : roundEnv.getElementsAnnotatedWith(annotation)) {
+            if (element.getKind() != ElementKind.CLASS) {
+                continue;
+            }
+
+            final TypeElement serviceClass = (TypeElement) element;
+            if (!isAccessible(serviceClass)) {
+                processingEnv.getMessager().printMessage(Diagnostic.Kind.NOTE,
+                        "private PhantomService, skip generating dispatcher", serviceClass);
+                continue;
+            }
+
+            try {
+                generateDispatcher(serviceClass);
+            } catch (IOException e) {
+                processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR,
+                        "generate dispatcher error: " + e.getMessage(), serviceClass);
+            }
+        }
+        return false;
+    }
+
+    private static boolean isAccessible(TypeElement serviceClass) {
+        Element element = serviceClass;
+        while (element != null && (element.getKind().isClass() || element.getKind().isInterface())) {
+            if (element.getModifiers().contains(Modifier.PRIVATE)) {
+                return false;
+            }
+            element = element.getEnclosingElement();
+        }
+        return true;
+    }
+
+    private void generateDispatcher(TypeElement serviceClass) throws IOException {
+        final Map<String, List<ExecutableElement>> remoteMethods = new LinkedHashMap<>();
+        for (Element element : serviceClass.getEnclosedElements()) {
+            if (element.getKind() != ElementKind.METHOD) {
+                continue;
+            }
+
+            final String remoteName = getRemoteMethodName(element);
+            if (remoteName == null) {
+                continue;
+            }
+
+            List<ExecutableElement> methods = remoteMethods.get(remoteName);
+            if (methods == null) {
+                methods = new ArrayList<>(1);
+                remoteMethods.put(remoteName, methods);
+            }
+            methods.add((ExecutableElement) element);
+        }
+
+        final Elements elements = processingEnv.getElementUtils();
+        final Types types = processingEnv.getTypeUtils();
+        final String serviceType = types.erasure(serviceClass.asType()).toString();
+        final StringBuilder cases = new StringBuilder();
+        boolean hasVarArgs = false;
+        for (Map.Entry<String, List<ExecutableElement>> entry : remoteMethods.entrySet()) {
+            if (entry.getValue().size() != 1) {
+                continue;
+            }
+
+            final ExecutableElement method = entry.getValue().get(0);
+            if (!isDispatchable(method)) {
+                continue;
+            }
+
+            cases.append(INDENT).append(INDENT).append(INDENT).append("case ")
+                    .append(elements.getConstantExpression(entry.getKey())).append(":\n");
+            hasVarArgs |= appendInvocation(cases, serviceType, method);
+            cases.append(INDENT).append(INDENT).append(INDENT).append(INDENT).append("break;\n");
+        }
+
+        if (cases.length() == 0) {
+            return;
+        }
+
+        final String packageName = elements.getPackageOf(serviceClass).getQualifiedName().toString();
+        final String binaryName = elements.getBinaryName(serviceClass).toString();
+        final String simpleName = (packageName.isEmpty() ? binaryName : binaryName.substring(packageName.length() + 1))
+                + DISPATCHER_SUFFIX;
+        final String qualifiedName = packageName.isEmpty() ? simpleName : packageName + "." + simpleName;
+
+        final StringBuilder source = new StringBuilder();
+        source.append("// Generated by ").append(PhantomServiceProcessor.class.getName()).append(". Do not modify!\n");
+        if (!packageName.isEmpty()) {
+            source.append("package ").append(packageName).append(";\n\n");
+        }
+        source.append("/**\n * {@link ").append(serviceType).append("} 的分派器\n */\n");
+        source.append("public final class ").append(simpleName).append("\n")
+                .append(INDENT).append(INDENT).append("implements ").append(SERVICE_DISPATCHER)
+                .append("<").append(serviceType).append("> {\n");
+        source.append(INDENT).append("@java.lang.Override\n");
+        source.append(INDENT).append("@java.lang.SuppressWarnings({\"unchecked\", \"rawtypes\"})\n");
+        source.append(INDENT).append("public java.lang.Object call(").append(serviceType)
+                .append(" service, java.lang.String methodName, java.lang.Object... args)\n")
+                .append(INDENT).append(INDENT).append(INDENT).append("throws ").append(METHOD_NOT_FOUND_EXCEPTION)
+                .append(", ").append(INVOCATION_TARGET_EXCEPTION).append(" {\n");
+        source.append(INDENT).append(INDENT).append("switch (methodName) {\n");
+        source.append(cases);
+        source.append(INDENT).append(INDENT).append(INDENT).append("default:\n");
+        source.append(INDENT).append(INDENT).append(INDENT).append(INDENT).append("break;\n");
+        source.append(INDENT).append(INDENT).append("}\n");
+        source.append(INDENT).append(INDENT).append("throw new ").append(METHOD_NOT_FOUND_EXCEPTION)
+                .append("(methodName);\n");
+        source.append(INDENT).append("}\n");
+        if (hasVarArgs) {
+            source.append("\n");
+            appendVarArgsMethod(source);
+        }
+        source.append("}\n");
+
+        final Writer writer = processingEnv.getFiler().createSourceFile(qualifiedName, serviceClass).openWriter();
+        try {
+            writer.write(source.toString());
+        } finally {
+            writer.close();
+        }
+    }
+
+    private static String getRemoteMethodName(Element method) {
+        for (AnnotationMirror mirror : method.getAnnotationMirrors()) {
+            final TypeElement annotationType = (TypeElement) mirror.getAnnotationType().asElement();
+            if (!REMOTE_METHOD.equals(annotationType.getQualifiedName().toString())) {
+                continue;
+            }
+
+            for (Map.Entry<? extends ExecutableElement, ? extends AnnotationValue> entry
+                    : mirror.getElementValues().entrySet()) {
+                if ("name".equals(entry.getKey().getSimpleName().toString())) {
+                    return (String) entry.getValue().getValue();
+                }
+            }
+        }
+        return null;
+    }
+
+    private static boolean isDispatchable(ExecutableElement method) {
+        if (method.getModifiers().contains(Modifier.PRIVATE)) {
+            return false;
+        }
+
+        for (VariableElement parameter : method.getParameters()) {
+            if (parameter.asType().getKind() == TypeKind.CHAR) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 生成一个方法的匹配条件及调用代码，服务方法抛出的异常包装为 InvocationTargetException
+     *
+     * @return 方法最后一个参数是否为 Object[] 可变参数
+     */
+    private boolean appendInvocation(StringBuilder out, String serviceType, ExecutableElement method) {
+        final Types types = processingEnv.getTypeUtils();
+        final List<? extends VariableElement> parameters = method.getParameters();
+        final boolean varArgs = !parameters.isEmpty()
+                && OBJECT_ARRAY.equals(types.erasure(parameters.get(parameters.size() - 1).asType()).toString());
+        final int fixedArgsLen = varArgs ? parameters.size() - 1 : parameters.size();
+
+        final StringBuilder condition = new StringBuilder();
+        condition.append(varArgs ? "args.length >= " : "args.length == ").append(fixedArgsLen);
+        final StringBuilder arguments = new StringBuilder();
+        for (int i = 0; i < fixedArgsLen; i++) {
+            final TypeMirror type = parameters.get(i).asType();
+            final String boxed = BOXED_TYPES.get(type.getKind());
+            if (boxed != null) {
+                // 基本类型参数不接受 null，交由反射调用处理
+                condition.append(" && args[").append(i).append("] instanceof ").append(boxed);
+                arguments.append("(").append(boxed).append(") args[").append(i).append("]");
+            } else {
+                final String erasure = types.erasure(type).toString();
+                condition.append(" && (args[").append(i).append("] == null || args[").append(i)
+                        .append("] instanceof ").append(erasure).append(")");
+                arguments.append("(").append(erasure).append(") args[").append(i).append("]");
+            }
+            if (i < parameters.size() - 1) {
+                arguments.append(", ");
+            }
+        }
+        if (varArgs) {
+            arguments.append("varArgs(").append(fixedArgsLen).append(", args)");
+        }
+
+        final String receiver = method.getModifiers().contains(Modifier.STATIC) ? serviceType : "service";
+        final String invocation = receiver + "." + method.getSimpleName() + "(" + arguments + ")";
+        final String indent = INDENT + INDENT + INDENT + INDENT;
+        out.append(indent).append("if (").append(condition).append(") {\n");
+        out.append(indent).append(INDENT).append("try {\n");
+        if (method.getReturnType().getKind() == TypeKind.VOID) {
+            out.append(indent).append(INDENT).append(INDENT).append(invocation).append(";\n");
+            out.append(indent).append(INDENT).append(INDENT).append("return null;\n");
+        } else {
+            out.append(indent).append(INDENT).append(INDENT).append("return ").append(invocation).append(";\n");
+        }
+        out.append(indent).append(INDENT).append("} catch (java.lang.Throwable e) {\n");
+        out.append(indent).append(INDENT).append(INDENT).append("throw new ").append(INVOCATION_TARGET_EXCEPTION)
+                .append("(e);\n");
+        out.append(indent).append(INDENT).append("}\n");
+        out.append(indent).append("}\n");
+        return varArgs;
+    }
+
+    /**
+     * 生成可变参数的打包方法，与反射调用的打包方式一致：可变参数位置上只有一个 Object[] 实参时直接使用该数组
+     */
+    private static void appendVarArgsMethod(StringBuilder out) {
+        out.append(INDENT)
+                .append("private static java.lang.Object[] varArgs(int fixedArgsLen, java.lang.Object[] args) {\n");
+        out.append(INDENT).append(INDENT).append("if (args.length > fixedArgsLen && args[fixedArgsLen] != null\n")
+                .append(INDENT).append(INDENT).append(INDENT).append(INDENT)
+                .append("&& args[fixedArgsLen].getClass() == java.lang.Object[].class) {\n");
+        out.append(INDENT).append(INDENT).append(INDENT).append("return (java.lang.Object[]) args[fixedArgsLen];\n");
+        out.append(INDENT).append(INDENT).append("}\n");
+        out.append(INDENT).append(INDENT)
+                .append("final java.lang.Object[] varArgs = new java.lang.Object[args.length - fixedArgsLen];\n");
+        out.append(INDENT).append(INDENT)
+                .append("java.lang.System.arraycopy(args, fixedArgsLen, varArgs, 0, varArgs.length);\n");
+        out.append(INDENT).append(INDENT).append("return varArgs;\n");
+        out.append(INDENT).append("}\n");
+    }
+}
@@ -0,0 +1,217 @@
+/*
+ * Copyright (C) 2017-2018 Manbang Group
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.wlqq.phantom.communication.compiler;
+
+import com.wlqq.phantom.communication.IService;
+import com.wlqq.phantom.communication.MethodNotFoundException;
+import com.wlqq.phantom.communication.PhantomServiceManager;
+import com.wlqq.phantom.communication.ServiceDispatcher;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.lang.reflect.InvocationTargetException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.Arrays;
+import java.util.Collections;
+
+import javax.tools.DiagnosticCollector;
+import javax.tools.JavaCompiler;
+import javax.tools.JavaFileObject;
+import javax.tools.StandardJavaFileManager;
+import javax.tools.ToolProvider;
+
+
+public class PhantomServiceProcessorTest {
+    private static final String SERVICE_SOURCE = ""
+            + "package com.example;\n"
+            + "\n"
+            + "import com.wlqq.phantom.communication.PhantomService;\n"
+            + "import com.wlqq.phantom.communication.RemoteMethod;\n"
+            + "\n"
+            + "@PhantomService(name = \"compiler_service\", version = 1)\n"
+            + "public class TestService {\n"
+            + "    @RemoteMethod(name = \"caller\")\n"
+            + "    public String caller() {\n"
+            + "        return new Throwable().getStackTrace()[1].getClassName();\n"
+            + "    }\n"
+            + "\n"
+            + "    @RemoteMethod(name = \"add\")\n"
+            + "    public int add(int a, int b) {\n"
+            + "        return a + b;\n"
+            + "    }\n"
+            + "\n"
+            + "    @RemoteMethod(name = \"join\")\n"
+            + "    public String join(String prefix, Object... args) {\n"
+            + "        return prefix + args.length;\n"
+            + "    }\n"
+            + "\n"
+            + "    @RemoteMethod(name = \"fail\")\n"
+            + "    public void fail() throws java.io.IOException {\n"
+            + "        throw new java.io.IOException(\"fail\");\n"
+            + "    }\n"
+            + "\n"
+            + "    @RemoteMethod(name = \"overload\")\n"
+            + "    public String overload(String s) {\n"
+            + "        return \"string\";\n"
+            + "    }\n"
+            + "\n"
+            + "    @RemoteMethod(name = \"overload\")\n"
+            + "    public String overload(Integer i) {\n"
+            + "        return \"integer\";\n"
+            + "    }\n"
+            + "\n"
+            + "    @PhantomService(name = \"compiler_nested_service\", version = 1)\n"
+            + "    public static class NestedService {\n"
+            + "        @RemoteMethod(name = \"caller\")\n"
+            + "        public String caller() {\n"
+            + "            return new Throwable().getStackTrace()[1].getClassName();\n"
+            + "        }\n"
+            + "    }\n"
+            + "\n"
+            + "    @PhantomService(name = \"compiler_private_service\", version = 1)\n"
+            + "    private static class PrivateService {\n"
+            + "        @RemoteMethod(name = \"caller\")\n"
+            + "        public String caller() {\n"
+            + "            return null;\n"
+            + "        }\n"
+            + "    }\n"
+            + "}\n";
+
+    private ClassLoader mClassLoader;
+
+    @BeforeClass
+    public static void classSetup() {
+        PhantomServiceManager.init("com.wlqq", "5.8.1", 5080100, null, 0);
+    }
+
+    @Before
+    public void setup() throws Exception {
+        mClassLoader = compile(SERVICE_SOURCE, "com/example/TestService.java");
+        PhantomServiceManager.registerService(newInstance("com.example.TestService"));
+        PhantomServiceManager.registerService(newInstance("com.example.TestService$NestedService"));
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        PhantomServiceManager.unregisterAllService();
+    }
+
+    @Test
+    public void generatedDispatcher_isPreferred() throws Exception {
+        final IService service = PhantomServiceManager.getService("compiler_service");
+        Assert.assertEquals("com.example.TestService_PhantomDispatcher", service.call("caller"));
+        Assert.assertEquals(3, service.call("add", 1, 2));
+        Assert.assertEquals("a2", service.call("join", "a", 1, 2));
+        Assert.assertEquals("a3", service.call("join", "a", new Object[]{1, 2, 3}));
+        // 服务方法抛出异常时与反射调用一致，返回 null
+        Assert.assertNull(service.call("fail"));
+        // 重载方法回退到反射调用
+        Assert.assertEquals("string", service.call("overload", "s"));
+        Assert.assertEquals("integer", service.call("overload", 1));
+
+        final IService nestedService = PhantomServiceManager.getService("compiler_nested_service");
+        Assert.assertEquals("com.example.TestService$NestedService_PhantomDispatcher",
+                nestedService.call("caller"));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void generatedDispatcher_matchesReflection() throws Exception {
+        final Object service = newInstance("com.example.TestService");
+        final ServiceDispatcher<Object> dispatcher = (ServiceDispatcher<Object>) newInstance(
+                "com.example.TestService_PhantomDispatcher");
+
+        Assert.assertEquals(3, dispatcher.call(service, "add", 1, 2));
+        assertMethodNotFound(dispatcher, service, "add", 1);
+        // 基本类型参数的 null 实参及不匹配的类型交由反射调用处理
+        assertMethodNotFound(dispatcher, service, "add", 1, null);
+        assertMethodNotFound(dispatcher, service, "add", 1, 2L);
+        assertMethodNotFound(dispatcher, service, "overload", "s");
+        assertMethodNotFound(dispatcher, service, "not_exists");
+        Assert.assertEquals("null0", dispatcher.call(service, "join", new Object[]{null}));
+
+        try {
+            dispatcher.call(service, "fail");
+            Assert.fail("InvocationTargetException expected");
+        } catch (InvocationTargetException e) {
+            Assert.assertTrue(e.getCause() instanceof IOException);
+        }
+    }
+
+    @Test
+    public void privateService_noDispatcher() throws Exception {
+        try {
+            mClassLoader.loadClass("com.example.TestService$PrivateService_PhantomDispatcher");
+            Assert.fail("no dispatcher expected for private service");
+        } catch (ClassNotFoundException e) {
+            // expected
+        }
+    }
+
+    private static void assertMethodNotFound(ServiceDispatcher<Object> dispatcher, Object service,
+            String methodName, Object... args) throws Exception {
+        try {
+            dispatcher.call(service, methodName, args);
+            Assert.fail("MethodNotFoundException expected: " + methodName + Arrays.toString(args));
+        } catch (MethodNotFoundException e) {
+            // expected
+        }
+    }
+
+    private Object newInstance(String className) throws Exception {
+        return mClassLoader.loadClass(className).newInstance();
+    }
+
+    private static ClassLoader compile(String source, String path) throws IOException {
+        final File dir = File.createTempFile("phantom-compiler", "");
+        Assert.assertTrue(dir.delete() && dir.mkdirs());
+        final File sourceFile = new File(dir, path);
+        Assert.assertTrue(sourceFile.getParentFile().mkdirs());
+        final Writer writer = new OutputStreamWriter(new FileOutputStream(sourceFile), "UTF-8");
+        try {
+            writer.write(source);
+        } finally {
+            writer.close();
+        }
+
+        final JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+        final StandardJavaFileManager fileManager = compiler.getStandardFileManager(null, null, null);
+        try {
+            final Iterable<? extends JavaFileObject> units = fileManager.getJavaFileObjects(sourceFile);
+            final DiagnosticCollector<JavaFileObject> diagnostics = new DiagnosticCollector<>();
+            final JavaCompiler.CompilationTask task = compiler.getTask(null, fileManager, diagnostics,
+                    Arrays.asList("-d", dir.getPath(), "-classpath", System.getProperty("java.class.path"),
+                            "-encoding", "UTF-8"), null, units);
+            task.setProcessors(Collections.singletonList(new PhantomServiceProcessor()));
+            Assert.assertTrue(diagnostics.getDiagnostics().toString(), task.call());
+        } finally {
+            fileManager.close();
+        }
+        return new URLClassLoader(new URL[]{dir.toURI().toURL()}, PhantomServiceProcessorTest.class.getClassLoader());
+    }
+}
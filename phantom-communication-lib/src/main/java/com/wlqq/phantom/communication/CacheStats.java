@@ -0,0 +1,56 @@
+/*
+ * Copyright (C) 2017-2018 Manbang Group
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.wlqq.phantom.communication;
+
+/**
+ * 服务方法返回值缓存的命中统计
+ *
+ * @see CacheableResult
+ * @see PhantomServiceManager#getCacheStats(IService)
+ */
+public final class CacheStats {
+    private final long mHitCount;
+    private final long mMissCount;
+
+    CacheStats(long hitCount, long missCount) {
+        mHitCount = hitCount;
+        mMissCount = missCount;
+    }
+
+    /**
+     * 获取命中次数
+     *
+     * @return 命中次数
+     */
+    public long getHitCount() {
+        return mHitCount;
+    }
+
+    /**
+     * 获取未命中次数
+     *
+     * @return 未命中次数
+     */
+    public long getMissCount() {
+        return mMissCount;
+    }
+
+    @Override
+    public String toString() {
+        return "CacheStats{hit=" + mHitCount + ", miss=" + mMissCount + '}';
+    }
+}
@@ -0,0 +1,56 @@
+/*
+ * Copyright (C) 2017-2018 Manbang Group
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.wlqq.phantom.communication;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * 标记 {@link RemoteMethod} 方法的返回值可以缓存，适用于返回值很少变化、且没有副作用的方法（如获取配置、版本信息）
+ * <p>
+ * 通过 {@link PhantomServiceManager} 获取的服务按方法及调用参数（{@link java.util.Arrays#deepEquals(Object[], Object[])}）
+ * 缓存非 null 的返回值，服务重新注册时缓存失效；服务数据变化时可调用
+ * {@link PhantomServiceManager#invalidateCachedResults(Object, String)} 主动清除缓存
+ * <pre>{@code
+ * @CacheableResult(ttlMs = 60 * 1000, maxEntries = 4)
+ * @RemoteMethod(name = "getConfig")
+ * public String getConfig(String key) {
+ *     ...
+ * }}
+ * </pre>
+ *
+ * @see PhantomServiceManager#getCacheStats(IService)
+ */
+@Target(ElementType.METHOD)
+@Retention(RetentionPolicy.RUNTIME)
+public @interface CacheableResult {
+    /**
+     * 缓存有效期(ms)
+     *
+     * @return 小于等于 0 时永不过期，默认 0
+     */
+    long ttlMs() default 0;
+
+    /**
+     * 最多缓存的参数组合数，超出时淘汰最久未使用的结果
+     *
+     * @return 默认 16；小于等于 0 时不缓存，与没有该注解相同
+     */
+    int maxEntries() default 16;
+}
@@ -22,17 +22,22 @@ import java.lang.reflect.Method;
 import java.lang.reflect.Proxy;
 import java.util.ArrayList;
 import java.util.Collection;
-import java.util.HashMap;
-import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
 
 /**
  * 管理插件或宿主提供给其他插件/宿主调用的功能接口，提供功能模块的注册、卸载、查询和获取功能。
  */
 public class PhantomServiceManager {
 
-    // { service_category -> { service_name -> service_object } }
-    private static final HashMap<String, HashMap<String, Object>> CATEGORY_SERVICES_MAP = new HashMap<>();
+    // 保证注册、注销服务串行
+    private static final Object REGISTRY_LOCK = new Object();
+    // 已注册服务的不可变快照，注册、注销时整体替换，查询时无需加锁
+    private static volatile ServiceRegistry sRegistry = ServiceRegistry.EMPTY;
     private static String sHostPackage;
     private static String sHostVersionName;
     private static int sHostVersionCode;
@@ -130,20 +135,23 @@ public class PhantomServiceManager {
             return false;
         }
 
-        synchronized (CATEGORY_SERVICES_MAP) {
-            HashMap<String, Object> services = CATEGORY_SERVICES_MAP.get(category);
-            if (null == services) {
-                services = new HashMap<>();
-                CATEGORY_SERVICES_MAP.put(category, services);
-            }
+        synchronized (REGISTRY_LOCK) {
+            final ServiceRegistry registry = sRegistry;
+            final Map<String, ServiceModule> services = registry.getServices(category);
 
             //存在服务名称相同而类不同的情况不允许注册，服务名称和服务类都相同允许覆盖之前的服务
-            Object hasService = services.get(name);
+            final ServiceModule hasModule = null == services ? null : services.get(name);
+            final Object hasService = null == hasModule ? null : hasModule.getService();
             if (null != hasService && !hasService.getClass().getName().equals(service.getClass().getName())) {
                 return false;
             }
 
-            services.put(name, service);
+            // 重新注册时替换服务模块，之前缓存的代理对象随之失效
+            sRegistry = registry.withService(category, name, new ServiceModule(category, name, service));
+            if (null != hasService && hasService.getClass() != service.getClass()) {
+                // 同名服务类由另一个 ClassLoader 加载（如插件重新加载），移除旧类的分派表
+                ServiceDispatchTable.evict(hasService.getClass());
+            }
         }
 
         return true;
@@ -215,8 +223,13 @@ public class PhantomServiceManager {
      * @param category 功能模块所属类别，通常使用 <b>宿主/插件 包名</b>
      */
     public static void unregisterService(String category) {
-        synchronized (CATEGORY_SERVICES_MAP) {
-            CATEGORY_SERVICES_MAP.remove(category);
+        synchronized (REGISTRY_LOCK) {
+            final ServiceRegistry registry = sRegistry;
+            final Map<String, ServiceModule> services = registry.getServices(category);
+            if (null != services) {
+                sRegistry = registry.withoutCategory(category);
+                evictDispatchTables(services.values());
+            }
         }
     }
 
@@ -224,8 +237,18 @@ public class PhantomServiceManager {
      * 反注册所有服务
      */
     public static void unregisterAllService() {
-        synchronized (CATEGORY_SERVICES_MAP) {
-            CATEGORY_SERVICES_MAP.clear();
+        synchronized (REGISTRY_LOCK) {
+            final ServiceRegistry registry = sRegistry;
+            sRegistry = ServiceRegistry.EMPTY;
+            for (Map<String, ServiceModule> services : registry.getAllServices()) {
+                evictDispatchTables(services.values());
+            }
+        }
+    }
+
+    private static void evictDispatchTables(Collection<ServiceModule> modules) {
+        for (ServiceModule module : modules) {
+            ServiceDispatchTable.evict(module.getService().getClass());
         }
     }
 
@@ -236,21 +259,12 @@ public class PhantomServiceManager {
      * @return category 类别下的 service 列表
      */
     public static List<IService> getServices(String category) {
-        List<IService> services;
-
-        synchronized (CATEGORY_SERVICES_MAP) {
-            HashMap<String, Object> serviceObjectMap = CATEGORY_SERVICES_MAP.get(category);
-            if (serviceObjectMap == null) {
-                services = new ArrayList<>(0);
-            } else {
-                services = new ArrayList<>(serviceObjectMap.size());
-                for (Object serviceObject : serviceObjectMap.values()) {
-                    services.add(new ServiceModule(serviceObject));
-                }
-            }
+        final Map<String, ServiceModule> serviceModuleMap = sRegistry.getServices(category);
+        if (serviceModuleMap == null) {
+            return new ArrayList<>(0);
         }
 
-        return services;
+        return new ArrayList<IService>(serviceModuleMap.values());
     }
 
     /**
@@ -261,14 +275,13 @@ public class PhantomServiceManager {
      * @return 成功返回功能模块实例，否则返回 null
      */
     public static IService getService(String category, String name) {
-        synchronized (CATEGORY_SERVICES_MAP) {
-            final HashMap<String, Object> services = CATEGORY_SERVICES_MAP.get(category);
-            if (services == null) {
-                return null;
-            }
-
-            return new ServiceModule(services.get(name));
+        final Map<String, ServiceModule> services = sRegistry.getServices(category);
+        if (services == null) {
+            return null;
         }
+
+        final ServiceModule module = services.get(name);
+        return module == null ? ServiceModule.EMPTY : module;
     }
 
     /**
@@ -314,22 +327,12 @@ public class PhantomServiceManager {
      * @return 如何有注册，返回 true；否则返回 false
      */
     public static boolean hasService(String name) {
-        boolean res = false;
-
-        synchronized (CATEGORY_SERVICES_MAP) {
-            Collection<HashMap<String, Object>> allServices = CATEGORY_SERVICES_MAP.values();
-            Iterator<HashMap<String, Object>> iter = allServices.iterator();
-            while (iter.hasNext() && (!res)) {
-                HashMap<String, Object> services = iter.next();
-                res = services.containsKey(name);
-            }
-        }
-
-        return res;
+        return sRegistry.hasName(name);
     }
 
     /**
-     * 将功能模块 service 转换成自定义接口，方便调用。
+     * 将功能模块 service 转换成自定义接口，方便调用。通过 {@link #getService(String)} 等方法获取的功能模块，
+     * 转换为同一接口时复用同一个代理对象
      *
      * @param <T>     interface 类型
      * @param service 需要转换的功能模块
@@ -339,13 +342,160 @@ public class PhantomServiceManager {
     public static <T> T asInterface(IService service, Class<T> type) {
         T res = null;
         if (type.isInterface()) {
-            ServiceInvocationHandler handler = new ServiceInvocationHandler(service);
-            res = (T) Proxy.newProxyInstance(type.getClassLoader(),
-                    new Class[]{type, ServiceInfo.class}, handler);
+            if (service instanceof ServiceModule) {
+                res = ((ServiceModule) service).getProxy(type);
+            } else {
+                res = newProxy(service, type);
+            }
         }
         return res;
     }
 
+    /**
+     * 清除服务的方法返回值缓存，供服务在数据变化时调用
+     *
+     * @param service    已注册的服务对象
+     * @param methodName 远程方法名，见 {@link RemoteMethod#name()}；为 null 时清除该服务所有方法的缓存
+     * @see CacheableResult
+     */
+    public static void invalidateCachedResults(Object service, String methodName) {
+        if (null == service) {
+            return;
+        }
+
+        for (Map<String, ServiceModule> services : sRegistry.getAllServices()) {
+            for (ServiceModule module : services.values()) {
+                if (module.getService() == service) {
+                    module.invalidateCachedResults(methodName);
+                }
+            }
+        }
+    }
+
+    /**
+     * 获取服务方法返回值缓存的命中统计
+     *
+     * @param service 通过 {@link #getService(String)} 等方法获取的服务
+     * @return 命中统计；服务不是通过本类获取时，命中及未命中次数均为 0
+     * @see CacheableResult
+     */
+    public static CacheStats getCacheStats(IService service) {
+        if (service instanceof ServiceModule) {
+            return ((ServiceModule) service).getCacheStats();
+        }
+        return new CacheStats(0, 0);
+    }
+
+    /**
+     * 设置是否统计服务方法调用，默认不统计。统计时每次调用遍历一次调用栈以确定调用方，有一定开销
+     *
+     * @param enabled true 统计
+     * @see #getCallMetrics()
+     */
+    public static void setCallMetricsEnabled(boolean enabled) {
+        ServiceCallMonitor.setEnabled(enabled);
+    }
+
+    /**
+     * 设置服务调用监听，统计服务方法调用时（见 {@link #setCallMetricsEnabled(boolean)}）生效
+     *
+     * @param listener            监听，为 null 时取消监听
+     * @param slowCallThresholdMs 调用耗时不小于该值(ms)时通知 {@link ServiceCallListener#onSlowCall}，不大于 0 时不通知
+     */
+    public static void setServiceCallListener(ServiceCallListener listener, long slowCallThresholdMs) {
+        ServiceCallMonitor.setListener(listener, slowCallThresholdMs);
+    }
+
+    /**
+     * 获取各服务方法的调用统计，服务重新注册后继续累计
+     *
+     * @return 调用统计快照，未统计时为空列表
+     */
+    public static List<ServiceCallMetrics> getCallMetrics() {
+        return ServiceCallMonitor.snapshot();
+    }
+
+    /**
+     * 清除服务方法的调用统计
+     */
+    public static void resetCallMetrics() {
+        ServiceCallMonitor.reset();
+    }
+
+    /**
+     * 异步调用服务方法。方法声明了 {@link RemoteMethod#anyThread()} 时在 executor 中执行，否则在调用线程中同步执行；
+     * 找不到方法等异常通过返回的 {@link Future} 抛出
+     *
+     * @param service    服务
+     * @param executor   执行调用的 Executor
+     * @param methodName 方法名，见 {@link RemoteMethod#name()}
+     * @param args       调用参数列表
+     * @return 调用结果
+     */
+    public static Future<Object> callAsync(final IService service, Executor executor, final String methodName,
+            final Object... args) {
+        final FutureTask<Object> task = new FutureTask<>(new Callable<Object>() {
+            @Override
+            public Object call() throws Exception {
+                return service.call(methodName, args);
+            }
+        });
+        execute(task, executor, isAnyThread(service, methodName, args));
+        return task;
+    }
+
+    /**
+     * 批量调用服务方法，所有调用在一次任务中依次执行。所有方法都声明了 {@link RemoteMethod#anyThread()} 时在
+     * executor 中执行，否则在调用线程中同步执行；任一调用找不到方法时，后续调用不再执行，异常通过返回的 {@link Future} 抛出
+     *
+     * @param service  服务
+     * @param executor 执行调用的 Executor
+     * @param calls    调用列表
+     * @return 与调用列表顺序一致的调用结果列表
+     */
+    public static Future<List<Object>> callBatchAsync(final IService service, Executor executor,
+            final ServiceCall... calls) {
+        final FutureTask<List<Object>> task = new FutureTask<>(new Callable<List<Object>>() {
+            @Override
+            public List<Object> call() throws Exception {
+                final List<Object> results = new ArrayList<>(calls.length);
+                for (ServiceCall call : calls) {
+                    results.add(service.call(call.getMethodName(), call.getArgs()));
+                }
+                return results;
+            }
+        });
+
+        boolean anyThread = true;
+        for (ServiceCall call : calls) {
+            if (!isAnyThread(service, call.getMethodName(), call.getArgs())) {
+                anyThread = false;
+                break;
+            }
+        }
+        execute(task, executor, anyThread);
+        return task;
+    }
+
+    private static boolean isAnyThread(IService service, String methodName, Object... args) {
+        // 无法确定线程安全性的 IService 实现只在调用线程中执行
+        return service instanceof ServiceModule && ((ServiceModule) service).isAnyThread(methodName, args);
+    }
+
+    private static void execute(FutureTask<?> task, Executor executor, boolean anyThread) {
+        if (anyThread) {
+            executor.execute(task);
+        } else {
+            task.run();
+        }
+    }
+
+    static <T> T newProxy(IService service, Class<T> type) {
+        ServiceInvocationHandler handler = new ServiceInvocationHandler(service);
+        return (T) Proxy.newProxyInstance(type.getClassLoader(),
+                new Class[]{type, ServiceInfo.class}, handler);
+    }
+
     /**
      * 是否有注册指定名字的服务
      *
@@ -354,15 +504,8 @@ public class PhantomServiceManager {
      * @return 如何有注册，返回 true; 否则返回 false
      */
     public static boolean hasService(String category, String name) {
-        boolean res = false;
-
-        synchronized (CATEGORY_SERVICES_MAP) {
-            if (CATEGORY_SERVICES_MAP.containsKey(category)) {
-                res = CATEGORY_SERVICES_MAP.get(category).containsKey(name);
-            }
-        }
-
-        return res;
+        final Map<String, ServiceModule> services = sRegistry.getServices(category);
+        return null != services && services.containsKey(name);
     }
 
     private static class ServiceInvocationHandler implements InvocationHandler {
@@ -35,4 +35,13 @@ public @interface RemoteMethod {
      * @return 方法名
      */
     String name();
+
+    /**
+     * 方法是否可以在调用线程之外的线程中执行。为 false 时，通过
+     * {@link PhantomServiceManager#callAsync(IService, java.util.concurrent.Executor, String, Object...)}
+     * 等异步接口调用该方法仍在调用线程中同步执行
+     *
+     * @return 默认 false
+     */
+    boolean anyThread() default false;
 }
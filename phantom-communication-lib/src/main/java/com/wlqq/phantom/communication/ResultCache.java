@@ -0,0 +1,108 @@
+/*
+ * Copyright (C) 2017-2018 Manbang Group
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.wlqq.phantom.communication;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * 一个服务方法的返回值缓存，按调用参数缓存，容量有限，超出时淘汰最久未使用的结果
+ *
+ * @see CacheableResult
+ */
+final class ResultCache {
+    private final long mTtlNanos;
+    private final LinkedHashMap<ArgsKey, Entry> mEntries;
+
+    ResultCache(long ttlMs, final int maxEntries) {
+        mTtlNanos = ttlMs > 0 ? ttlMs * 1000000L : 0;
+        mEntries = new LinkedHashMap<ArgsKey, Entry>(Math.min(maxEntries, 16), 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<ArgsKey, Entry> eldest) {
+                return size() > maxEntries;
+            }
+        };
+    }
+
+    /**
+     * 获取缓存的返回值
+     *
+     * @param args 调用参数
+     * @return 没有缓存或缓存已过期时返回 null
+     */
+    synchronized Object get(Object[] args) {
+        final ArgsKey key = new ArgsKey(args);
+        final Entry entry = mEntries.get(key);
+        if (null == entry) {
+            return null;
+        }
+
+        if (mTtlNanos > 0 && System.nanoTime() - entry.mTime > mTtlNanos) {
+            mEntries.remove(key);
+            return null;
+        }
+        return entry.mValue;
+    }
+
+    /**
+     * 缓存返回值
+     *
+     * @param args  调用参数
+     * @param value 返回值
+     */
+    synchronized void put(Object[] args, Object value) {
+        mEntries.put(new ArgsKey(args.clone()), new Entry(value, System.nanoTime()));
+    }
+
+    /**
+     * 清除所有缓存
+     */
+    synchronized void clear() {
+        mEntries.clear();
+    }
+
+    private static final class Entry {
+        final Object mValue;
+        final long mTime;
+
+        Entry(Object value, long time) {
+            mValue = value;
+            mTime = time;
+        }
+    }
+
+    private static final class ArgsKey {
+        private final Object[] mArgs;
+        private final int mHashCode;
+
+        ArgsKey(Object[] args) {
+            mArgs = args;
+            mHashCode = Arrays.deepHashCode(args);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return this == o || (o instanceof ArgsKey && Arrays.deepEquals(mArgs, ((ArgsKey) o).mArgs));
+        }
+
+        @Override
+        public int hashCode() {
+            return mHashCode;
+        }
+    }
+}
@@ -0,0 +1,56 @@
+/*
+ * Copyright (C) 2017-2018 Manbang Group
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.wlqq.phantom.communication;
+
+/**
+ * 一次服务方法调用的描述，用于批量调用
+ *
+ * @see PhantomServiceManager#callBatchAsync(IService, java.util.concurrent.Executor, ServiceCall...)
+ */
+public final class ServiceCall {
+    private final String mMethodName;
+    private final Object[] mArgs;
+
+    /**
+     * 创建服务方法调用描述
+     *
+     * @param methodName 方法名，见 {@link RemoteMethod#name()}
+     * @param args       调用参数列表
+     */
+    public ServiceCall(String methodName, Object... args) {
+        mMethodName = methodName;
+        mArgs = null == args ? new Object[0] : args;
+    }
+
+    /**
+     * 获取方法名
+     *
+     * @return 方法名
+     */
+    public String getMethodName() {
+        return mMethodName;
+    }
+
+    /**
+     * 获取调用参数列表
+     *
+     * @return 调用参数列表
+     */
+    public Object[] getArgs() {
+        return mArgs;
+    }
+}
@@ -0,0 +1,48 @@
+/*
+ * Copyright (C) 2017-2018 Manbang Group
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.wlqq.phantom.communication;
+
+/**
+ * 服务调用监听，用于上报慢调用及调用异常
+ *
+ * @see PhantomServiceManager#setServiceCallListener(ServiceCallListener, long)
+ */
+public interface ServiceCallListener {
+    /**
+     * 服务方法调用耗时超过阈值
+     *
+     * @param category        服务类别
+     * @param serviceName     服务名
+     * @param methodName      方法名，见 {@link RemoteMethod#name()}
+     * @param durationMs      调用耗时(ms)
+     * @param callerClassName 调用方类名，无法确定时为 null
+     */
+    void onSlowCall(String category, String serviceName, String methodName, long durationMs,
+            String callerClassName);
+
+    /**
+     * 服务方法调用失败：找不到方法，或服务方法抛出异常
+     *
+     * @param category        服务类别
+     * @param serviceName     服务名
+     * @param methodName      方法名，见 {@link RemoteMethod#name()}
+     * @param error           异常
+     * @param callerClassName 调用方类名，无法确定时为 null
+     */
+    void onCallError(String category, String serviceName, String methodName, Throwable error,
+            String callerClassName);
+}
@@ -0,0 +1,155 @@
+/*
+ * Copyright (C) 2017-2018 Manbang Group
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.wlqq.phantom.communication;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * 服务方法调用统计快照
+ *
+ * @see PhantomServiceManager#getCallMetrics()
+ */
+public final class ServiceCallMetrics {
+    // 耗时分布各区间的上界(ms)
+    private static final long[] HISTOGRAM_BOUNDS_MS = {1, 5, 10, 50, 100, 500, 1000};
+
+    private final String mCategory;
+    private final String mServiceName;
+    private final String mMethodName;
+    private final long mCallCount;
+    private final long mErrorCount;
+    private final long mTotalTimeNanos;
+    private final long mMaxTimeNanos;
+    private final long[] mHistogram;
+    private final Map<String, Long> mCallerCounts;
+
+    ServiceCallMetrics(String category, String serviceName, String methodName, long callCount, long errorCount,
+            long totalTimeNanos, long maxTimeNanos, long[] histogram, Map<String, Long> callerCounts) {
+        mCategory = category;
+        mServiceName = serviceName;
+        mMethodName = methodName;
+        mCallCount = callCount;
+        mErrorCount = errorCount;
+        mTotalTimeNanos = totalTimeNanos;
+        mMaxTimeNanos = maxTimeNanos;
+        mHistogram = histogram;
+        mCallerCounts = Collections.unmodifiableMap(callerCounts);
+    }
+
+    /**
+     * 获取耗时分布各区间的上界(ms)。{@link #getHistogram()} 第 i 个元素为耗时小于第 i 个上界（且不小于前一个上界）
+     * 的调用次数，最后一个元素为耗时不小于最后一个上界的调用次数
+     *
+     * @return 各区间上界
+     */
+    public static long[] getHistogramBoundsMs() {
+        return HISTOGRAM_BOUNDS_MS.clone();
+    }
+
+    /**
+     * 获取服务类别
+     *
+     * @return 服务类别
+     */
+    public String getCategory() {
+        return mCategory;
+    }
+
+    /**
+     * 获取服务名
+     *
+     * @return 服务名
+     */
+    public String getServiceName() {
+        return mServiceName;
+    }
+
+    /**
+     * 获取方法名
+     *
+     * @return 方法名，见 {@link RemoteMethod#name()}；找不到方法的调用合计为 {@code "<method not found>"}
+     */
+    public String getMethodName() {
+        return mMethodName;
+    }
+
+    /**
+     * 获取调用次数
+     *
+     * @return 调用次数
+     */
+    public long getCallCount() {
+        return mCallCount;
+    }
+
+    /**
+     * 获取调用失败次数
+     *
+     * @return 调用失败次数
+     */
+    public long getErrorCount() {
+        return mErrorCount;
+    }
+
+    /**
+     * 获取平均耗时(ms)
+     *
+     * @return 平均耗时
+     */
+    public double getAverageTimeMs() {
+        return mCallCount == 0 ? 0 : mTotalTimeNanos / 1e6 / mCallCount;
+    }
+
+    /**
+     * 获取最大耗时(ms)
+     *
+     * @return 最大耗时
+     */
+    public double getMaxTimeMs() {
+        return mMaxTimeNanos / 1e6;
+    }
+
+    /**
+     * 获取耗时分布
+     *
+     * @return 各耗时区间的调用次数，见 {@link #getHistogramBoundsMs()}
+     */
+    public long[] getHistogram() {
+        return mHistogram.clone();
+    }
+
+    /**
+     * 获取各调用方的调用次数。调用方为调用服务的类所在的包名，无法确定时为 {@code "<unknown>"}；
+     * 每个方法最多分别统计 16 个调用方，其余调用方合计为 {@code "<other>"}
+     *
+     * @return map key: 调用方包名, value: 调用次数
+     */
+    public Map<String, Long> getCallerCounts() {
+        return mCallerCounts;
+    }
+
+    @Override
+    public String toString() {
+        return String.format(Locale.ENGLISH,
+                "%s/%s#%s calls: %d, errors: %d, avg: %.2fms, max: %.2fms, histogram: %s, callers: %s",
+                mCategory, mServiceName, mMethodName, mCallCount, mErrorCount, getAverageTimeMs(), getMaxTimeMs(),
+                Arrays.toString(mHistogram), mCallerCounts);
+    }
+}
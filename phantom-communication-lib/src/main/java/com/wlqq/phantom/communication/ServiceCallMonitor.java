@@ -0,0 +1,252 @@
+/*
+ * Copyright (C) 2017-2018 Manbang Group
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.wlqq.phantom.communication;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * 服务方法调用统计
+ * <ul>
+ * <li>按 (服务类别, 服务名, 方法名) 统计调用次数、失败次数、耗时分布及各调用方（调用方类所在的包）的调用次数，
+ * 服务重新注册后继续累计</li>
+ * <li>找不到方法的调用不按方法名分别统计，合计到 {@link #UNRESOLVED_METHOD}，避免任意方法名使统计无限增长</li>
+ * <li>调用耗时超过阈值或调用失败时通知 {@link ServiceCallListener}</li>
+ * </ul>
+ * 默认关闭，关闭时 {@link ServiceModule} 不计时；开启时每次调用遍历一次调用栈查找调用方
+ */
+final class ServiceCallMonitor {
+    // 调用栈中属于框架、反射及线程池的帧，查找调用方时跳过
+    private static final String[] SKIPPED_FRAME_PREFIXES = {
+            "com.wlqq.phantom.communication.", "java.lang.reflect.", "java.util.concurrent.", "dalvik.",
+            "sun.reflect.", "jdk.internal.",
+    };
+    // 动态代理类名，Android 上为 $ProxyN，JVM 上为 com.sun.proxy.$ProxyN 等
+    private static final String PROXY_CLASS_NAME = "$Proxy";
+
+    // 找不到方法的调用合计使用的方法名
+    static final String UNRESOLVED_METHOD = "<method not found>";
+    // 无法确定调用方时使用的调用方名
+    static final String UNKNOWN_CALLER = "<unknown>";
+    // 超出数量上限的调用方合计使用的调用方名
+    static final String OTHER_CALLERS = "<other>";
+    // 每个方法最多分别统计的调用方数
+    private static final int MAX_CALLERS_PER_METHOD = 16;
+
+    private static final long[] HISTOGRAM_BOUNDS_NANOS = ServiceCallMetrics.getHistogramBoundsMs();
+
+    static {
+        for (int i = 0; i < HISTOGRAM_BOUNDS_NANOS.length; i++) {
+            HISTOGRAM_BOUNDS_NANOS[i] = TimeUnit.MILLISECONDS.toNanos(HISTOGRAM_BOUNDS_NANOS[i]);
+        }
+    }
+
+    // { category + '/' + name -> { method_name -> metrics } }
+    private static final ConcurrentHashMap<String, ConcurrentHashMap<String, MethodMetrics>> SERVICES =
+            new ConcurrentHashMap<>();
+
+    private static volatile boolean sEnabled;
+    private static volatile ServiceCallListener sListener;
+    private static volatile long sSlowCallThresholdNanos = Long.MAX_VALUE;
+
+    private ServiceCallMonitor() {
+    }
+
+    static boolean isEnabled() {
+        return sEnabled;
+    }
+
+    static void setEnabled(boolean enabled) {
+        sEnabled = enabled;
+    }
+
+    static void setListener(ServiceCallListener listener, long slowCallThresholdMs) {
+        sSlowCallThresholdNanos = slowCallThresholdMs > 0
+                ? TimeUnit.MILLISECONDS.toNanos(slowCallThresholdMs) : Long.MAX_VALUE;
+        sListener = listener;
+    }
+
+    /**
+     * 记录一次服务方法调用
+     *
+     * @param category    服务类别
+     * @param serviceName 服务名
+     * @param methodName  方法名
+     * @param nanos       调用耗时(ns)
+     * @param error       调用失败时的异常，成功时为 null
+     */
+    static void record(String category, String serviceName, String methodName, long nanos, Throwable error) {
+        final String callerClassName = findCallerClassName();
+        final String metricsMethodName = error instanceof MethodNotFoundException ? UNRESOLVED_METHOD : methodName;
+        final String serviceKey = category + '/' + serviceName;
+        ConcurrentHashMap<String, MethodMetrics> methods = SERVICES.get(serviceKey);
+        if (null == methods) {
+            methods = new ConcurrentHashMap<>();
+            final ConcurrentHashMap<String, MethodMetrics> existing = SERVICES.putIfAbsent(serviceKey, methods);
+            if (null != existing) {
+                methods = existing;
+            }
+        }
+
+        MethodMetrics metrics = methods.get(metricsMethodName);
+        if (null == metrics) {
+            metrics = new MethodMetrics(category, serviceName, metricsMethodName);
+            final MethodMetrics existing = methods.putIfAbsent(metricsMethodName, metrics);
+            if (null != existing) {
+                metrics = existing;
+            }
+        }
+        metrics.record(nanos, null != error, getPackageName(callerClassName));
+
+        final ServiceCallListener listener = sListener;
+        if (null == listener) {
+            return;
+        }
+
+        try {
+            if (null != error) {
+                listener.onCallError(category, serviceName, methodName, error, callerClassName);
+            } else if (nanos >= sSlowCallThresholdNanos) {
+                listener.onSlowCall(category, serviceName, methodName, TimeUnit.NANOSECONDS.toMillis(nanos),
+                        callerClassName);
+            }
+        } catch (RuntimeException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * 获取所有服务方法的调用统计
+     *
+     * @return 调用统计快照
+     */
+    static List<ServiceCallMetrics> snapshot() {
+        final List<ServiceCallMetrics> result = new ArrayList<>();
+        for (Map<String, MethodMetrics> methods : SERVICES.values()) {
+            for (MethodMetrics metrics : methods.values()) {
+                result.add(metrics.snapshot());
+            }
+        }
+        return result;
+    }
+
+    /**
+     * 清除所有调用统计
+     */
+    static void reset() {
+        SERVICES.clear();
+    }
+
+    private static String findCallerClassName() {
+        for (StackTraceElement element : new Throwable().getStackTrace()) {
+            final String className = element.getClassName();
+            if (!isSkippedFrame(className)) {
+                return className;
+            }
+        }
+        return null;
+    }
+
+    private static String getPackageName(String className) {
+        if (null == className) {
+            return UNKNOWN_CALLER;
+        }
+
+        final int index = className.lastIndexOf('.');
+        return index < 0 ? "" : className.substring(0, index);
+    }
+
+    private static boolean isSkippedFrame(String className) {
+        for (String prefix : SKIPPED_FRAME_PREFIXES) {
+            if (className.startsWith(prefix)) {
+                return true;
+            }
+        }
+        return className.startsWith(PROXY_CLASS_NAME) || className.contains("." + PROXY_CLASS_NAME);
+    }
+
+    private static final class MethodMetrics {
+        private final String mCategory;
+        private final String mServiceName;
+        private final String mMethodName;
+        private final AtomicLong mCallCount = new AtomicLong();
+        private final AtomicLong mErrorCount = new AtomicLong();
+        private final AtomicLong mTotalNanos = new AtomicLong();
+        private final AtomicLong mMaxNanos = new AtomicLong();
+        private final AtomicLongArray mHistogram = new AtomicLongArray(HISTOGRAM_BOUNDS_NANOS.length + 1);
+        // caller package -> call count
+        private final ConcurrentHashMap<String, AtomicLong> mCallerCounts = new ConcurrentHashMap<>();
+
+        MethodMetrics(String category, String serviceName, String methodName) {
+            mCategory = category;
+            mServiceName = serviceName;
+            mMethodName = methodName;
+        }
+
+        void record(long nanos, boolean error, String caller) {
+            mCallCount.incrementAndGet();
+            getCallerCount(caller).incrementAndGet();
+            if (error) {
+                mErrorCount.incrementAndGet();
+            }
+            mTotalNanos.addAndGet(nanos);
+
+            long max = mMaxNanos.get();
+            while (nanos > max && !mMaxNanos.compareAndSet(max, nanos)) {
+                max = mMaxNanos.get();
+            }
+
+            int bucket = 0;
+            while (bucket < HISTOGRAM_BOUNDS_NANOS.length && nanos >= HISTOGRAM_BOUNDS_NANOS[bucket]) {
+                bucket++;
+            }
+            mHistogram.incrementAndGet(bucket);
+        }
+
+        private AtomicLong getCallerCount(String caller) {
+            AtomicLong count = mCallerCounts.get(caller);
+            if (null != count) {
+                return count;
+            }
+
+            // 并发时调用方数可能略微超出上限
+            final String key = mCallerCounts.size() < MAX_CALLERS_PER_METHOD ? caller : OTHER_CALLERS;
+            count = new AtomicLong();
+            final AtomicLong existing = mCallerCounts.putIfAbsent(key, count);
+            return null == existing ? count : existing;
+        }
+
+        ServiceCallMetrics snapshot() {
+            final long[] histogram = new long[mHistogram.length()];
+            for (int i = 0; i < histogram.length; i++) {
+                histogram[i] = mHistogram.get(i);
+            }
+            final Map<String, Long> callerCounts = new HashMap<>(mCallerCounts.size());
+            for (Map.Entry<String, AtomicLong> entry : mCallerCounts.entrySet()) {
+                callerCounts.put(entry.getKey(), entry.getValue().get());
+            }
+            return new ServiceCallMetrics(mCategory, mServiceName, mMethodName, mCallCount.get(), mErrorCount.get(),
+                    mTotalNanos.get(), mMaxNanos.get(), histogram, callerCounts);
+        }
+    }
+}
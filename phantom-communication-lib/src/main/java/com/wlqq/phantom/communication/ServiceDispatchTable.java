@@ -0,0 +1,294 @@
+/*
+ * Copyright (C) 2017-2018 Manbang Group
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.wlqq.phantom.communication;
+
+
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 服务类的方法分派表，每个服务类只构建一次
+ * <ul>
+ * <li>扫描服务类中使用 {@link RemoteMethod} 注解的方法，按远程方法名分组，组内保持 getDeclaredMethods 的顺序</li>
+ * <li>按方法名及实参运行时类型缓存匹配结果，同样的调用再次发生时只需一次哈希查找</li>
+ * <li>加载服务类对应的 {@link ServiceDispatcher}（若存在）</li>
+ * </ul>
+ * 服务注销时通过 {@link #evict(Class)} 移除对应的分派表，避免持有已卸载插件的类
+ */
+final class ServiceDispatchTable {
+    // 每个服务类最多缓存的匹配结果数，超出后不再缓存，避免实参类型组合过多时无限增长
+    private static final int MAX_RESOLVED_CALLS = 256;
+
+    // service class -> dispatch table
+    private static final ConcurrentHashMap<Class<?>, ServiceDispatchTable> TABLES = new ConcurrentHashMap<>();
+
+    private final Class<?> mServiceClass;
+    private final PhantomService mServiceAnnotation;
+    private final ServiceDispatcher<Object> mDispatcher;
+    // 是否有使用 CacheableResult 注解的方法
+    private final boolean mHasCacheableMethods;
+    // remote method name -> candidates
+    private final Map<String, MethodInfo[]> mCandidates;
+    // call key -> matched method
+    private final ConcurrentHashMap<CallKey, MethodInfo> mResolvedCalls = new ConcurrentHashMap<>();
+
+    private ServiceDispatchTable(Class<?> serviceClass) {
+        mServiceClass = serviceClass;
+        mServiceAnnotation = serviceClass.getAnnotation(PhantomService.class);
+        mDispatcher = loadDispatcher(serviceClass);
+
+        final Map<String, List<MethodInfo>> candidates = new HashMap<>();
+        boolean hasCacheableMethods = false;
+        for (Method method : serviceClass.getDeclaredMethods()) {
+            RemoteMethod annotation = method.getAnnotation(RemoteMethod.class);
+            if (null == annotation) {
+                continue;
+            }
+
+            List<MethodInfo> methods = candidates.get(annotation.name());
+            if (null == methods) {
+                methods = new ArrayList<>(1);
+                candidates.put(annotation.name(), methods);
+            }
+            final MethodInfo methodInfo = new MethodInfo(method, annotation);
+            methods.add(methodInfo);
+            hasCacheableMethods |= null != methodInfo.mCacheable;
+        }
+        mHasCacheableMethods = hasCacheableMethods;
+
+        mCandidates = new HashMap<>(candidates.size());
+        for (Map.Entry<String, List<MethodInfo>> entry : candidates.entrySet()) {
+            final List<MethodInfo> methods = entry.getValue();
+            mCandidates.put(entry.getKey(), methods.toArray(new MethodInfo[methods.size()]));
+        }
+    }
+
+    /**
+     * 获取服务类的分派表，首次调用时构建
+     *
+     * @param serviceClass 服务类
+     * @return 分派表
+     */
+    static ServiceDispatchTable forClass(Class<?> serviceClass) {
+        ServiceDispatchTable table = TABLES.get(serviceClass);
+        if (null == table) {
+            table = new ServiceDispatchTable(serviceClass);
+            final ServiceDispatchTable existing = TABLES.putIfAbsent(serviceClass, table);
+            if (null != existing) {
+                table = existing;
+            }
+        }
+        return table;
+    }
+
+    /**
+     * 移除服务类的分派表
+     *
+     * @param serviceClass 服务类
+     */
+    static void evict(Class<?> serviceClass) {
+        TABLES.remove(serviceClass);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static ServiceDispatcher<Object> loadDispatcher(Class<?> serviceClass) {
+        final String className = serviceClass.getName() + ServiceDispatcher.CLASS_NAME_SUFFIX;
+        try {
+            final Class<?> dispatcherClass = Class.forName(className, true, serviceClass.getClassLoader());
+            if (!ServiceDispatcher.class.isAssignableFrom(dispatcherClass)) {
+                return null;
+            }
+
+            final Constructor<?> constructor = dispatcherClass.getDeclaredConstructor();
+            constructor.setAccessible(true);
+            return (ServiceDispatcher<Object>) constructor.newInstance();
+        } catch (ClassNotFoundException e) {
+            return null;
+        } catch (Exception e) {
+            e.printStackTrace();
+            return null;
+        }
+    }
+
+    /**
+     * 获取服务类的 {@link ServiceDispatcher}
+     *
+     * @return 服务类没有分派器时返回 null
+     */
+    ServiceDispatcher<Object> getDispatcher() {
+        return mDispatcher;
+    }
+
+    /**
+     * 服务类是否有使用 {@link CacheableResult} 注解的方法
+     *
+     * @return 有则返回 true
+     */
+    boolean hasCacheableMethods() {
+        return mHasCacheableMethods;
+    }
+
+    /**
+     * 获取服务类的 {@link PhantomService} 注解
+     *
+     * @return 服务类没有使用该注解时返回 null
+     */
+    PhantomService getServiceAnnotation() {
+        return mServiceAnnotation;
+    }
+
+    /**
+     * 查找与方法名及实参匹配的远程方法
+     *
+     * @param methodName 远程方法名
+     * @param args       实参
+     * @return 匹配的方法
+     * @throws MethodNotFoundException 没有匹配的方法
+     */
+    MethodInfo findMethod(String methodName, Object... args) throws MethodNotFoundException {
+        final MethodInfo[] candidates = mCandidates.get(methodName);
+        if (null != candidates) {
+            final CallKey key = new CallKey(methodName, args);
+            MethodInfo methodInfo = mResolvedCalls.get(key);
+            if (null != methodInfo) {
+                return methodInfo;
+            }
+
+            for (MethodInfo candidate : candidates) {
+                if (candidate.matches(args)) {
+                    if (mResolvedCalls.size() < MAX_RESOLVED_CALLS) {
+                        mResolvedCalls.put(key, candidate);
+                    }
+                    return candidate;
+                }
+            }
+        }
+
+        throw new MethodNotFoundException(
+                "the method " + methodName + " for service " + mServiceClass.getName()
+                        + " not found. please check the methodName and params");
+    }
+
+    private static Class<?> wrap(Class<?> cls) {
+        if (cls == Integer.TYPE) {
+            return Integer.class;
+        } else if (cls == Short.TYPE) {
+            return Short.class;
+        } else if (cls == Double.TYPE) {
+            return Double.class;
+        } else if (cls == Float.TYPE) {
+            return Float.class;
+        } else if (cls == Long.TYPE) {
+            return Long.class;
+        } else if (cls == Boolean.TYPE) {
+            return Boolean.class;
+        } else if (cls == Byte.TYPE) {
+            return Byte.class;
+        }
+        return cls;
+    }
+
+    /**
+     * 远程方法描述
+     */
+    static final class MethodInfo {
+        final Method mMethod;
+        // 远程方法名，见 RemoteMethod#name
+        final String mName;
+        // 返回值缓存配置，不缓存（包括 maxEntries 小于等于 0）时为 null
+        final CacheableResult mCacheable;
+        // 固定参数个数
+        final int mFixedArgsLen;
+        // 最后一个参数是否为 Object[] 可变参数
+        final boolean mDynamicArgs;
+        // 是否可以在调用线程之外的线程中执行，见 RemoteMethod#anyThread
+        final boolean mAnyThread;
+        // 固定参数类型，基本类型已转换为包装类型
+        private final Class<?>[] mFixedArgTypes;
+
+        MethodInfo(Method method, RemoteMethod annotation) {
+            mMethod = method;
+            mName = annotation.name();
+            final CacheableResult cacheable = method.getAnnotation(CacheableResult.class);
+            mCacheable = null != cacheable && cacheable.maxEntries() > 0 ? cacheable : null;
+            mAnyThread = annotation.anyThread();
+            final Class<?>[] requestParams = method.getParameterTypes();
+            mDynamicArgs = requestParams.length > 0
+                    && requestParams[requestParams.length - 1] == Object[].class;
+            mFixedArgsLen = mDynamicArgs ? requestParams.length - 1 : requestParams.length;
+            mFixedArgTypes = new Class<?>[mFixedArgsLen];
+            for (int i = 0; i < mFixedArgsLen; i++) {
+                mFixedArgTypes[i] = wrap(requestParams[i]);
+            }
+        }
+
+        boolean matches(Object[] args) {
+            if (mDynamicArgs ? args.length < mFixedArgsLen : args.length != mFixedArgsLen) {
+                return false;
+            }
+
+            for (int i = 0; i < mFixedArgsLen; i++) {
+                if (null != args[i] && !mFixedArgTypes[i].isAssignableFrom(args[i].getClass())) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+    /**
+     * 匹配结果缓存键：方法名及各实参运行时类型（实参为 null 时为 null）
+     */
+    private static final class CallKey {
+        private final String mMethodName;
+        private final Class<?>[] mArgTypes;
+        private final int mHashCode;
+
+        CallKey(String methodName, Object[] args) {
+            mMethodName = methodName;
+            mArgTypes = new Class<?>[args.length];
+            for (int i = 0; i < args.length; i++) {
+                mArgTypes[i] = null == args[i] ? null : args[i].getClass();
+            }
+            mHashCode = 31 * methodName.hashCode() + Arrays.hashCode(mArgTypes);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof CallKey)) {
+                return false;
+            }
+
+            final CallKey other = (CallKey) o;
+            return mMethodName.equals(other.mMethodName) && Arrays.equals(mArgTypes, other.mArgTypes);
+        }
+
+        @Override
+        public int hashCode() {
+            return mHashCode;
+        }
+    }
+}
@@ -0,0 +1,78 @@
+/*
+ * Copyright (C) 2017-2018 Manbang Group
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.wlqq.phantom.communication;
+
+import java.lang.reflect.InvocationTargetException;
+
+/**
+ * 服务方法分派器，按 {@link RemoteMethod#name()} 直接调用服务对象的方法，避免反射查找及调用
+ * <p>
+ * 服务类 {@code com.example.FooService} 的分派器类名为 {@code com.example.FooService_PhantomDispatcher}
+ * （嵌套类为 {@code com.example.Outer$FooService_PhantomDispatcher}），须有无参构造方法。
+ * 在服务所在模块中添加 annotation processor {@code com.wlqq.phantom:phantom-communication-compiler}
+ * 即可为每个 {@link PhantomService} 服务类生成分派器，也可以手动编写。
+ * 存在分派器时 {@link PhantomServiceManager} 获取的服务优先使用分派器调用服务方法，分派器抛出
+ * {@link MethodNotFoundException} 时回退到反射调用，因此服务方法自身抛出的异常须包装为
+ * {@link InvocationTargetException}，与反射调用一致
+ * <pre>{@code
+ * public final class FooService_PhantomDispatcher implements ServiceDispatcher<FooService> {
+ *     public Object call(FooService service, String methodName, Object... args)
+ *             throws MethodNotFoundException, InvocationTargetException {
+ *         switch (methodName) {
+ *             case "getName":
+ *                 if (args.length == 0) {
+ *                     try {
+ *                         return service.getName();
+ *                     } catch (Throwable e) {
+ *                         throw new InvocationTargetException(e);
+ *                     }
+ *                 }
+ *                 break;
+ *             default:
+ *                 break;
+ *         }
+ *         throw new MethodNotFoundException(methodName);
+ *     }
+ * }}
+ * </pre>
+ * 开启混淆时需 keep 服务类类名及分派器类：
+ * <pre>
+ * -keepnames &#64;com.wlqq.phantom.communication.PhantomService class *
+ * -keep class * implements com.wlqq.phantom.communication.ServiceDispatcher { &lt;init&gt;(); }
+ * </pre>
+ *
+ * @param <T> 服务类
+ */
+public interface ServiceDispatcher<T> {
+    /**
+     * 分派器类名后缀
+     */
+    String CLASS_NAME_SUFFIX = "_PhantomDispatcher";
+
+    /**
+     * 调用服务提供的方法
+     *
+     * @param service    服务对象
+     * @param methodName 方法名，见 {@link RemoteMethod#name()}，不为 null
+     * @param args       调用参数列表，不为 null
+     * @return 调用方法的返回值
+     * @throws MethodNotFoundException   分派器中没有与方法名及参数匹配的方法
+     * @throws InvocationTargetException 服务方法抛出异常
+     */
+    Object call(T service, String methodName, Object... args)
+            throws MethodNotFoundException, InvocationTargetException;
+}
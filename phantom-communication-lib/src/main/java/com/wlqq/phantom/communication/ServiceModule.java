@@ -17,17 +17,141 @@
 package com.wlqq.phantom.communication;
 
 
-import java.lang.reflect.Method;
+import java.lang.ref.WeakReference;
+import java.lang.reflect.InvocationTargetException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * 供远程调用的服务模块描述
+ * <p>
+ * 每个注册的服务对应一个实例，由 {@link PhantomServiceManager} 缓存，服务重新注册或注销时丢弃
  */
 class ServiceModule implements IService {
+    /**
+     * 服务名存在于类别中但服务对象为 null 时返回的服务模块
+     */
+    static final ServiceModule EMPTY = new ServiceModule(null, null, null);
 
+    private final String mCategory;
+    private final String mName;
     private final Object mService;
+    private final ServiceDispatchTable mDispatchTable;
+    // interface -> proxy，弱引用 proxy，避免 proxy 通过其接口类持有调用方（如已卸载插件）的 ClassLoader
+    private final Map<Class<?>, WeakReference<Object>> mProxies = new WeakHashMap<>();
+    // method -> 返回值缓存，只包含使用 CacheableResult 注解的方法
+    private final Map<ServiceDispatchTable.MethodInfo, ResultCache> mResultCaches = new HashMap<>();
+    private final AtomicLong mCacheHitCount = new AtomicLong();
+    private final AtomicLong mCacheMissCount = new AtomicLong();
 
-    ServiceModule(Object service) {
+    ServiceModule(String category, String name, Object service) {
+        this.mCategory = category;
+        this.mName = name;
         this.mService = service;
+        this.mDispatchTable = null == service ? null : ServiceDispatchTable.forClass(service.getClass());
+    }
+
+    /**
+     * 获取服务对象
+     *
+     * @return 服务对象
+     */
+    Object getService() {
+        return mService;
+    }
+
+    /**
+     * 获取服务转换为 type 接口的代理对象，同一接口复用同一个代理对象
+     *
+     * @param <T>  interface 类型
+     * @param type 自定义接口
+     * @return 代理对象
+     */
+    @SuppressWarnings("unchecked")
+    <T> T getProxy(Class<T> type) {
+        if (null == mService) {
+            return PhantomServiceManager.newProxy(this, type);
+        }
+
+        synchronized (mProxies) {
+            final WeakReference<Object> ref = mProxies.get(type);
+            Object proxy = null == ref ? null : ref.get();
+            if (null == proxy) {
+                proxy = PhantomServiceManager.newProxy(this, type);
+                mProxies.put(type, new WeakReference<>(proxy));
+            }
+            return (T) proxy;
+        }
+    }
+
+    /**
+     * 与方法名及实参匹配的远程方法是否可以在调用线程之外的线程中执行
+     *
+     * @param methodName 远程方法名
+     * @param args       实参
+     * @return 没有匹配的方法时返回 false
+     * @see RemoteMethod#anyThread()
+     */
+    boolean isAnyThread(String methodName, Object... args) {
+        if (null == mService) {
+            return false;
+        }
+
+        try {
+            return mDispatchTable.findMethod(methodName, null == args ? new Object[0] : args).mAnyThread;
+        } catch (MethodNotFoundException e) {
+            return false;
+        }
+    }
+
+    private ResultCache getResultCache(String methodName, Object[] args) {
+        final ServiceDispatchTable.MethodInfo methodInfo;
+        try {
+            methodInfo = mDispatchTable.findMethod(methodName, args);
+        } catch (MethodNotFoundException e) {
+            // 交由调用流程抛出
+            return null;
+        }
+
+        final CacheableResult cacheable = methodInfo.mCacheable;
+        if (null == cacheable) {
+            return null;
+        }
+
+        synchronized (mResultCaches) {
+            ResultCache cache = mResultCaches.get(methodInfo);
+            if (null == cache) {
+                cache = new ResultCache(cacheable.ttlMs(), cacheable.maxEntries());
+                mResultCaches.put(methodInfo, cache);
+            }
+            return cache;
+        }
+    }
+
+    /**
+     * 清除方法返回值缓存
+     *
+     * @param methodName 远程方法名，为 null 时清除所有方法的缓存
+     */
+    void invalidateCachedResults(String methodName) {
+        synchronized (mResultCaches) {
+            for (Map.Entry<ServiceDispatchTable.MethodInfo, ResultCache> entry : mResultCaches.entrySet()) {
+                if (null == methodName || methodName.equals(entry.getKey().mName)) {
+                    entry.getValue().clear();
+                }
+            }
+        }
+    }
+
+    /**
+     * 获取方法返回值缓存的命中统计
+     *
+     * @return 命中统计
+     */
+    CacheStats getCacheStats() {
+        return new CacheStats(mCacheHitCount.get(), mCacheMissCount.get());
     }
 
     @Override
@@ -40,30 +164,72 @@ class ServiceModule implements IService {
             args = new Object[0];
         }
 
-        MethodInfo targetMethod = findMethod(methodName, args);
-        Object resObj = null;
-        if (null != targetMethod.mMethod) {
-            try {
-                if (targetMethod.mDynamicArgs) {
-                    resObj = targetMethod.mMethod.invoke(mService,
-                            reBuildArg(targetMethod.mFixedArgsLen, args));
-                } else {
-                    resObj = targetMethod.mMethod.invoke(mService, args);
-                }
-            } catch (Exception e) {
-                e.printStackTrace();
+        final boolean monitored = ServiceCallMonitor.isEnabled();
+        final long startTime = monitored ? System.nanoTime() : 0;
+        Throwable error = null;
+        try {
+            return callInternal(methodName, args);
+        } catch (MethodNotFoundException e) {
+            error = e;
+            throw e;
+        } catch (InvocationTargetException e) {
+            error = null == e.getCause() ? e : e.getCause();
+            e.printStackTrace();
+            return null;
+        } catch (Exception e) {
+            error = e;
+            e.printStackTrace();
+            return null;
+        } finally {
+            if (monitored) {
+                ServiceCallMonitor.record(mCategory, mName, methodName, System.nanoTime() - startTime, error);
             }
         }
+    }
+
+    private Object callInternal(String methodName, Object[] args) throws Exception {
+        final ResultCache cache = mDispatchTable.hasCacheableMethods() ? getResultCache(methodName, args) : null;
+        if (null != cache) {
+            final Object cached = cache.get(args);
+            if (null != cached) {
+                mCacheHitCount.incrementAndGet();
+                return cached;
+            }
+            mCacheMissCount.incrementAndGet();
+        }
+
+        final Object resObj = invoke(methodName, args);
+        // 调用失败时返回 null，不缓存 null
+        if (null != cache && null != resObj) {
+            cache.put(args, resObj);
+        }
         return resObj;
     }
 
+    private Object invoke(String methodName, Object[] args) throws Exception {
+        final ServiceDispatcher<Object> dispatcher = mDispatchTable.getDispatcher();
+        if (null != dispatcher && null != methodName) {
+            try {
+                return dispatcher.call(mService, methodName, args);
+            } catch (MethodNotFoundException e) {
+                // 分派器中没有匹配的方法，回退到反射调用
+            }
+        }
+
+        ServiceDispatchTable.MethodInfo targetMethod = mDispatchTable.findMethod(methodName, args);
+        if (targetMethod.mDynamicArgs) {
+            return targetMethod.mMethod.invoke(mService, reBuildArg(targetMethod.mFixedArgsLen, args));
+        }
+        return targetMethod.mMethod.invoke(mService, args);
+    }
+
     @Override
     public String getServiceName() {
         if (null == mService) {
             return null;
         }
 
-        PhantomService ps = mService.getClass().getAnnotation(PhantomService.class);
+        PhantomService ps = mDispatchTable.getServiceAnnotation();
         if (null == ps) {
             return null;
         }
@@ -77,7 +243,7 @@ class ServiceModule implements IService {
             return 0;
         }
 
-        PhantomService ps = mService.getClass().getAnnotation(PhantomService.class);
+        PhantomService ps = mDispatchTable.getServiceAnnotation();
         if (null == ps) {
             return 0;
         }
@@ -94,7 +260,7 @@ class ServiceModule implements IService {
             dyArgs[i] = args[i];
         }
 
-        if (null != args[i] && args[i].getClass().getName().equals("[Ljava.lang.Object;")) {
+        if (i < args.length && null != args[i] && args[i].getClass().getName().equals("[Ljava.lang.Object;")) {
             dyArgs[fixedArgsLen] = args[i];
         } else {
             for (int j = 0; i < args.length; i++, j++) {
@@ -104,80 +270,4 @@ class ServiceModule implements IService {
 
         return dyArgs;
     }
-
-    private MethodInfo findMethod(String methodName, Object... args)
-            throws MethodNotFoundException {
-        Method[] methods = mService.getClass().getDeclaredMethods();
-        for (Method method : methods) {
-            RemoteMethod annotation = method.getAnnotation(RemoteMethod.class);
-            if (null == annotation) {
-                continue;
-            }
-
-            if (!annotation.name().equals(methodName)) {
-                continue;
-            }
-
-            MethodInfo methodInfo = new MethodInfo();
-
-            Class[] requestParams = method.getParameterTypes();
-            int matchLen = requestParams.length;
-            if (requestParams.length > 0 && requestParams[requestParams.length
-                    - 1].getName().equals("[Ljava.lang.Object;")) {
-                matchLen -= 1;
-                methodInfo.mDynamicArgs = true;
-            } else if (requestParams.length != args.length) {
-                continue;
-            }
-
-            methodInfo.mFixedArgsLen = matchLen;
-
-            //匹配参数
-            int i = 0;
-            for (int j = 0; j < matchLen; j++) {
-                Class cls = requestParams[j];
-
-                if (null == args[i]) {
-                    i++;
-                    continue;
-                }
-                if (cls == Integer.TYPE) {
-                    cls = Integer.class;
-                } else if (cls == Short.TYPE) {
-                    cls = Short.class;
-                } else if (cls == Double.TYPE) {
-                    cls = Double.class;
-                } else if (cls == Float.TYPE) {
-                    cls = Float.class;
-                } else if (cls == Long.TYPE) {
-                    cls = Long.class;
-                } else if (cls == Boolean.TYPE) {
-                    cls = Boolean.class;
-                } else if (cls == Byte.TYPE) {
-                    cls = Byte.class;
-                }
-
-                if (!cls.isAssignableFrom(args[i].getClass())) {
-                    break;
-                }
-
-                i++;
-            }
-
-            if (i == matchLen) {
-                methodInfo.mMethod = method;
-                return methodInfo;
-            }
-        }
-
-        throw new MethodNotFoundException(
-                "the method " + methodName + " for service " + mService.getClass().getName()
-                        + " not found. please check the methodName and params");
-    }
-
-    private static class MethodInfo {
-        Method mMethod;
-        int mFixedArgsLen;
-        boolean mDynamicArgs;
-    }
 }
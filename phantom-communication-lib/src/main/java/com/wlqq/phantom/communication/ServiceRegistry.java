@@ -0,0 +1,125 @@
+/*
+ * Copyright (C) 2017-2018 Manbang Group
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.wlqq.phantom.communication;
+
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * 已注册服务的不可变快照
+ * <p>
+ * 注册、注销服务时基于当前快照创建新快照（只复制变化的类别），由 {@link PhantomServiceManager} 原子替换，
+ * 查询服务时直接读取当前快照，无需加锁
+ */
+final class ServiceRegistry {
+    static final ServiceRegistry EMPTY = new ServiceRegistry(
+            Collections.<String, Map<String, ServiceModule>>emptyMap(), Collections.<String, Integer>emptyMap());
+
+    // { service_category -> { service_name -> service_module } }
+    private final Map<String, Map<String, ServiceModule>> mCategories;
+    // { service_name -> 注册了该服务名的类别数 }
+    private final Map<String, Integer> mNameCounts;
+
+    private ServiceRegistry(Map<String, Map<String, ServiceModule>> categories, Map<String, Integer> nameCounts) {
+        mCategories = categories;
+        mNameCounts = nameCounts;
+    }
+
+    /**
+     * 获取指定类别下的服务
+     *
+     * @param category 服务类别
+     * @return { service_name -> service_module }，类别不存在时返回 null
+     */
+    Map<String, ServiceModule> getServices(String category) {
+        return mCategories.get(category);
+    }
+
+    /**
+     * 获取所有类别下的服务
+     *
+     * @return 各类别的 { service_name -> service_module }
+     */
+    Collection<Map<String, ServiceModule>> getAllServices() {
+        return mCategories.values();
+    }
+
+    /**
+     * 是否有类别注册了指定名字的服务
+     *
+     * @param name 服务名
+     * @return 有则返回 true
+     */
+    boolean hasName(String name) {
+        return mNameCounts.containsKey(name);
+    }
+
+    /**
+     * 创建添加（或替换）了一个服务的新快照
+     *
+     * @param category 服务类别
+     * @param name     服务名
+     * @param module   服务模块
+     * @return 新快照
+     */
+    ServiceRegistry withService(String category, String name, ServiceModule module) {
+        final Map<String, ServiceModule> oldServices = mCategories.get(category);
+        final Map<String, ServiceModule> services = null == oldServices
+                ? new HashMap<String, ServiceModule>() : new HashMap<>(oldServices);
+        final boolean newName = null == services.put(name, module);
+
+        final Map<String, Map<String, ServiceModule>> categories = new HashMap<>(mCategories);
+        categories.put(category, Collections.unmodifiableMap(services));
+        Map<String, Integer> nameCounts = mNameCounts;
+        if (newName) {
+            nameCounts = new HashMap<>(mNameCounts);
+            final Integer count = nameCounts.get(name);
+            nameCounts.put(name, null == count ? 1 : count + 1);
+            nameCounts = Collections.unmodifiableMap(nameCounts);
+        }
+        return new ServiceRegistry(Collections.unmodifiableMap(categories), nameCounts);
+    }
+
+    /**
+     * 创建移除了一个类别下所有服务的新快照
+     *
+     * @param category 服务类别
+     * @return 新快照；类别不存在时返回当前快照
+     */
+    ServiceRegistry withoutCategory(String category) {
+        final Map<String, ServiceModule> services = mCategories.get(category);
+        if (null == services) {
+            return this;
+        }
+
+        final Map<String, Map<String, ServiceModule>> categories = new HashMap<>(mCategories);
+        categories.remove(category);
+        final Map<String, Integer> nameCounts = new HashMap<>(mNameCounts);
+        for (String name : services.keySet()) {
+            final int count = nameCounts.get(name);
+            if (count <= 1) {
+                nameCounts.remove(name);
+            } else {
+                nameCounts.put(name, count - 1);
+            }
+        }
+        return new ServiceRegistry(Collections.unmodifiableMap(categories), Collections.unmodifiableMap(nameCounts));
+    }
+}
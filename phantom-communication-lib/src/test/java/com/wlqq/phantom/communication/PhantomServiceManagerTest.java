@@ -24,7 +24,11 @@ import org.junit.Rule;
 import org.junit.Test;
 import org.junit.rules.ExpectedException;
 
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 
 public class PhantomServiceManagerTest {
@@ -62,6 +66,19 @@ public class PhantomServiceManagerTest {
         Assert.assertEquals(2, service1.getServiceVersion());
     }
 
+    @Test
+    public void hasService_isCorrect() throws Exception {
+        Assert.assertTrue(PhantomServiceManager.hasService("remote_service_1"));
+        Assert.assertTrue(PhantomServiceManager.hasService("com.wlqq", "remote_service_2"));
+        Assert.assertFalse(PhantomServiceManager.hasService("remote_service_3"));
+
+        PhantomServiceManager.registerService("com.wlqq.plugin", "remote_service_1", new RemoteService1());
+        PhantomServiceManager.unregisterService("com.wlqq");
+        Assert.assertTrue(PhantomServiceManager.hasService("remote_service_1"));
+        Assert.assertFalse(PhantomServiceManager.hasService("remote_service_2"));
+        Assert.assertFalse(PhantomServiceManager.hasService("com.wlqq", "remote_service_1"));
+    }
+
     @Test
     public void getServices_CanGetByCategory() throws Exception {
         final List<IService> services = PhantomServiceManager.getServices(
@@ -114,6 +131,169 @@ public class PhantomServiceManagerTest {
         }
     }
 
+    @Test
+    public void callRemoteService_dispatchByArgTypes() throws Exception {
+        final IService service1 = PhantomServiceManager.getService("remote_service_1");
+        // 重复调用，第二次使用缓存的匹配结果
+        for (int i = 0; i < 2; i++) {
+            Assert.assertEquals("string 1", service1.call("echo", "1"));
+            Assert.assertEquals("int 1", service1.call("echo", 1));
+        }
+
+        Assert.assertEquals("a,b,c", service1.call("join", ",", "a", "b", "c"));
+        Assert.assertEquals("a,b", service1.call("join", ",", new Object[]{"a", "b"}));
+        Assert.assertEquals("", service1.call("join", ","));
+    }
+
+    @Test
+    public void getService_returnsCachedInstances() throws Exception {
+        final IService service1 = PhantomServiceManager.getService("remote_service_1");
+        Assert.assertSame(service1, PhantomServiceManager.getService("remote_service_1"));
+        final RemoteServiceProxy proxy1 = PhantomServiceManager.getService("remote_service_1",
+                RemoteServiceProxy.class);
+        Assert.assertSame(proxy1, PhantomServiceManager.getService("remote_service_1", RemoteServiceProxy.class));
+
+        // 重新注册后缓存失效
+        PhantomServiceManager.registerService(new RemoteService1());
+        Assert.assertNotSame(service1, PhantomServiceManager.getService("remote_service_1"));
+        Assert.assertNotSame(proxy1, PhantomServiceManager.getService("remote_service_1", RemoteServiceProxy.class));
+
+        PhantomServiceManager.unregisterService(PhantomServiceManager.getHostPackage());
+        Assert.assertNull(PhantomServiceManager.getService("remote_service_1"));
+    }
+
+    @Test
+    public void callRemoteService_preferDispatcher() throws Exception {
+        PhantomServiceManager.registerService(new RemoteService3());
+        final IService service3 = PhantomServiceManager.getService("remote_service_3");
+        Assert.assertEquals("dispatched hahaha", service3.call("remote_method_2", "hahaha"));
+        // 分派器中没有的方法回退到反射调用
+        Assert.assertEquals("remote_method_1", service3.call("remote_method_1"));
+    }
+
+    @Test
+    public void callRemoteServiceAsync_isCorrect() throws Exception {
+        final IService service1 = PhantomServiceManager.getService("remote_service_1");
+        final ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            final String callerThread = Thread.currentThread().getName();
+            // 声明了 anyThread 的方法在 executor 中执行，否则在调用线程中执行
+            Assert.assertNotEquals(callerThread,
+                    PhantomServiceManager.callAsync(service1, executor, "thread_name").get());
+            Assert.assertEquals("remote_method_2 reply hahaha",
+                    PhantomServiceManager.callAsync(service1, executor, "remote_method_2", "hahaha").get());
+
+            final List<Object> results = PhantomServiceManager.callBatchAsync(service1, executor,
+                    new ServiceCall("thread_name"), new ServiceCall("echo", 1)).get();
+            Assert.assertEquals(Arrays.asList(callerThread, "int 1"), results);
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void callRemoteService_cacheResults() throws Exception {
+        final RemoteService1 remoteService = new RemoteService1();
+        PhantomServiceManager.registerService(remoteService);
+        final IService service1 = PhantomServiceManager.getService("remote_service_1");
+
+        Assert.assertEquals("a 1", service1.call("counter", "a"));
+        Assert.assertEquals("a 1", service1.call("counter", "a"));
+        Assert.assertEquals("b 2", service1.call("counter", "b"));
+        final CacheStats stats = PhantomServiceManager.getCacheStats(service1);
+        Assert.assertEquals(1, stats.getHitCount());
+        Assert.assertEquals(2, stats.getMissCount());
+
+        PhantomServiceManager.invalidateCachedResults(remoteService, "counter");
+        Assert.assertEquals("a 3", service1.call("counter", "a"));
+    }
+
+    @Test
+    public void callRemoteService_notCacheWithoutEntries() throws Exception {
+        final IService service1 = PhantomServiceManager.getService("remote_service_1");
+
+        // maxEntries 小于等于 0 时不缓存
+        Assert.assertEquals("a 1", service1.call("uncached_counter", "a"));
+        Assert.assertEquals("a 2", service1.call("uncached_counter", "a"));
+        final CacheStats stats = PhantomServiceManager.getCacheStats(service1);
+        Assert.assertEquals(0, stats.getHitCount());
+        Assert.assertEquals(0, stats.getMissCount());
+    }
+
+    @Test
+    public void callRemoteService_recordCallMetrics() throws Exception {
+        final List<Throwable> errors = new ArrayList<>();
+        PhantomServiceManager.resetCallMetrics();
+        PhantomServiceManager.setCallMetricsEnabled(true);
+        PhantomServiceManager.setServiceCallListener(new ServiceCallListener() {
+            @Override
+            public void onSlowCall(String category, String serviceName, String methodName, long durationMs,
+                    String callerClassName) {
+            }
+
+            @Override
+            public void onCallError(String category, String serviceName, String methodName, Throwable error,
+                    String callerClassName) {
+                errors.add(error);
+            }
+        }, 0);
+        try {
+            final IService service1 = PhantomServiceManager.getService("remote_service_1");
+            service1.call("remote_method_1");
+            service1.call("remote_method_1");
+            // 服务方法抛出的异常记为调用失败，调用返回 null
+            Assert.assertNull(service1.call("fail"));
+            // 找不到的方法合计统计
+            for (int i = 0; i < 3; i++) {
+                try {
+                    service1.call("not_exists_" + i);
+                    Assert.fail("MethodNotFoundException expected");
+                } catch (MethodNotFoundException e) {
+                    // expected
+                }
+            }
+
+            final List<ServiceCallMetrics> metrics = PhantomServiceManager.getCallMetrics();
+            Assert.assertEquals(3, metrics.size());
+            for (ServiceCallMetrics m : metrics) {
+                Assert.assertEquals("com.wlqq", m.getCategory());
+                Assert.assertEquals("remote_service_1", m.getServiceName());
+                if ("remote_method_1".equals(m.getMethodName())) {
+                    Assert.assertEquals(2, m.getCallCount());
+                    Assert.assertEquals(0, m.getErrorCount());
+                } else if ("fail".equals(m.getMethodName())) {
+                    Assert.assertEquals(1, m.getCallCount());
+                    Assert.assertEquals(1, m.getErrorCount());
+                } else {
+                    Assert.assertEquals(ServiceCallMonitor.UNRESOLVED_METHOD, m.getMethodName());
+                    Assert.assertEquals(3, m.getCallCount());
+                    Assert.assertEquals(3, m.getErrorCount());
+                }
+
+                long callerCalls = 0;
+                for (long count : m.getCallerCounts().values()) {
+                    callerCalls += count;
+                }
+                Assert.assertEquals(m.getCallCount(), callerCalls);
+                Assert.assertFalse(m.getCallerCounts().containsKey(ServiceCallMonitor.UNKNOWN_CALLER));
+            }
+            Assert.assertEquals(4, errors.size());
+            Assert.assertTrue(errors.get(0) instanceof IllegalStateException);
+            Assert.assertTrue(errors.get(1) instanceof MethodNotFoundException);
+        } finally {
+            PhantomServiceManager.setServiceCallListener(null, 0);
+            PhantomServiceManager.setCallMetricsEnabled(false);
+            PhantomServiceManager.resetCallMetrics();
+        }
+    }
+
+    @Test
+    public void callRemoteService_shouldThrowMethodNotFound() throws Exception {
+        mExceptions.expect(MethodNotFoundException.class);
+
+        PhantomServiceManager.getService("remote_service_1").call("echo", 1L);
+    }
+
     private interface RemoteServiceProxy {
         String remote_method_1();
 
@@ -132,6 +312,52 @@ public class PhantomServiceManagerTest {
         public String remoteMethod2(String message) {
             return "remote_method_2 reply " + message;
         }
+
+        private int mCounter;
+
+        @CacheableResult(maxEntries = 2)
+        @RemoteMethod(name = "counter")
+        public String counter(String key) {
+            return key + " " + (++mCounter);
+        }
+
+        @CacheableResult(maxEntries = 0)
+        @RemoteMethod(name = "uncached_counter")
+        public String uncachedCounter(String key) {
+            return key + " " + (++mCounter);
+        }
+
+        @RemoteMethod(name = "thread_name", anyThread = true)
+        public String threadName() {
+            return Thread.currentThread().getName();
+        }
+
+        @RemoteMethod(name = "fail")
+        public String fail() {
+            throw new IllegalStateException("fail");
+        }
+
+        @RemoteMethod(name = "echo")
+        public String echoString(String message) {
+            return "string " + message;
+        }
+
+        @RemoteMethod(name = "echo")
+        public String echoInt(int value) {
+            return "int " + value;
+        }
+
+        @RemoteMethod(name = "join")
+        public String join(String separator, Object[] parts) {
+            final StringBuilder sb = new StringBuilder();
+            for (Object part : parts) {
+                if (sb.length() > 0) {
+                    sb.append(separator);
+                }
+                sb.append(part);
+            }
+            return sb.toString();
+        }
     }
 
     @PhantomService(name = "remote_service_2", version = 3)
@@ -148,6 +374,32 @@ public class PhantomServiceManagerTest {
         }
     }
 
+    @PhantomService(name = "remote_service_3", version = 1)
+    private static class RemoteService3 {
+
+        @RemoteMethod(name = "remote_method_1")
+        public String remoteMethod1() {
+            return "remote_method_1";
+        }
+
+        @RemoteMethod(name = "remote_method_2")
+        public String remoteMethod2(String message) {
+            return "reflected " + message;
+        }
+    }
+
+    // RemoteService3 的分派器，只分派 remote_method_2
+    private static final class RemoteService3_PhantomDispatcher implements ServiceDispatcher<RemoteService3> {
+        @Override
+        public Object call(RemoteService3 service, String methodName, Object... args)
+                throws MethodNotFoundException {
+            if ("remote_method_2".equals(methodName) && args.length == 1) {
+                return "dispatched " + args[0];
+            }
+            throw new MethodNotFoundException(methodName);
+        }
+    }
+
     // 没有使用 PhantomService 注解的服务类，注册会抛出异常
     private static class RemoteServiceMissingAnnotation {
         @RemoteMethod(name = "remote_method_1")
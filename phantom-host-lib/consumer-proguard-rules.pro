@@ -50,5 +50,9 @@
     @com.wlqq.phantom.communication.RemoteMethod <methods>;
 }
 
+# Phantom Service dispatcher，按服务类类名查找分派器
+-keepnames @com.wlqq.phantom.communication.PhantomService class *
+-keep class * implements com.wlqq.phantom.communication.ServiceDispatcher { <init>(); }
+
 # ARTUtils
 -keep class com.taobao.android.dex.interpret.ARTUtils { *; }
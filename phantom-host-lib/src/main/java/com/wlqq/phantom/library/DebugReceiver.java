@@ -24,11 +24,18 @@ import android.os.AsyncTask;
 import android.support.annotation.Nullable;
 import android.text.TextUtils;
 
+import com.wlqq.phantom.communication.PhantomServiceManager;
+import com.wlqq.phantom.communication.ServiceCallMetrics;
 import com.wlqq.phantom.library.pm.PluginInfo;
 import com.wlqq.phantom.library.pool.LaunchModeManager;
+import com.wlqq.phantom.library.proxy.ClassLoadMonitor;
+import com.wlqq.phantom.library.proxy.PluginClassLoader;
 import com.wlqq.phantom.library.proxy.ServiceHostProxyManager;
 import com.wlqq.phantom.library.utils.VLog;
 
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
 import java.util.List;
 
 
@@ -73,11 +80,27 @@ class DebugReceiver extends BroadcastReceiver {
      */
     public static final String ACTION_DUMP_ACTIVITY_PROXY = ".phantom.debug.action.DUMP_ACTIVITY_PROXY";
 
+    /**
+     * dump 插件类加载统计，并导出启动类列表（见 {@link PluginInfo#getStartupClassListFile()}），
+     * 需先开启 {@link PhantomCore.Config#setClassLoadInstrumentationEnabled(boolean)}，可以 extras 形式提供以下参数
+     * <ul>
+     *     <li>{@link #EXTRA_PACKAGE_NAME}，不提供时 dump 所有已启动的插件</li>
+     * </ul>
+     */
+    public static final String ACTION_DUMP_CLASS_LOAD_STATS = ".phantom.debug.action.DUMP_CLASS_LOAD_STATS";
+
+    /**
+     * dump PhantomService 方法调用统计，需先开启 {@link PhantomCore.Config#setServiceCallMetricsEnabled(boolean)}
+     */
+    public static final String ACTION_DUMP_SERVICE_CALL_METRICS = ".phantom.debug.action.DUMP_SERVICE_CALL_METRICS";
+
     private static String sActionInstallPlugin;
     private static String sActionUninstallPlugin;
     private static String sActionDumpInstalledPlugins;
     private static String sActionDumpServiceProxy;
     private static String sActionDumpActivityProxy;
+    private static String sActionDumpClassLoadStats;
+    private static String sActionDumpServiceCallMetrics;
 
     /**
      * 待安装的插件 APK 包名，类型 String
@@ -100,6 +123,8 @@ class DebugReceiver extends BroadcastReceiver {
         sActionDumpInstalledPlugins = applicationId + ACTION_DUMP_INSTALLED_PLUGINS;
         sActionDumpActivityProxy = applicationId + ACTION_DUMP_ACTIVITY_PROXY;
         sActionDumpServiceProxy = applicationId + ACTION_DUMP_SERVICE_PROXY;
+        sActionDumpClassLoadStats = applicationId + ACTION_DUMP_CLASS_LOAD_STATS;
+        sActionDumpServiceCallMetrics = applicationId + ACTION_DUMP_SERVICE_CALL_METRICS;
 
         IntentFilter intentFilter = new IntentFilter();
         intentFilter.addAction(sActionInstallPlugin);
@@ -107,6 +132,8 @@ class DebugReceiver extends BroadcastReceiver {
         intentFilter.addAction(sActionDumpInstalledPlugins);
         intentFilter.addAction(sActionDumpActivityProxy);
         intentFilter.addAction(sActionDumpServiceProxy);
+        intentFilter.addAction(sActionDumpClassLoadStats);
+        intentFilter.addAction(sActionDumpServiceCallMetrics);
         context.registerReceiver(new DebugReceiver(), intentFilter);
     }
 
@@ -134,6 +161,10 @@ class DebugReceiver extends BroadcastReceiver {
             dumpActivityProxy();
         } else if (sActionDumpServiceProxy.equals(action)) {
             dumpServiceProxy();
+        } else if (sActionDumpClassLoadStats.equals(action)) {
+            dumpClassLoadStats(intent.getStringExtra(EXTRA_PACKAGE_NAME));
+        } else if (sActionDumpServiceCallMetrics.equals(action)) {
+            dumpServiceCallMetrics();
         }
     }
 
@@ -167,6 +198,57 @@ class DebugReceiver extends BroadcastReceiver {
         });
     }
 
+    private void dumpClassLoadStats(@Nullable final String packageName) {
+        VLog.v("dumpClassLoadStats, pn: %s", packageName);
+        AsyncTask.execute(new Runnable() {
+            @Override
+            public void run() {
+                final List<PluginInfo> plugins = PhantomCore.getInstance().getAllPlugins();
+                VLog.w("======== CLASS LOAD STATS ========");
+                for (PluginInfo pluginInfo : plugins) {
+                    if (!TextUtils.isEmpty(packageName) && !packageName.equals(pluginInfo.packageName)) {
+                        continue;
+                    }
+                    dumpClassLoadStats(pluginInfo);
+                }
+                VLog.w("==================================");
+            }
+        });
+    }
+
+    private static void dumpClassLoadStats(PluginInfo pluginInfo) {
+        final PluginClassLoader classLoader = pluginInfo.getPluginClassLoader();
+        final ClassLoadMonitor monitor = classLoader == null ? null : classLoader.getClassLoadMonitor();
+        if (monitor == null) {
+            return;
+        }
+
+        VLog.w("%s %s:%n%s", pluginInfo.packageName, pluginInfo.versionName, monitor.dump());
+        final File file = pluginInfo.getStartupClassListFile();
+        try {
+            final int count = classLoader.writeStartupClassList(file);
+            VLog.w("write %d startup classes to %s", count, file);
+        } catch (IOException e) {
+            VLog.w(e, "error write startup classes to %s", file);
+        }
+    }
+
+    private void dumpServiceCallMetrics() {
+        VLog.v("dumpServiceCallMetrics");
+        AsyncTask.execute(new Runnable() {
+            @Override
+            public void run() {
+                final List<ServiceCallMetrics> metricsList = PhantomServiceManager.getCallMetrics();
+                VLog.w("======== SERVICE CALL METRICS ========");
+                VLog.w("histogram bounds(ms): %s", Arrays.toString(ServiceCallMetrics.getHistogramBoundsMs()));
+                for (ServiceCallMetrics metrics : metricsList) {
+                    VLog.w(metrics.toString());
+                }
+                VLog.w("======================================");
+            }
+        });
+    }
+
     private void dumpInstalledPlugins() {
         VLog.v("dumpInstalledPlugins");
         AsyncTask.execute(new Runnable() {
@@ -0,0 +1,64 @@
+/*
+ * Copyright (C) 2017-2018 Manbang Group
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.wlqq.phantom.library;
+
+import android.support.annotation.NonNull;
+
+import com.wlqq.phantom.library.pm.InstallResult;
+import com.wlqq.phantom.library.pm.InstallSession;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.FutureTask;
+
+/**
+ * 异步安装插件的结果
+ * <p>
+ * 在安装提交（开始修改插件安装目录）之前可以通过 {@link #cancel(boolean)} 取消安装；
+ * 安装进度可通过 {@link #getSession()} 查询，或由实现了 {@link PhantomEventCallback.InstallProgressCallback} 的
+ * {@link PhantomEventCallback} 接收
+ *
+ * @see PhantomCore#installPluginAsync(String, java.util.concurrent.Executor)
+ */
+public final class InstallFuture extends FutureTask<InstallResult> {
+    private final InstallSession mSession;
+
+    InstallFuture(@NonNull InstallSession session, @NonNull Callable<InstallResult> callable) {
+        super(callable);
+        mSession = session;
+    }
+
+    /**
+     * 获取安装过程，用于查询当前安装阶段及各阶段耗时
+     *
+     * @return 安装过程
+     */
+    @NonNull
+    public InstallSession getSession() {
+        return mSession;
+    }
+
+    /**
+     * 取消安装。安装已提交或已结束时取消失败，安装线程不会被中断
+     *
+     * @param mayInterruptIfRunning 忽略
+     * @return true 取消成功；false 安装已提交或已结束
+     */
+    @Override
+    public boolean cancel(boolean mayInterruptIfRunning) {
+        return mSession.cancel() && super.cancel(false);
+    }
+}
@@ -25,7 +25,9 @@ import android.content.Intent;
 import android.content.pm.ActivityInfo;
 import android.content.pm.PackageInfo;
 import android.content.pm.PackageManager;
+import android.os.AsyncTask;
 import android.os.ConditionVariable;
+import android.os.Process;
 import android.os.SystemClock;
 import android.support.annotation.NonNull;
 import android.support.annotation.Nullable;
@@ -40,13 +42,21 @@ import com.wlqq.phantom.communication.PhantomUtils;
 import com.wlqq.phantom.library.env.Constants;
 import com.wlqq.phantom.library.log.ILogReporter;
 import com.wlqq.phantom.library.log.LogReporter;
+import com.wlqq.phantom.library.log.ServiceCallReporter;
+import com.wlqq.phantom.library.pm.DexOptScheduler;
 import com.wlqq.phantom.library.pm.InstallPluginException;
 import com.wlqq.phantom.library.pm.InstallResult;
+import com.wlqq.phantom.library.pm.InstallSession;
+import com.wlqq.phantom.library.pm.PluginIdleUnloader;
 import com.wlqq.phantom.library.pm.PluginInfo;
 import com.wlqq.phantom.library.pm.PluginManager;
+import com.wlqq.phantom.library.pm.PluginWarmUp;
 import com.wlqq.phantom.library.pool.LaunchModeManager;
 import com.wlqq.phantom.library.proxy.PhantomUtilsImpl;
+import com.wlqq.phantom.library.proxy.PluginClassLoader;
 import com.wlqq.phantom.library.proxy.PluginContext;
+import com.wlqq.phantom.library.utils.ActivityVisibleExecutor;
+import com.wlqq.phantom.library.utils.FileUtils;
 import com.wlqq.phantom.library.utils.IntentUtils;
 import com.wlqq.phantom.library.utils.TimingUtils;
 import com.wlqq.phantom.library.utils.VLog;
@@ -59,6 +69,8 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Locale;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executor;
 
 /**
  * Phantom 对外核心类，提供了主要的公开 API
@@ -175,6 +187,11 @@ public class PhantomCore {
             }
             // 注册 PhantomLib 内部提供的服务
             PhantomServiceManager.registerService(new PhantomVersionService());
+            PhantomServiceManager.setCallMetricsEnabled(config.mServiceCallMetricsEnabled);
+            if (config.mServiceCallMetricsEnabled) {
+                PhantomServiceManager.setServiceCallListener(new ServiceCallReporter(mHostPkgName),
+                        config.mSlowServiceCallThresholdMs);
+            }
             logger.addSplit("PhantomServiceManager init");
 
             if (mTurboDexEnabled) {
@@ -182,19 +199,37 @@ public class PhantomCore {
                 logger.addSplit("ARTUtils.init");
             }
 
+            PluginClassLoader.setInstrumentationEnabled(config.mClassLoadInstrumentationEnabled);
             mPluginManager = PluginManager.getInstance();
+            if (config.mDexOptAfterInstall) {
+                mPluginManager.setDexOptScheduler(new DexOptScheduler(mContext, config.mDexOptConcurrency,
+                        config.mDexOptDeferInForeground));
+            }
+            final PluginWarmUp pluginWarmUp = config.mWarmUpEnabled
+                    ? new PluginWarmUp(mContext, config.mWarmUpTimeBudgetMs, config.mWarmUpMemoryBudgetBytes) : null;
+            mPluginManager.setPluginWarmUp(pluginWarmUp);
+            if (config.mDeferReceiverRegistration) {
+                mPluginManager.setReceiverRegistrationExecutor(new ActivityVisibleExecutor(mContext));
+            }
+            mPluginManager.setStartupClassPreloadEnabled(config.mStartupClassPreloadEnabled);
+            mPluginManager.setApkIntegrityCheckEnabled(config.mApkIntegrityCheckEnabled);
+            if (config.mIdleUnloadEnabled) {
+                new PluginIdleUnloader(mContext, config.mIdleUnloadTimeoutMs).start();
+            }
             mPluginManagerInitialized = new ConditionVariable(false);
             if (mPreloadAsync) {
                 new Thread() {
                     @Override
                     public void run() {
-                        mPluginManager.init(mContext, config.mTrustedSignatures);
+                        mPluginManager.init(mContext, config.mTrustedSignatures, config.mPreloadThreadCount,
+                                config.mLazyPluginInfo);
                         mPluginManagerInitialized.open();
                     }
                 }.start();
                 logger.addSplit("PluginManager init async");
             } else {
-                mPluginManager.init(mContext, config.mTrustedSignatures);
+                mPluginManager.init(mContext, config.mTrustedSignatures, config.mPreloadThreadCount,
+                        config.mLazyPluginInfo);
                 mPluginManagerInitialized.open();
                 logger.addSplit("PluginManager init sync");
             }
@@ -202,6 +237,11 @@ public class PhantomCore {
             LaunchModeManager.getInstance().init(mContext);
             logger.addSplit("LaunchModeManager init");
 
+            if (pluginWarmUp != null) {
+                warmUpPluginsAsync(pluginWarmUp);
+                logger.addSplit("warm up plugins async");
+            }
+
             // 调试模式
             if (config.mDebug) {
                 // 启用调试服务
@@ -414,12 +454,12 @@ public class PhantomCore {
 
         notifyPluginInstallStartIfNeeded(assetsApkPath, true);
 
-        TimingUtils.startTime(assetsApkPath);
-
+        final long begin = SystemClock.elapsedRealtime();
         final InstallResult result = mPluginManager.installPluginFromAssets(assetsApkPath, mCheckVersion,
-                mCheckSignature);
+                mCheckSignature, createInstallSession(assetsApkPath, true));
 
-        trackInstallResult(result, assetsApkPath, mCheckVersion, mCheckSignature, true);
+        trackInstallResult(result, assetsApkPath, mCheckVersion, mCheckSignature, true,
+                SystemClock.elapsedRealtime() - begin);
 
         notifyPluginInstallResultIfNeeded(assetsApkPath, true, result);
 
@@ -444,19 +484,7 @@ public class PhantomCore {
         waitForPluginManagerInitCompletion();
 
         String name = String.format(Locale.ENGLISH, "%s_%s.apk", packageName, versionName);
-
-        notifyPluginInstallStartIfNeeded(name, false);
-
-        TimingUtils.startTime(name);
-
-        final InstallResult result = mPluginManager.installPlugin(apkPath, mCheckVersion, mCheckSignature,
-                forceReplace);
-
-        trackInstallResult(result, name, mCheckVersion, mCheckSignature, false);
-
-        notifyPluginInstallResultIfNeeded(name, false, result);
-
-        return result;
+        return installPlugin(apkPath, name, forceReplace, createInstallSession(name, false));
     }
 
     /**
@@ -470,29 +498,85 @@ public class PhantomCore {
         waitForPluginManagerInitCompletion();
 
         final String name = new File(apkPath).getName();
+        return installPlugin(apkPath, name, false, createInstallSession(name, false));
+    }
 
-        notifyPluginInstallStartIfNeeded(name, false);
+    /**
+     * 在 {@link AsyncTask#THREAD_POOL_EXECUTOR} 中异步安装插件
+     *
+     * @param apkPath 安装包绝对路径
+     * @return 插件安装结果，可用于取消安装
+     * @see #installPluginAsync(String, Executor)
+     */
+    @NonNull
+    public InstallFuture installPluginAsync(@NonNull String apkPath) {
+        return installPluginAsync(apkPath, AsyncTask.THREAD_POOL_EXECUTOR);
+    }
+
+    /**
+     * 在指定的 {@link Executor} 中异步安装插件，调用线程不会等待插件解析或安装完成
+     * <ul>
+     * <li>安装进度通过实现了 {@link PhantomEventCallback.InstallProgressCallback} 的 {@link PhantomEventCallback}
+     * 通知</li>
+     * <li>安装开始、成功、失败与同步安装一样通过 {@link PhantomEventCallback} 通知</li>
+     * <li>安装提交（开始修改插件安装目录）之前可以通过 {@link InstallFuture#cancel(boolean)} 取消安装</li>
+     * </ul>
+     *
+     * @param apkPath  安装包绝对路径
+     * @param executor 执行安装的 Executor
+     * @return 插件安装结果，可用于取消安装
+     */
+    @NonNull
+    public InstallFuture installPluginAsync(@NonNull final String apkPath, @NonNull Executor executor) {
+        checkInit();
 
-        TimingUtils.startTime(name);
+        final String name = new File(apkPath).getName();
+        final InstallSession session = createInstallSession(name, false);
+        final InstallFuture future = new InstallFuture(session, new Callable<InstallResult>() {
+            @Override
+            public InstallResult call() {
+                waitForPluginManagerInitCompletion();
+                return installPlugin(apkPath, name, false, session);
+            }
+        });
+        executor.execute(future);
+        return future;
+    }
 
-        final InstallResult result = mPluginManager.installPlugin(apkPath, mCheckVersion,
-                mCheckSignature);
+    private InstallResult installPlugin(String apkPath, String name, boolean forceReplace,
+            @NonNull InstallSession session) {
+        notifyPluginInstallStartIfNeeded(name, false);
 
-        trackInstallResult(result, name, mCheckVersion, mCheckSignature, false);
+        final long begin = SystemClock.elapsedRealtime();
+        final InstallResult result = mPluginManager.installPlugin(apkPath, mCheckVersion, mCheckSignature,
+                forceReplace, session);
+
+        trackInstallResult(result, name, mCheckVersion, mCheckSignature, false,
+                SystemClock.elapsedRealtime() - begin);
 
         notifyPluginInstallResultIfNeeded(name, false, result);
 
         return result;
     }
 
+    @NonNull
+    private InstallSession createInstallSession(final String name, final boolean fromAssets) {
+        return new InstallSession(name, new InstallSession.Listener() {
+            @Override
+            public void onInstallStage(@NonNull InstallSession session, int stage) {
+                notifyPluginInstallStageIfNeeded(name, fromAssets, stage);
+            }
+        });
+    }
+
     private void trackInstallResult(InstallResult installResult, String name, boolean checkVersion,
-            boolean checkSignatures, boolean fromAssets) {
+            boolean checkSignatures, boolean fromAssets, long duration) {
         HashMap<String, Object> params = new HashMap<>(3);
         params.put(LogReporter.Key.CHECK_VERSION, String.valueOf(checkVersion));
         params.put(LogReporter.Key.CHECK_SIGNATURE, String.valueOf(checkSignatures));
         params.put(LogReporter.Key.FROM_ASSETS, String.valueOf(fromAssets));
         params.put(LogReporter.Key.STATUS, String.valueOf(installResult.status));
-        final String normalizedDuration = TimingUtils.getNormalizedDuration(name,
+        final String normalizedDuration = TimingUtils.normalizeDuration(duration,
                 TimingUtils.SECTION_DURATION_100_MS, TimingUtils.MAX_SECTION_20);
         params.put(LogReporter.Key.TIME, normalizedDuration);
 
@@ -614,7 +698,22 @@ public class PhantomCore {
     }
 
     /**
-     * 等待 {@link PluginManager#init(Context, List)} 完成。若没有完成，则调用线程会阻塞
+     * 在后台线程中加载插件启动历史，待 {@link PluginManager} 初始化完成后预热插件
+     */
+    private void warmUpPluginsAsync(@NonNull final PluginWarmUp pluginWarmUp) {
+        new Thread("phantom-warm-up") {
+            @Override
+            public void run() {
+                Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                pluginWarmUp.loadHistory();
+                mPluginManagerInitialized.block();
+                pluginWarmUp.warmUp(mPluginManager);
+            }
+        }.start();
+    }
+
+    /**
+     * 等待 {@link PluginManager#init(Context, List, int, boolean)} 完成。若没有完成，则调用线程会阻塞
      */
     private void waitForPluginManagerInitCompletion() {
         // 只有在异步加载的情况下才需要等待
@@ -666,6 +765,13 @@ public class PhantomCore {
         }
     }
 
+    private void notifyPluginInstallStageIfNeeded(String name, boolean fromAssets, int stage) {
+        if (mPhantomEventCallback instanceof PhantomEventCallback.InstallProgressCallback) {
+            ((PhantomEventCallback.InstallProgressCallback) mPhantomEventCallback).onPluginInstallStage(name,
+                    fromAssets, stage);
+        }
+    }
+
     private void notifyPluginInstallResultIfNeeded(String name, boolean fromAssets,
             @NonNull InstallResult installResult) {
         if (mPhantomEventCallback != null) {
@@ -687,6 +793,11 @@ public class PhantomCore {
      * PhantomCore SDK 初始化配置参数
      */
     public static class Config {
+        private static final long DEFAULT_WARM_UP_TIME_BUDGET_MS = 3000;
+        private static final long DEFAULT_WARM_UP_MEMORY_BUDGET_BYTES = 16 * FileUtils.ONE_MB;
+        private static final long DEFAULT_IDLE_UNLOAD_TIMEOUT_MS = 5 * 60 * 1000;
+        private static final long DEFAULT_SLOW_SERVICE_CALL_THRESHOLD_MS = 100;
+
         private final List<Object> mPhantomServices;
         private final List<PhantomServiceIndex> mPhantomServiceIndices;
         private final List<String> mTrustedSignatures;
@@ -694,6 +805,22 @@ public class PhantomCore {
         private boolean mCheckVersion;
         private boolean mCheckSignature;
         private boolean mPreloadAsync;
+        private int mPreloadThreadCount;
+        private boolean mLazyPluginInfo;
+        private boolean mDexOptAfterInstall;
+        private int mDexOptConcurrency;
+        private boolean mDexOptDeferInForeground;
+        private boolean mWarmUpEnabled;
+        private long mWarmUpTimeBudgetMs;
+        private long mWarmUpMemoryBudgetBytes;
+        private boolean mDeferReceiverRegistration;
+        private boolean mClassLoadInstrumentationEnabled;
+        private boolean mStartupClassPreloadEnabled;
+        private boolean mApkIntegrityCheckEnabled;
+        private boolean mIdleUnloadEnabled;
+        private long mIdleUnloadTimeoutMs;
+        private boolean mServiceCallMetricsEnabled;
+        private long mSlowServiceCallThresholdMs;
         private boolean mTurboDexEnabled;
         private boolean mDebug;
 
@@ -707,6 +834,8 @@ public class PhantomCore {
          * <li>检查插件版本 true</li>
          * <li>校验插件签名 true</li>
          * <li>异步解析已安装的插件 true</li>
+         * <li>解析已安装的插件使用的线程数 1</li>
+         * <li>懒加载插件信息 false</li>
          * <li>优化首次加载插件速度 true</li>
          * <li>调试模式 false</li>
          * </ul>
@@ -716,6 +845,13 @@ public class PhantomCore {
             mCheckVersion = true;
             mCheckSignature = true;
             mPreloadAsync = true;
+            mPreloadThreadCount = 1;
+            mDexOptConcurrency = 1;
+            mDexOptDeferInForeground = true;
+            mWarmUpTimeBudgetMs = DEFAULT_WARM_UP_TIME_BUDGET_MS;
+            mWarmUpMemoryBudgetBytes = DEFAULT_WARM_UP_MEMORY_BUDGET_BYTES;
+            mIdleUnloadTimeoutMs = DEFAULT_IDLE_UNLOAD_TIMEOUT_MS;
+            mSlowServiceCallThresholdMs = DEFAULT_SLOW_SERVICE_CALL_THRESHOLD_MS;
             mTurboDexEnabled = true;
             mPhantomServices = new ArrayList<>();
             mPhantomServiceIndices = new ArrayList<>();
@@ -772,7 +908,8 @@ public class PhantomCore {
         }
 
         /**
-         * 是否优化首次加载插件速度；若为 true, 首次加载插件禁用 dex2oat ，而以解释执行的方式运行
+         * 是否优化首次加载插件速度；若为 true, 首次加载插件禁用 dex2oat ，而以解释执行的方式运行，之后在后台进行 dexopt。
+         * 禁用 dex2oat 期间与框架内其它 dex 加载串行，是否确实以解释执行方式加载见 {@link PluginInfo#isInterpretedLoad()}
          * <p>
          * <b>NOTE:</b>由于是以 hack 的方式实现，可能在部分设备上存在兼容性问题
          * </p>
@@ -813,6 +950,251 @@ public class PhantomCore {
             return this;
         }
 
+        /**
+         * 设置解析已安装的插件 apk 信息时使用的线程数
+         * <ul>
+         * <li>1 - 在初始化线程中逐个解析</li>
+         * <li>大于 1 - 各插件 apk 在线程池中并行解析，插件注册仍然串行执行，每个插件仍然上报
+         * {@link LogReporter.EventId#PLUGIN_PRELOAD} 事件，适用于已安装插件较多的宿主</li>
+         * </ul>
+         * 默认为 <b>1</b>
+         *
+         * @param threadCount 解析线程数，小于 1 时按 1 处理
+         * @return 该配置对象
+         */
+        public Config setPreloadThreadCount(int threadCount) {
+            mPreloadThreadCount = Math.max(1, threadCount);
+            return this;
+        }
+
+        /**
+         * 设置是否懒加载插件信息。开启后解析已安装插件时只注册包名、版本及组件声明等轻量信息，
+         * ActivityInfo 表、组件 Intent-Filter 列表、meta-data 信息、label 和 icon 在首次访问时才构建，
+         * 适用于安装了大量插件但每次只使用其中少数插件的宿主
+         * <p>
+         * <b>注意</b>：开启后已废弃的公开字段 {@code PluginInfo#label} 和 {@code PluginInfo#icon} 为 null，
+         * 直接读取这两个字段的宿主代码需改用 {@link PluginInfo#getLabel()} 和 {@link PluginInfo#getIcon()}
+         * <p>
+         * 默认为 <b>false</b>
+         *
+         * @param lazyPluginInfo true 懒加载；false 创建插件信息时全部构建
+         * @return 该配置对象
+         */
+        public Config setLazyPluginInfo(boolean lazyPluginInfo) {
+            mLazyPluginInfo = lazyPluginInfo;
+            return this;
+        }
+
+        /**
+         * 设置是否在插件安装后于后台进行 dexopt。开启后全新安装或升级安装插件成功时，在后台低优先级线程中对插件进行
+         * dexopt（升级安装优先），使插件安装后首次启动时无需进行 dexopt；插件已启动或已完成 dexopt 时跳过
+         * <p>
+         * 默认为 <b>false</b>
+         *
+         * @param dexOptAfterInstall true 安装后进行 dexopt；否则 false
+         * @return 该配置对象
+         * @see #setDexOptConcurrency(int)
+         * @see #setDexOptDeferInForeground(boolean)
+         */
+        public Config setDexOptAfterInstall(boolean dexOptAfterInstall) {
+            mDexOptAfterInstall = dexOptAfterInstall;
+            return this;
+        }
+
+        /**
+         * 设置安装后同时进行 dexopt 的最大插件数量，仅在 {@link #setDexOptAfterInstall(boolean)} 开启时有效
+         * <p>
+         * 默认为 <b>1</b>
+         *
+         * @param concurrency 最大插件数量，小于 1 时按 1 处理
+         * @return 该配置对象
+         */
+        public Config setDexOptConcurrency(int concurrency) {
+            mDexOptConcurrency = Math.max(1, concurrency);
+            return this;
+        }
+
+        /**
+         * 设置应用处于前台（有 Activity 可见）时是否推迟安装后的 dexopt，最长推迟 60 秒，
+         * 仅在 {@link #setDexOptAfterInstall(boolean)} 开启时有效
+         * <p>
+         * 默认为 <b>true</b>
+         *
+         * @param deferInForeground true 推迟；false 不推迟
+         * @return 该配置对象
+         */
+        public Config setDexOptDeferInForeground(boolean deferInForeground) {
+            mDexOptDeferInForeground = deferInForeground;
+            return this;
+        }
+
+        /**
+         * 设置是否启用插件预热。启用后记录各插件在每个进程中首次被使用的时间，并在 SDK 初始化完成后，
+         * 于后台线程中预先启动本次进程中可能被使用的插件（历史使用概率不低于 50%），使用户首次进入插件时无需等待插件加载
+         * <p>
+         * <b>注意</b>：预热时插件 {@link android.app.Application#onCreate()} 仍在主线程中执行，会占用主线程相应的时间
+         * <p>
+         * 默认为 <b>false</b>
+         *
+         * @param warmUpEnabled true 启用；false 不启用
+         * @return 该配置对象
+         * @see #setWarmUpTimeBudget(long)
+         * @see #setWarmUpMemoryBudget(long)
+         */
+        public Config setWarmUpEnabled(boolean warmUpEnabled) {
+            mWarmUpEnabled = warmUpEnabled;
+            return this;
+        }
+
+        /**
+         * 设置插件预热时间预算，预热总耗时达到该值后不再预热其它插件，仅在启用插件预热时有效
+         * <p>
+         * 默认为 <b>3000</b> 毫秒
+         *
+         * @param timeBudgetMs 时间预算(ms)
+         * @return 该配置对象
+         */
+        public Config setWarmUpTimeBudget(long timeBudgetMs) {
+            mWarmUpTimeBudgetMs = timeBudgetMs;
+            return this;
+        }
+
+        /**
+         * 设置插件预热内存预算，预热导致的 Java 堆增长达到该值后不再预热其它插件，仅在启用插件预热时有效
+         * <p>
+         * 默认为 <b>16MB</b>
+         *
+         * @param memoryBudgetBytes 内存预算(byte)
+         * @return 该配置对象
+         */
+        public Config setWarmUpMemoryBudget(long memoryBudgetBytes) {
+            mWarmUpMemoryBudgetBytes = memoryBudgetBytes;
+            return this;
+        }
+
+        /**
+         * 设置是否推迟注册插件 AndroidManifest.xml 中声明的静态广播。开启后启动插件时不注册静态广播，
+         * 而是在进程中第一个 Activity 可见之后（最长推迟 10 秒）再注册，以减少冷启动时启动插件的耗时
+         * <p>
+         * <b>注意</b>：推迟注册期间插件静态广播接收不到广播
+         * <p>
+         * 默认为 <b>false</b>
+         *
+         * @param deferReceiverRegistration true 推迟；false 启动插件时注册
+         * @return 该配置对象
+         */
+        public Config setDeferReceiverRegistration(boolean deferReceiverRegistration) {
+            mDeferReceiverRegistration = deferReceiverRegistration;
+            return this;
+        }
+
+        /**
+         * 设置是否开启插件类加载统计，统计每个插件 ClassLoader 加载各类的次数、来源、耗时，各线程的加载次数，
+         * 以及抛出的 ClassNotFoundException。开启后可通过调试广播输出统计报告并导出插件启动类列表
+         * <p>
+         * 统计有额外开销，仅用于调试
+         * <p>
+         * 默认为 <b>false</b>
+         *
+         * @param enabled true 开启；false 不开启
+         * @return 该配置对象
+         * @see com.wlqq.phantom.library.proxy.ClassLoadMonitor
+         */
+        public Config setClassLoadInstrumentationEnabled(boolean enabled) {
+            mClassLoadInstrumentationEnabled = enabled;
+            return this;
+        }
+
+        /**
+         * 设置是否开启插件启动类预加载。开启后插件每个版本首次启动时记录启动后 5 秒内加载的插件类，
+         * 之后启动插件时在创建插件 ClassLoader 后于后台线程中预先加载、链接这些类，以减少插件第一个 Activity
+         * 启动时在主线程中加载类的耗时。启动类列表保存在插件安装目录中，升级插件时删除
+         * <p>
+         * 默认为 <b>false</b>
+         *
+         * @param enabled true 开启；false 不开启
+         * @return 该配置对象
+         */
+        public Config setStartupClassPreloadEnabled(boolean enabled) {
+            mStartupClassPreloadEnabled = enabled;
+            return this;
+        }
+
+        /**
+         * 设置是否在启动插件前校验插件 APK 完整性。开启后在创建插件 ClassLoader 前通过内存映射计算插件 APK 的 md5，
+         * 与安装时计算的 md5 比较，不一致时插件启动失败（{@link com.wlqq.phantom.library.pm.ApkCorruptedException}）。
+         * 校验通过后记录 APK 文件大小及修改时间，APK 未变化时再次启动插件不再计算 md5
+         * <p>
+         * 默认为 <b>false</b>
+         *
+         * @param enabled true 开启；false 不开启
+         * @return 该配置对象
+         */
+        public Config setApkIntegrityCheckEnabled(boolean enabled) {
+            mApkIntegrityCheckEnabled = enabled;
+            return this;
+        }
+
+        /**
+         * 设置是否释放空闲插件。开启后插件连续一段时间（见 {@link #setIdleUnloadTimeout(long)}）没有存活的
+         * Activity、Service，或进程收到内存不足通知时，注销插件静态广播并丢弃插件 ClassLoader、Resources 等，
+         * 再次使用插件时重新启动插件（插件 Application#onCreate 会再次执行）
+         * <p>
+         * 只释放支持热升级且不对外提供 PhantomService 的插件
+         * <p>
+         * 默认为 <b>false</b>
+         *
+         * @param enabled true 开启；false 不开启
+         * @return 该配置对象
+         * @see PluginInfo#META_DATA_KEY_HOT_UPGRADE
+         */
+        public Config setIdleUnloadEnabled(boolean enabled) {
+            mIdleUnloadEnabled = enabled;
+            return this;
+        }
+
+        /**
+         * 设置插件空闲多长时间后释放，仅在开启释放空闲插件时有效
+         * <p>
+         * 默认为 <b>5 分钟</b>
+         *
+         * @param idleTimeoutMs 空闲时间(ms)
+         * @return 该配置对象
+         */
+        public Config setIdleUnloadTimeout(long idleTimeoutMs) {
+            mIdleUnloadTimeoutMs = idleTimeoutMs;
+            return this;
+        }
+
+        /**
+         * 设置是否统计 PhantomService 方法调用。开启后按 (服务类别, 服务名, 方法名) 统计调用次数、失败次数、耗时分布及调用方，
+         * 并上报慢调用（见 {@link #setSlowServiceCallThreshold(long)}）及调用失败事件，事件中包含调用方类名及所属插件。
+         * 统计结果可通过 {@link PhantomServiceManager#getCallMetrics()} 获取，调试模式下也可通过调试广播输出
+         * <p>
+         * 默认为 <b>false</b>
+         *
+         * @param enabled true 开启；false 不开启
+         * @return 该配置对象
+         * @see com.wlqq.phantom.library.log.ServiceCallReporter
+         */
+        public Config setServiceCallMetricsEnabled(boolean enabled) {
+            mServiceCallMetricsEnabled = enabled;
+            return this;
+        }
+
+        /**
+         * 设置 PhantomService 方法调用耗时不小于多少时上报慢调用事件，仅在开启服务调用统计时有效
+         * <p>
+         * 默认为 <b>100ms</b>
+         *
+         * @param thresholdMs 耗时阈值(ms)，不大于 0 时不上报慢调用
+         * @return 该配置对象
+         */
+        public Config setSlowServiceCallThreshold(long thresholdMs) {
+            mSlowServiceCallThresholdMs = thresholdMs;
+            return this;
+        }
+
         /**
          * 添加宿主提供的供插件调用的服务对象，服务对象类必须使用 {@link PhantomService} 注解
          *
@@ -20,6 +20,7 @@ import android.support.annotation.NonNull;
 
 import com.wlqq.phantom.library.pm.PluginInfo;
 import com.wlqq.phantom.library.pm.InstallResult;
+import com.wlqq.phantom.library.pm.InstallSession;
 
 /**
  * Phantom 相关事件回调
@@ -76,7 +77,7 @@ public interface PhantomEventCallback {
     /**
      * 插件启动开始
      * <p>
-     * <b>注意：</b>该回调方法会在调用 {@link PluginInfo#start()} 的线程里调用
+     * <b>注意：</b>该回调方法会在实际执行插件启动的线程里调用（多个线程同时启动插件时只执行一次启动）
      *
      * @param pluginInfo 已安装插件信息
      * @param firstStart 是否是安装之后首次启动
@@ -87,7 +88,7 @@ public interface PhantomEventCallback {
     /**
      * 插件启动成功
      * <p>
-     * <b>注意：</b>该回调方法会在调用 {@link PluginInfo#start()} 的线程里调用
+     * <b>注意：</b>该回调方法会在实际执行插件启动的线程里调用（多个线程同时启动插件时只执行一次启动）
      *
      * @param pluginInfo 已安装插件信息
      * @param firstStart 是否是安装之后首次启动
@@ -98,7 +99,7 @@ public interface PhantomEventCallback {
     /**
      * 插件启动失败
      * <p>
-     * <b>注意：</b>该回调方法会在调用 {@link PluginInfo#start()} 的线程里调用
+     * <b>注意：</b>该回调方法会在实际执行插件启动的线程里调用（多个线程同时启动插件时只执行一次启动）
      *
      * @param pluginInfo 已安装插件信息
      * @param firstStart 是否是安装之后首次启动
@@ -106,4 +107,26 @@ public interface PhantomEventCallback {
      * @see PluginInfo#start()
      */
     void onPluginStartFail(@NonNull PluginInfo pluginInfo, boolean firstStart, @NonNull Throwable throwable);
+
+    /**
+     * 插件安装进度回调，{@link PhantomEventCallback} 的实现类同时实现该接口时才会收到安装阶段通知
+     */
+    interface InstallProgressCallback {
+        /**
+         * 插件安装进入新的阶段
+         * <p>
+         * <b>注意：</b>该回调方法会在执行安装的线程里调用，异步安装时为
+         * {@link PhantomCore#installPluginAsync(String, java.util.concurrent.Executor)} 指定的线程
+         *
+         * @param name       插件名字
+         * @param fromAssets 安装来源是否是 assets
+         * @param stage      安装阶段
+         * @see InstallSession#STAGE_PARSE
+         * @see InstallSession#STAGE_CHECK_DEPENDENCIES
+         * @see InstallSession#STAGE_COPY_APK
+         * @see InstallSession#STAGE_EXTRACT_NATIVE_LIBRARIES
+         * @see InstallSession#STAGE_PARSE_MANIFEST
+         */
+        void onPluginInstallStage(String name, boolean fromAssets, int stage);
+    }
 }
@@ -175,6 +175,11 @@ public final class LogReporter {
          */
         public static final String PLUGIN_DEX_LOAD_FIRST = PREFIX + "_plugin_dex_load_first";
 
+        /**
+         * 插件在后台进行 dexopt 的结果及耗时
+         */
+        public static final String PLUGIN_DEX_OPT = PREFIX + "_plugin_dex_opt";
+
         /**
          * 插件<b>非首次</b>调用其 {@link Application#onCreate()}
          */
@@ -241,6 +246,16 @@ public final class LogReporter {
          */
         public static final String PLUGIN_CONTEXT_CREATE = PREFIX + "_plugin_create_context";
 
+        /**
+         * PhantomService 方法调用耗时超过阈值
+         */
+        public static final String PHANTOM_SERVICE_SLOW_CALL = PREFIX + "_service_slow_call";
+
+        /**
+         * PhantomService 方法调用失败
+         */
+        public static final String PHANTOM_SERVICE_CALL_ERROR = PREFIX + "_service_call_error";
+
         /**
          * 占位Activity clone
          */
@@ -284,5 +299,9 @@ public final class LogReporter {
         public static final String CHECK_VERSION = "check_version";
         public static final String CHECK_SIGNATURE = "check_signature";
         public static final String FROM_ASSETS = "from_assets";
+        public static final String INTERPRETED = "interpreted";
+        public static final String CATEGORY = "category";
+        public static final String SERVICE = "service";
+        public static final String CALLER_PACKAGE = "caller_package";
     }
 }
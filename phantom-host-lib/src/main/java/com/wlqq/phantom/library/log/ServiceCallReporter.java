@@ -0,0 +1,103 @@
+/*
+ * Copyright (C) 2017-2018 Manbang Group
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.wlqq.phantom.library.log;
+
+import android.support.annotation.NonNull;
+
+import com.wlqq.phantom.communication.ServiceCallListener;
+import com.wlqq.phantom.library.pm.PluginInfo;
+import com.wlqq.phantom.library.pm.PluginManager;
+import com.wlqq.phantom.library.utils.VLog;
+
+import java.util.HashMap;
+
+/**
+ * 通过 {@link LogReporter} 上报 PhantomService 慢调用及调用失败事件
+ * <p>
+ * 按调用方类名前缀匹配插件包名确定调用方所属插件，匹配不到时视为宿主调用
+ *
+ * @see com.wlqq.phantom.communication.PhantomServiceManager#setServiceCallListener(ServiceCallListener, long)
+ */
+public final class ServiceCallReporter implements ServiceCallListener {
+    private final String mHostPackageName;
+
+    /**
+     * 创建服务调用事件上报器
+     *
+     * @param hostPackageName 宿主包名，调用方不属于任何插件时上报该包名
+     */
+    public ServiceCallReporter(@NonNull String hostPackageName) {
+        mHostPackageName = hostPackageName;
+    }
+
+    @Override
+    public void onSlowCall(String category, String serviceName, String methodName, long durationMs,
+            String callerClassName) {
+        VLog.w("slow service call %s/%s#%s %dms, caller: %s", category, serviceName, methodName, durationMs,
+                callerClassName);
+        final HashMap<String, Object> params = newParams(category, serviceName, methodName, callerClassName);
+        params.put(LogReporter.Key.TIME, durationMs);
+        LogReporter.reportEvent(LogReporter.EventId.PHANTOM_SERVICE_SLOW_CALL, serviceName, params);
+    }
+
+    @Override
+    public void onCallError(String category, String serviceName, String methodName, Throwable error,
+            String callerClassName) {
+        VLog.w(error, "service call %s/%s#%s error, caller: %s", category, serviceName, methodName,
+                callerClassName);
+        final HashMap<String, Object> params = newParams(category, serviceName, methodName, callerClassName);
+        params.put(LogReporter.Key.MESSAGE, error.toString());
+        LogReporter.reportEvent(LogReporter.EventId.PHANTOM_SERVICE_CALL_ERROR, serviceName, params);
+    }
+
+    private HashMap<String, Object> newParams(String category, String serviceName, String methodName,
+            String callerClassName) {
+        final HashMap<String, Object> params = new HashMap<>(8);
+        params.put(LogReporter.Key.CATEGORY, category);
+        params.put(LogReporter.Key.SERVICE, serviceName);
+        params.put(LogReporter.Key.METHOD, methodName);
+        params.put(LogReporter.Key.CLASS, callerClassName);
+        params.put(LogReporter.Key.CALLER_PACKAGE, getCallerPackageName(callerClassName));
+        return params;
+    }
+
+    /**
+     * 确定调用方所属插件
+     *
+     * @param callerClassName 调用方类名
+     * @return 类名前缀匹配的插件包名（多个时取最长的），匹配不到时返回宿主包名
+     */
+    private String getCallerPackageName(String callerClassName) {
+        final PluginManager pluginManager = PluginManager.getInstance();
+        if (callerClassName == null || !pluginManager.isInitialized()) {
+            return mHostPackageName;
+        }
+
+        String packageName = mHostPackageName;
+        int matchedLength = 0;
+        for (PluginInfo pluginInfo : pluginManager.getAllPlugins()) {
+            final String candidate = pluginInfo.packageName;
+            if (candidate.length() > matchedLength && callerClassName.startsWith(candidate)
+                    && callerClassName.length() > candidate.length()
+                    && callerClassName.charAt(candidate.length()) == '.') {
+                packageName = candidate;
+                matchedLength = candidate.length();
+            }
+        }
+        return packageName;
+    }
+}
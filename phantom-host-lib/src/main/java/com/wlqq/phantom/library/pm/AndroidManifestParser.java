@@ -240,7 +240,15 @@ final class AndroidManifestParser {
         return parser.getAttributeValue(NAMESPACE_ANDROID, "name");
     }
 
-    static class ComponentIntentFilters {
+    /**
+     * 提供插件中各类型组件的 Intent-Filter 列表，用于按需解析
+     */
+    interface ComponentIntentFiltersProvider {
+        @NonNull
+        ComponentIntentFilters get();
+    }
+
+    static class ComponentIntentFilters implements ComponentIntentFiltersProvider {
         /**
          * All Activities
          */
@@ -260,6 +268,12 @@ final class AndroidManifestParser {
          * Launcher Activities
          */
         Set<String> mLauncherActivities = new ArraySet<>();
+
+        @NonNull
+        @Override
+        public ComponentIntentFilters get() {
+            return this;
+        }
     }
 
     private static class DataElement {
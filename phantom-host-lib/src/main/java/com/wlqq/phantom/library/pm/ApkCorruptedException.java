@@ -0,0 +1,28 @@
+/*
+ * Copyright (C) 2017-2018 Manbang Group
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.wlqq.phantom.library.pm;
+
+/**
+ * 启动插件时校验插件 APK 完整性失败：APK 文件摘要与安装时计算的摘要不一致
+ *
+ * @see PluginManager#setApkIntegrityCheckEnabled(boolean)
+ */
+public class ApkCorruptedException extends LoadPluginException {
+    public ApkCorruptedException(String message) {
+        super(message);
+    }
+}
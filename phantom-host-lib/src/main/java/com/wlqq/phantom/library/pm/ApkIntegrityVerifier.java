@@ -0,0 +1,150 @@
+/*
+ * Copyright (C) 2017-2018 Manbang Group
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.wlqq.phantom.library.pm;
+
+import android.support.annotation.NonNull;
+
+import com.wlqq.phantom.library.utils.FileUtils;
+import com.wlqq.phantom.library.utils.IoUtils;
+import com.wlqq.phantom.library.utils.SuppressFBWarnings;
+import com.wlqq.phantom.library.utils.VLog;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Locale;
+
+/**
+ * 启动插件前校验插件 APK 完整性：通过内存映射计算 APK 文件 md5，与安装时计算的摘要比较
+ * <p>
+ * 校验通过后，将 APK 文件大小、修改时间及摘要写入 APK 所在目录的校验记录，APK 文件未变化时再次启动插件不再计算摘要
+ */
+final class ApkIntegrityVerifier {
+    // 校验记录文件名
+    static final String VERIFIED_FILE = "base.verified";
+
+    /**
+     * 校验通过，APK 文件未变化，直接使用校验记录
+     */
+    static final int RESULT_RECORDED = 0;
+    /**
+     * 校验通过，计算了 APK 文件摘要
+     */
+    static final int RESULT_HASHED = 1;
+    /**
+     * 读取 APK 文件失败，无法计算摘要，未校验
+     */
+    static final int RESULT_UNVERIFIED = 2;
+
+    private static final int MAGIC = 0x50485646;   // "PHVF"
+    private static final String TMP_SUFFIX = ".tmp";
+
+    private ApkIntegrityVerifier() {
+        // prevent instantiation
+    }
+
+    /**
+     * 校验插件 APK 完整性
+     *
+     * @param apkFile        插件 APK 文件
+     * @param expectedDigest 安装时计算的 APK 文件摘要
+     * @return {@link #RESULT_RECORDED}、{@link #RESULT_HASHED} 或 {@link #RESULT_UNVERIFIED}
+     * @throws ApkCorruptedException APK 文件摘要与安装时计算的摘要不一致
+     */
+    static int verify(@NonNull File apkFile, @NonNull String expectedDigest) throws ApkCorruptedException {
+        final File verifiedFile = new File(apkFile.getParentFile(), VERIFIED_FILE);
+        final long length = apkFile.length();
+        final long lastModified = apkFile.lastModified();
+        if (isVerified(verifiedFile, length, lastModified, expectedDigest)) {
+            return RESULT_RECORDED;
+        }
+
+        String digest = FileUtils.calculateMd5Mapped(apkFile);
+        if (digest == null) {
+            // 内存映射可能因地址空间不足等原因失败，改用流式读取
+            digest = FileUtils.calculateMd5(apkFile);
+        }
+        if (digest == null) {
+            // 读取失败不代表 APK 损坏，不能据此卸载插件
+            VLog.w("can not calculate apk digest, skip verify: %s", apkFile);
+            return RESULT_UNVERIFIED;
+        }
+
+        if (!expectedDigest.equals(digest)) {
+            delete(verifiedFile);
+            throw new ApkCorruptedException(String.format(Locale.ENGLISH, "apk digest mismatch: %s, length: %d, md5: %s, "
+                    + "install md5: %s", apkFile, length, digest, expectedDigest));
+        }
+
+        writeVerified(verifiedFile, length, lastModified, expectedDigest);
+        return RESULT_HASHED;
+    }
+
+    private static boolean isVerified(File verifiedFile, long length, long lastModified, String digest) {
+        if (!verifiedFile.isFile()) {
+            return false;
+        }
+
+        DataInputStream input = null;
+        try {
+            input = new DataInputStream(new BufferedInputStream(new FileInputStream(verifiedFile)));
+            return input.readInt() == MAGIC && input.readLong() == length && input.readLong() == lastModified
+                    && digest.equals(input.readUTF());
+        } catch (IOException e) {
+            VLog.w(e, "error read apk verified record: %s", verifiedFile);
+            return false;
+        } finally {
+            IoUtils.closeQuietly(input);
+        }
+    }
+
+    private static void writeVerified(File verifiedFile, long length, long lastModified, String digest) {
+        final File tmpFile = new File(verifiedFile.getPath() + TMP_SUFFIX);
+        DataOutputStream output = null;
+        try {
+            output = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmpFile)));
+            output.writeInt(MAGIC);
+            output.writeLong(length);
+            output.writeLong(lastModified);
+            output.writeUTF(digest);
+            output.close();
+            output = null;
+
+            if (!tmpFile.renameTo(verifiedFile)) {
+                throw new IOException("rename to " + verifiedFile + " fail");
+            }
+        } catch (IOException e) {
+            VLog.w(e, "error write apk verified record: %s", verifiedFile);
+            delete(tmpFile);
+            delete(verifiedFile);
+        } finally {
+            IoUtils.closeQuietly(output);
+        }
+    }
+
+    @SuppressFBWarnings("RV_RETURN_VALUE_IGNORED_BAD_PRACTICE")
+    private static void delete(File file) {
+        if (file.exists()) {
+            file.delete();
+        }
+    }
+}
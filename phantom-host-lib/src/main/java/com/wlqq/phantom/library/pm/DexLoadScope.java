@@ -0,0 +1,177 @@
+/*
+ * Copyright (C) 2017-2018 Manbang Group
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.wlqq.phantom.library.pm;
+
+import com.taobao.android.dex.interpret.ARTUtils;
+import com.wlqq.phantom.library.log.LogReporter;
+import com.wlqq.phantom.library.utils.VLog;
+
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * 插件框架内加载 dex 的作用域，使禁用 dex2oat 的解释执行加载与其它 dex 加载串行
+ * <ul>
+ * <li>普通加载（{@link #enter()}）持有读锁，多个普通加载可以同时进行</li>
+ * <li>解释执行加载（{@link #enterInterpreted()}）持有写锁，期间禁用 dex2oat，其它线程的 dex 加载等待其结束，
+ * 不会在 dex2oat 被禁用时加载，也不会在加载过程中重新启用 dex2oat</li>
+ * <li>可重入：只有最外层的解释执行作用域禁用、启用 dex2oat；已持有读锁的线程不能升级为写锁，此时按普通加载进行</li>
+ * </ul>
+ * 后台 dexopt 耗时可达数秒，不进入作用域，以免首次启动插件的解释执行加载（常在主线程）长时间等待写锁；
+ * 改为在 dexopt 前通过 {@link #awaitInterpretedLoads()} 等待进行中的解释执行加载结束，
+ * dexopt 后通过 {@link #getInterpretedLoadCount()} 判断期间是否禁用过 dex2oat
+ * 用法：
+ * <pre>
+ * DexLoadScope scope = DexLoadScope.enterInterpreted();
+ * try {
+ *     // load dex
+ * } finally {
+ *     scope.exit();
+ * }
+ * </pre>
+ */
+final class DexLoadScope {
+    private static final ReentrantReadWriteLock sLock = new ReentrantReadWriteLock();
+    // 当前解释执行作用域的嵌套深度，持有写锁时访问
+    private static int sInterpretedDepth;
+    // 最外层解释执行作用域是否成功禁用了 dex2oat，持有写锁时访问
+    private static boolean sDex2oatDisabled;
+    // 禁用了 dex2oat 的解释执行加载次数，持有写锁时修改
+    private static volatile int sInterpretedLoadCount;
+
+    private final boolean mWriteLocked;
+    private final boolean mInterpreted;
+    private boolean mExited;
+
+    private DexLoadScope(boolean writeLocked, boolean interpreted) {
+        mWriteLocked = writeLocked;
+        mInterpreted = interpreted;
+    }
+
+    /**
+     * 进入普通 dex 加载作用域，等待进行中的解释执行加载结束
+     *
+     * @return 作用域，加载结束后须调用 {@link #exit()}
+     */
+    static DexLoadScope enter() {
+        sLock.readLock().lock();
+        return new DexLoadScope(false, sLock.isWriteLockedByCurrentThread() && sDex2oatDisabled);
+    }
+
+    /**
+     * 进入禁用 dex2oat 的解释执行加载作用域，等待其它线程进行中的 dex 加载结束
+     *
+     * @return 作用域，加载结束后须调用 {@link #exit()}；通过 {@link #isInterpreted()} 获取 dex2oat 是否确实被禁用
+     */
+    static DexLoadScope enterInterpreted() {
+        if (sLock.getReadHoldCount() > 0 && !sLock.isWriteLockedByCurrentThread()) {
+            // ReentrantReadWriteLock 不支持读锁升级为写锁，按普通加载进行
+            VLog.w("DexLoadScope: already in dex load scope, can not disable dex2oat");
+            return enter();
+        }
+
+        sLock.writeLock().lock();
+        if (sInterpretedDepth++ == 0) {
+            sDex2oatDisabled = setDex2oatEnabled(false);
+            if (sDex2oatDisabled) {
+                sInterpretedLoadCount++;
+            }
+        }
+        return new DexLoadScope(true, sDex2oatDisabled);
+    }
+
+    /**
+     * 等待进行中的解释执行加载结束，不持有作用域
+     *
+     * @return 当前禁用了 dex2oat 的解释执行加载次数，与之后 {@link #getInterpretedLoadCount()} 的返回值不同时，
+     * 期间 dex2oat 被禁用过
+     */
+    static int awaitInterpretedLoads() {
+        sLock.readLock().lock();
+        try {
+            return sInterpretedLoadCount;
+        } finally {
+            sLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * 获取禁用了 dex2oat 的解释执行加载次数
+     *
+     * @return 解释执行加载次数
+     * @see #awaitInterpretedLoads()
+     */
+    static int getInterpretedLoadCount() {
+        return sInterpretedLoadCount;
+    }
+
+    /**
+     * 本作用域内的 dex 加载是否禁用了 dex2oat（以解释执行方式运行）
+     *
+     * @return true 禁用了 dex2oat
+     */
+    boolean isInterpreted() {
+        return mInterpreted;
+    }
+
+    /**
+     * 退出作用域；最外层的解释执行作用域退出时重新启用 dex2oat
+     */
+    void exit() {
+        if (mExited) {
+            return;
+        }
+        mExited = true;
+
+        if (!mWriteLocked) {
+            sLock.readLock().unlock();
+            return;
+        }
+
+        try {
+            if (--sInterpretedDepth == 0 && sDex2oatDisabled) {
+                sDex2oatDisabled = false;
+                if (!setDex2oatEnabled(true)) {
+                    VLog.w("DexLoadScope: re-enable dex2oat failed");
+                    LogReporter.reportException(new IllegalStateException("re-enable dex2oat failed"), null);
+                }
+            }
+        } finally {
+            sLock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * 设置是否启用 dex2oat，并校验设置结果
+     *
+     * @param enabled 是否启用
+     * @return true 设置后 dex2oat 状态与 enabled 一致
+     */
+    private static boolean setDex2oatEnabled(boolean enabled) {
+        if (!ARTUtils.isInit()) {
+            return false;
+        }
+
+        try {
+            ARTUtils.setIsDex2oatEnabled(enabled);
+            final Boolean current = ARTUtils.isDex2oatEnabled();
+            return current != null && current == enabled;
+        } catch (Throwable e) {
+            VLog.w(e, "DexLoadScope: set dex2oat enabled %s error", enabled);
+            return false;
+        }
+    }
+}
@@ -0,0 +1,229 @@
+/*
+ * Copyright (C) 2017-2018 Manbang Group
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.wlqq.phantom.library.pm;
+
+import android.app.Activity;
+import android.app.Application;
+import android.content.Context;
+import android.os.Bundle;
+import android.os.Process;
+import android.os.SystemClock;
+import android.support.annotation.NonNull;
+
+import com.wlqq.phantom.library.utils.VLog;
+
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 插件 dexopt 调度器，在插件安装（全新安装或升级）提交后于后台线程中进行 dexopt，
+ * 避免插件安装后首次启动时在用户操作路径上进行 dexopt
+ * <ul>
+ * <li>按优先级执行，同优先级按提交顺序执行</li>
+ * <li>限制同时进行 dexopt 的插件数量</li>
+ * <li>可配置在应用处于前台时推迟执行，最长推迟 {@link #MAX_DEFER_MS} 毫秒</li>
+ * </ul>
+ * 插件已启动或 dex 已优化时跳过
+ *
+ * @see PluginInfo#isDexOptimized()
+ */
+public final class DexOptScheduler {
+    /**
+     * 低优先级
+     */
+    public static final int PRIORITY_LOW = 0;
+    /**
+     * 普通优先级，全新安装的插件使用该优先级
+     */
+    public static final int PRIORITY_NORMAL = 1;
+    /**
+     * 高优先级，升级安装的插件使用该优先级
+     */
+    public static final int PRIORITY_HIGH = 2;
+
+    /**
+     * 应用处于前台时最长推迟时间
+     */
+    static final long MAX_DEFER_MS = 60 * 1000;
+    private static final long KEEP_ALIVE_SECONDS = 30;
+
+    private final ThreadPoolExecutor mExecutor;
+    private final boolean mDeferInForeground;
+    private final AtomicLong mSequence = new AtomicLong();
+    private final Object mForegroundLock = new Object();
+    // 已 start 但尚未 stop 的 Activity 数量，大于 0 表示应用处于前台
+    private int mStartedActivityCount;
+
+    /**
+     * 创建 dexopt 调度器
+     *
+     * @param context           the application context
+     * @param maxConcurrency    同时进行 dexopt 的最大插件数量，小于 1 时按 1 处理
+     * @param deferInForeground 应用处于前台时是否推迟 dexopt
+     */
+    public DexOptScheduler(@NonNull Context context, int maxConcurrency, boolean deferInForeground) {
+        final int concurrency = Math.max(1, maxConcurrency);
+        mExecutor = new ThreadPoolExecutor(concurrency, concurrency, KEEP_ALIVE_SECONDS, TimeUnit.SECONDS,
+                new PriorityBlockingQueue<Runnable>(), new DexOptThreadFactory());
+        mExecutor.allowCoreThreadTimeOut(true);
+
+        mDeferInForeground = deferInForeground;
+        if (deferInForeground) {
+            final Application application = (Application) context.getApplicationContext();
+            application.registerActivityLifecycleCallbacks(new ForegroundTracker());
+        }
+    }
+
+    /**
+     * 提交插件 dexopt 任务
+     *
+     * @param pluginInfo 插件信息
+     * @param priority   优先级
+     * @see #PRIORITY_LOW
+     * @see #PRIORITY_NORMAL
+     * @see #PRIORITY_HIGH
+     */
+    public void schedule(@NonNull PluginInfo pluginInfo, int priority) {
+        VLog.i("schedule dexopt: %s_%s, priority: %d", pluginInfo.packageName, pluginInfo.versionName, priority);
+        mExecutor.execute(new Task(pluginInfo, priority, mSequence.getAndIncrement()));
+    }
+
+    /**
+     * 应用处于前台时等待应用进入后台，最长等待至 deadline
+     */
+    private void awaitBackground(long deadline) {
+        if (!mDeferInForeground) {
+            return;
+        }
+
+        synchronized (mForegroundLock) {
+            long now = SystemClock.elapsedRealtime();
+            while (mStartedActivityCount > 0 && now < deadline) {
+                try {
+                    mForegroundLock.wait(deadline - now);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+                now = SystemClock.elapsedRealtime();
+            }
+        }
+    }
+
+    private final class Task implements Runnable, Comparable<Task> {
+        private final PluginInfo mPluginInfo;
+        private final int mPriority;
+        private final long mSequence;
+        private final long mDeadline;
+
+        Task(PluginInfo pluginInfo, int priority, long sequence) {
+            mPluginInfo = pluginInfo;
+            mPriority = priority;
+            mSequence = sequence;
+            mDeadline = SystemClock.elapsedRealtime() + MAX_DEFER_MS;
+        }
+
+        @Override
+        public void run() {
+            awaitBackground(mDeadline);
+
+            final PluginInfo current = PluginManager.getInstance().findPluginByPackageName(mPluginInfo.packageName);
+            if (current != mPluginInfo) {
+                VLog.i("skip dexopt, plugin uninstalled or replaced: %s", mPluginInfo);
+                return;
+            }
+
+            final long begin = SystemClock.elapsedRealtime();
+            final boolean optimized = mPluginInfo.dexOptIfNeeded();
+            VLog.i("dexopt %s_%s, run: %s, cost: %dms", mPluginInfo.packageName, mPluginInfo.versionName, optimized,
+                    SystemClock.elapsedRealtime() - begin);
+        }
+
+        @Override
+        public int compareTo(@NonNull Task another) {
+            if (mPriority != another.mPriority) {
+                return mPriority > another.mPriority ? -1 : 1;
+            }
+            return mSequence < another.mSequence ? -1 : (mSequence == another.mSequence ? 0 : 1);
+        }
+    }
+
+    private static final class DexOptThreadFactory implements ThreadFactory {
+        private final AtomicInteger mCount = new AtomicInteger(1);
+
+        @Override
+        public Thread newThread(@NonNull final Runnable r) {
+            return new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                    r.run();
+                }
+            }, "phantom-dexopt-" + mCount.getAndIncrement());
+        }
+    }
+
+    private final class ForegroundTracker implements Application.ActivityLifecycleCallbacks {
+        @Override
+        public void onActivityStarted(Activity activity) {
+            synchronized (mForegroundLock) {
+                mStartedActivityCount++;
+            }
+        }
+
+        @Override
+        public void onActivityStopped(Activity activity) {
+            synchronized (mForegroundLock) {
+                if (mStartedActivityCount > 0) {
+                    mStartedActivityCount--;
+                }
+                if (mStartedActivityCount == 0) {
+                    mForegroundLock.notifyAll();
+                }
+            }
+        }
+
+        @Override
+        public void onActivityCreated(Activity activity, Bundle savedInstanceState) {
+            // ignore
+        }
+
+        @Override
+        public void onActivityResumed(Activity activity) {
+            // ignore
+        }
+
+        @Override
+        public void onActivityPaused(Activity activity) {
+            // ignore
+        }
+
+        @Override
+        public void onActivitySaveInstanceState(Activity activity, Bundle outState) {
+            // ignore
+        }
+
+        @Override
+        public void onActivityDestroyed(Activity activity) {
+            // ignore
+        }
+    }
+}
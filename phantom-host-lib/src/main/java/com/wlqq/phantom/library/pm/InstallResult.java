@@ -85,6 +85,12 @@ public class InstallResult {
      * @see PluginManager#PROVIDED_DEPENDENCIES_V2_FILE
      */
     public static final int ERR_SHARED_LIBRARY_DEPENDENCY_MISMATCH = 12;
+    /**
+     * 失败：安装提交前被取消
+     *
+     * @see InstallSession#cancel()
+     */
+    public static final int ERR_INSTALL_CANCELLED = 13;
     /**
      * 结果状态码
      *
@@ -99,6 +105,7 @@ public class InstallResult {
      * @see #ERR_COPY_NATIVE_SO
      * @see #ERR_PARSE_PROVIDED_LIBRARIES
      * @see #ERR_SHARED_LIBRARY_DEPENDENCY_MISMATCH
+     * @see #ERR_INSTALL_CANCELLED
      */
     public final int status;
     /**
@@ -0,0 +1,298 @@
+/*
+ * Copyright (C) 2017-2018 Manbang Group
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.wlqq.phantom.library.pm;
+
+import android.os.Build;
+import android.os.SystemClock;
+import android.os.Trace;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import com.wlqq.phantom.library.utils.VLog;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * 一次插件安装过程的控制与记录
+ * <ul>
+ * <li>按阶段记录安装耗时，并在 Android 4.3 及以上设备输出 systrace section</li>
+ * <li>进入每个安装阶段时通知 {@link Listener}</li>
+ * <li>在提交（开始修改插件安装目录）之前支持取消安装</li>
+ * </ul>
+ *
+ * @see PluginManager#installPlugin(String, boolean, boolean, boolean, InstallSession)
+ */
+public final class InstallSession {
+    /**
+     * 阶段：解析插件 APK（PackageInfo、公共库依赖声明）
+     */
+    public static final int STAGE_PARSE = 1;
+    /**
+     * 阶段：检查插件对宿主公共库、PhantomService 的依赖，版本及签名
+     */
+    public static final int STAGE_CHECK_DEPENDENCIES = 2;
+    /**
+     * 阶段：拷贝插件 APK 到安装目录，自该阶段开始安装已提交，不能再取消
+     */
+    public static final int STAGE_COPY_APK = 3;
+    /**
+     * 阶段：释放插件 so 库
+     */
+    public static final int STAGE_EXTRACT_NATIVE_LIBRARIES = 4;
+    /**
+     * 阶段：解析插件 AndroidManifest.xml 中的组件 Intent-Filter
+     */
+    public static final int STAGE_PARSE_MANIFEST = 5;
+
+    private static final int STAGE_NONE = 0;
+    private static final String TRACE_SECTION_PREFIX = "PhantomInstall:";
+
+    /**
+     * 安装阶段监听
+     */
+    public interface Listener {
+        /**
+         * 进入安装阶段，在执行安装的线程中调用
+         *
+         * @param session 安装过程
+         * @param stage   安装阶段
+         * @see #STAGE_PARSE
+         * @see #STAGE_CHECK_DEPENDENCIES
+         * @see #STAGE_COPY_APK
+         * @see #STAGE_EXTRACT_NATIVE_LIBRARIES
+         * @see #STAGE_PARSE_MANIFEST
+         */
+        void onInstallStage(@NonNull InstallSession session, int stage);
+    }
+
+    private final String mName;
+    @Nullable
+    private final Listener mListener;
+    // stage name -> duration(ms)
+    private final Map<String, Long> mStageDurations = new LinkedHashMap<>();
+    private final Object mLock = new Object();
+
+    private boolean mCancelled;
+    private boolean mCommitted;
+    private boolean mFinished;
+    private int mStage = STAGE_NONE;
+    private long mStartTime;
+    private long mStageStartTime;
+    private long mDuration;
+
+    /**
+     * 创建安装过程
+     *
+     * @param name     安装名称，用于日志及 systrace
+     * @param listener 安装阶段监听，可为 null
+     */
+    public InstallSession(@NonNull String name, @Nullable Listener listener) {
+        mName = name;
+        mListener = listener;
+    }
+
+    /**
+     * 获取安装名称
+     *
+     * @return 安装名称
+     */
+    @NonNull
+    public String getName() {
+        return mName;
+    }
+
+    /**
+     * 取消安装。安装提交之后（已开始修改插件安装目录）或安装结束后不能取消
+     * <p>
+     * 取消成功后，安装在进入下一个阶段时结束，结果状态为 {@link InstallResult#ERR_INSTALL_CANCELLED}
+     *
+     * @return true 取消成功；false 安装已提交或已结束
+     */
+    public boolean cancel() {
+        synchronized (mLock) {
+            if (mCommitted || mFinished) {
+                return false;
+            }
+            mCancelled = true;
+            return true;
+        }
+    }
+
+    /**
+     * 安装是否已取消
+     *
+     * @return true 已取消；否则 false
+     */
+    public boolean isCancelled() {
+        synchronized (mLock) {
+            return mCancelled;
+        }
+    }
+
+    /**
+     * 安装是否已提交
+     *
+     * @return true 已提交；否则 false
+     */
+    public boolean isCommitted() {
+        synchronized (mLock) {
+            return mCommitted;
+        }
+    }
+
+    /**
+     * 获取当前安装阶段
+     *
+     * @return 当前安装阶段，尚未开始时为 0
+     */
+    public int getStage() {
+        synchronized (mLock) {
+            return mStage;
+        }
+    }
+
+    /**
+     * 获取已完成的各安装阶段耗时
+     *
+     * @return 按执行顺序排列的 { 阶段名 -> 耗时(ms) }
+     */
+    @NonNull
+    public Map<String, Long> getStageDurations() {
+        synchronized (mLock) {
+            return Collections.unmodifiableMap(new LinkedHashMap<>(mStageDurations));
+        }
+    }
+
+    /**
+     * 获取安装总耗时，安装结束前为 0
+     *
+     * @return 安装总耗时(ms)
+     */
+    public long getDuration() {
+        synchronized (mLock) {
+            return mDuration;
+        }
+    }
+
+    /**
+     * 结束上一阶段并进入新的安装阶段
+     *
+     * @param stage 安装阶段
+     * @return true 进入成功；false 安装已取消
+     */
+    boolean enterStage(int stage) {
+        synchronized (mLock) {
+            if (mCancelled) {
+                return false;
+            }
+
+            final long now = SystemClock.elapsedRealtime();
+            if (mStage == STAGE_NONE) {
+                mStartTime = now;
+            } else {
+                endStage(now);
+            }
+            mStage = stage;
+            mStageStartTime = now;
+        }
+
+        beginTraceSection(stage);
+        if (mListener != null) {
+            mListener.onInstallStage(this, stage);
+        }
+        return true;
+    }
+
+    /**
+     * 提交安装，提交后不能再取消
+     *
+     * @return true 提交成功；false 安装已取消
+     */
+    boolean commit() {
+        synchronized (mLock) {
+            if (mCancelled) {
+                return false;
+            }
+            mCommitted = true;
+            return true;
+        }
+    }
+
+    /**
+     * 结束安装，输出各阶段耗时
+     */
+    void finish() {
+        synchronized (mLock) {
+            if (mFinished) {
+                return;
+            }
+            mFinished = true;
+
+            if (mStage != STAGE_NONE) {
+                final long now = SystemClock.elapsedRealtime();
+                endStage(now);
+                mDuration = now - mStartTime;
+            }
+        }
+
+        VLog.v("install %s timeline: %s, total: %dms, cancelled: %s", mName, mStageDurations, mDuration,
+                mCancelled);
+    }
+
+    private void endStage(long now) {
+        mStageDurations.put(getStageName(mStage), now - mStageStartTime);
+        endTraceSection();
+    }
+
+    private void beginTraceSection(int stage) {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN_MR2) {
+            Trace.beginSection(TRACE_SECTION_PREFIX + getStageName(stage));
+        }
+    }
+
+    private static void endTraceSection() {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN_MR2) {
+            Trace.endSection();
+        }
+    }
+
+    /**
+     * 获取安装阶段名称
+     *
+     * @param stage 安装阶段
+     * @return 安装阶段名称
+     */
+    @NonNull
+    public static String getStageName(int stage) {
+        switch (stage) {
+            case STAGE_PARSE:
+                return "parse";
+            case STAGE_CHECK_DEPENDENCIES:
+                return "check_dependencies";
+            case STAGE_COPY_APK:
+                return "copy_apk";
+            case STAGE_EXTRACT_NATIVE_LIBRARIES:
+                return "extract_native_libraries";
+            case STAGE_PARSE_MANIFEST:
+                return "parse_manifest";
+            default:
+                return "unknown";
+        }
+    }
+}
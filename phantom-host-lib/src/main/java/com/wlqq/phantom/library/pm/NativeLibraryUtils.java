@@ -19,13 +19,19 @@ package com.wlqq.phantom.library.pm;
 
 import android.os.Build;
 import android.support.annotation.NonNull;
+import android.support.v4.util.ArrayMap;
+import android.text.TextUtils;
 
 import com.wlqq.phantom.library.utils.FileUtils;
 import com.wlqq.phantom.library.utils.VLog;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Enumeration;
+import java.util.List;
+import java.util.Map;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipFile;
 
@@ -43,12 +49,17 @@ final class NativeLibraryUtils {
     static final String ABI_MIPS = "mips";
     static final String ABI_MIPS64 = "mips64";
 
+    private static final String LIB_PREFIX = "lib/";
+    private static final String SO_SUFFIX = ".so";
+
     private NativeLibraryUtils() {
         // prevent instantiation
     }
 
     /**
      * Copies native binaries to a shared library directory.
+     * <p>
+     * 先遍历一次 APK 的中央目录，按设备支持的 ABI 优先级选出要拷贝的 so 库，再只读取这些 so 库的数据
      *
      * @param apkFile          APK file to scan for native libraries
      * @param sharedLibraryDir directory for libraries to be copied to
@@ -58,79 +69,98 @@ final class NativeLibraryUtils {
         ZipFile zipFile = null;
         try {
             zipFile = new ZipFile(apkFile);
-
-            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP) {
-                for (String abi : Build.SUPPORTED_ABIS) {
-                    if (copyNativeBinaries(zipFile, sharedLibraryDir, abi)) {
-                        VLog.i("copyNativeBinaries ok, abi: %s", abi);
-                        return;
-                    }
-                }
-            }
-
-            if (copyNativeBinaries(zipFile, sharedLibraryDir, Build.CPU_ABI)) {
-                VLog.i("copyNativeBinaries ok, abi: %s", Build.CPU_ABI);
-                return;
-            }
-
-            if (copyNativeBinaries(zipFile, sharedLibraryDir, Build.CPU_ABI2)) {
-                VLog.i("copyNativeBinaries ok, abi: %s", Build.CPU_ABI2);
-                return;
-            }
-
-            if (copyNativeBinaries(zipFile, sharedLibraryDir, ABI_ARMEABI)) {
-                VLog.i("copyNativeBinaries ok, abi: %s", ABI_ARMEABI);
-                return;
-            }
-
-            VLog.i("copyNativeBinaries not found");
-
         } catch (IOException e) {
             final String msg = "copyNativeBinaries error, create ZipFile error";
             VLog.w(e, msg);
             FileUtils.cleanDir(sharedLibraryDir);
             throw new CopyNativeSoException(msg, e);
+        }
+
+        try {
+            final Map<String, List<ZipEntry>> nativeLibraries = findNativeLibraries(zipFile);
+            for (String abi : getSupportedAbis()) {
+                final List<ZipEntry> entries = nativeLibraries.get(abi);
+                if (entries != null) {
+                    copyNativeBinaries(zipFile, sharedLibraryDir, abi, entries);
+                    VLog.i("copyNativeBinaries ok, abi: %s", abi);
+                    return;
+                }
+            }
+
+            VLog.i("copyNativeBinaries not found");
         } finally {
             FileUtils.closeZipFileQuietly(zipFile);
         }
     }
 
     /**
-     * Copies native binaries to a shared library directory.
+     * 按优先级获取设备支持的 ABI 列表
      *
-     * @param zipFile          APK file to scan for native libraries
-     * @param sharedLibraryDir directory for libraries to be copied to
-     * @param abi              device abi type
-     * @return copy so successfully
-     * @throws CopyNativeSoException 拷贝 so 失败
-     * @see #ABI_ARMEABI
-     * @see #ABI_ARMEABI_V7A
-     * @see #ABI_ARM64_V8A
-     * @see #ABI_X86
-     * @see #ABI_X86_64
-     * @see #ABI_MIPS
-     * @see #ABI_MIPS64
+     * @return 设备支持的 ABI 列表，优先级高的在前
+     */
+    @NonNull
+    static List<String> getSupportedAbis() {
+        final List<String> abis = new ArrayList<>();
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP) {
+            Collections.addAll(abis, Build.SUPPORTED_ABIS);
+        }
+        addAbiIfAbsent(abis, Build.CPU_ABI);
+        addAbiIfAbsent(abis, Build.CPU_ABI2);
+        addAbiIfAbsent(abis, ABI_ARMEABI);
+        return abis;
+    }
+
+    private static void addAbiIfAbsent(List<String> abis, String abi) {
+        if (!TextUtils.isEmpty(abi) && !abis.contains(abi)) {
+            abis.add(abi);
+        }
+    }
+
+    /**
+     * 遍历一次 APK 中央目录，找出各 ABI 下的 so 库
+     *
+     * @param zipFile APK file to scan for native libraries
+     * @return abi -> so 库列表
      */
-    static boolean copyNativeBinaries(@NonNull ZipFile zipFile, @NonNull File sharedLibraryDir, @NonNull String abi)
-            throws CopyNativeSoException {
-        int copiedSoCount = 0;
+    @NonNull
+    private static Map<String, List<ZipEntry>> findNativeLibraries(@NonNull ZipFile zipFile) {
+        final Map<String, List<ZipEntry>> nativeLibraries = new ArrayMap<>();
+        final Enumeration<? extends ZipEntry> entries = zipFile.entries();
+        while (entries.hasMoreElements()) {
+            final ZipEntry entry = entries.nextElement();
+            final String name = entry.getName();
+            if (entry.isDirectory() || name.contains("../")
+                    || !name.startsWith(LIB_PREFIX) || !name.endsWith(SO_SUFFIX)) {
+                continue;
+            }
+
+            // lib/<abi>/<so name>
+            final int abiEnd = name.indexOf('/', LIB_PREFIX.length());
+            if (abiEnd < 0) {
+                continue;
+            }
+
+            final String abi = name.substring(LIB_PREFIX.length(), abiEnd);
+            List<ZipEntry> abiEntries = nativeLibraries.get(abi);
+            if (abiEntries == null) {
+                abiEntries = new ArrayList<>();
+                nativeLibraries.put(abi, abiEntries);
+            }
+            abiEntries.add(entry);
+        }
+        return nativeLibraries;
+    }
+
+    private static void copyNativeBinaries(@NonNull ZipFile zipFile, @NonNull File sharedLibraryDir,
+            @NonNull String abi, @NonNull List<ZipEntry> entries) throws CopyNativeSoException {
         try {
-            Enumeration<? extends ZipEntry> entries = zipFile.entries();
-            while (entries.hasMoreElements()) {
-                ZipEntry entry = entries.nextElement();
-                String name = entry.getName();
-                if (name.contains("../")) {
-                    continue;
-                }
-                if (!entry.isDirectory() && name.startsWith("lib/" + abi + "/") && name.endsWith(".so")) {
-                    String soName = name.substring(name.lastIndexOf('/') + 1);
-                    final File destination = new File(sharedLibraryDir, soName);
-                    VLog.w("copy from %s to %s", name, destination);
-                    FileUtils.copyInputStreamToFile(zipFile.getInputStream(entry), destination);
-                    copiedSoCount++;
-                }
+            for (ZipEntry entry : entries) {
+                final String name = entry.getName();
+                final String soName = name.substring(name.lastIndexOf('/') + 1);
+                final File destination = new File(sharedLibraryDir, soName);
+                VLog.w("copy from %s to %s", name, destination);
+                FileUtils.copyInputStreamToFile(zipFile.getInputStream(entry), destination);
             }
-            return copiedSoCount > 0;
         } catch (IOException e) {
             final String msg = "copyNativeBinaries error, abi: " + abi;
             VLog.w(e, msg);
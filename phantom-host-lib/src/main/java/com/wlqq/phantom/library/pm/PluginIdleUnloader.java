@@ -0,0 +1,148 @@
+/*
+ * Copyright (C) 2017-2018 Manbang Group
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.wlqq.phantom.library.pm;
+
+import android.content.ComponentCallbacks2;
+import android.content.Context;
+import android.content.res.Configuration;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.support.annotation.NonNull;
+import android.support.v4.util.ArrayMap;
+
+import com.wlqq.phantom.library.utils.VLog;
+
+import java.util.List;
+
+/**
+ * 释放空闲插件，使长时间运行的进程不会因用过的插件一直驻留而占用过多内存
+ * <ul>
+ * <li>插件连续 idleTimeout 时间没有存活的 Activity、Service 时释放</li>
+ * <li>收到 {@link ComponentCallbacks2#onTrimMemory(int)} 内存不足通知时，立即释放所有空闲插件</li>
+ * </ul>
+ * 只释放满足 {@link PluginInfo#isUnloadable()} 的插件，释放后再次使用插件时重新启动。检查与释放均在主线程中进行
+ *
+ * @see PluginInfo#unload(Context)
+ */
+public final class PluginIdleUnloader implements ComponentCallbacks2 {
+    /**
+     * 最短检查间隔
+     */
+    static final long MIN_CHECK_INTERVAL_MS = 10 * 1000;
+
+    private final Context mContext;
+    private final long mIdleTimeoutMs;
+    private final long mCheckIntervalMs;
+    private final Handler mMainHandler = new Handler(Looper.getMainLooper());
+    // plugin package name -> 最近一次观察到插件有存活组件的时间（elapsedRealtime）
+    private final ArrayMap<String, Long> mLastActiveTimes = new ArrayMap<>();
+    private final Runnable mCheckTask = new Runnable() {
+        @Override
+        public void run() {
+            unloadIdlePlugins(false);
+            mMainHandler.postDelayed(this, mCheckIntervalMs);
+        }
+    };
+
+    /**
+     * 创建空闲插件释放器
+     *
+     * @param context       the application context
+     * @param idleTimeoutMs 插件空闲多长时间后释放(ms)
+     */
+    public PluginIdleUnloader(@NonNull Context context, long idleTimeoutMs) {
+        mContext = context.getApplicationContext();
+        mIdleTimeoutMs = idleTimeoutMs;
+        mCheckIntervalMs = Math.max(MIN_CHECK_INTERVAL_MS, idleTimeoutMs / 2);
+    }
+
+    /**
+     * 开始定期检查空闲插件，并监听内存不足通知
+     */
+    public void start() {
+        mContext.registerComponentCallbacks(this);
+        mMainHandler.postDelayed(mCheckTask, mCheckIntervalMs);
+    }
+
+    /**
+     * 释放空闲插件
+     *
+     * @param ignoreIdleTimeout true 释放所有当前没有存活组件的插件；false 只释放空闲超过 idleTimeout 的插件
+     * @return 释放的插件数量
+     */
+    int unloadIdlePlugins(boolean ignoreIdleTimeout) {
+        final PluginManager pluginManager = PluginManager.getInstance();
+        if (!pluginManager.isInitialized()) {
+            return 0;
+        }
+
+        final long now = SystemClock.elapsedRealtime();
+        final List<PluginInfo> plugins = pluginManager.getAllPlugins();
+        int count = 0;
+        for (PluginInfo pluginInfo : plugins) {
+            if (!pluginInfo.isStarted()) {
+                mLastActiveTimes.remove(pluginInfo.packageName);
+                continue;
+            }
+
+            if (!pluginInfo.isUnloadable()) {
+                mLastActiveTimes.put(pluginInfo.packageName, now);
+                continue;
+            }
+
+            final Long lastActiveTime = mLastActiveTimes.get(pluginInfo.packageName);
+            if (lastActiveTime == null) {
+                // 首次观察到插件空闲，从此时开始计时
+                mLastActiveTimes.put(pluginInfo.packageName, now);
+                if (!ignoreIdleTimeout) {
+                    continue;
+                }
+            } else if (!ignoreIdleTimeout && now - lastActiveTime < mIdleTimeoutMs) {
+                continue;
+            }
+
+            if (pluginInfo.unload(mContext)) {
+                mLastActiveTimes.remove(pluginInfo.packageName);
+                count++;
+            }
+        }
+
+        if (count > 0) {
+            VLog.i("unload %d idle plugins, ignoreIdleTimeout: %s", count, ignoreIdleTimeout);
+        }
+        return count;
+    }
+
+    @Override
+    public void onTrimMemory(int level) {
+        if (level == TRIM_MEMORY_RUNNING_LOW || level == TRIM_MEMORY_RUNNING_CRITICAL
+                || level >= TRIM_MEMORY_BACKGROUND) {
+            unloadIdlePlugins(true);
+        }
+    }
+
+    @Override
+    public void onLowMemory() {
+        unloadIdlePlugins(true);
+    }
+
+    @Override
+    public void onConfigurationChanged(Configuration newConfig) {
+        // ignore
+    }
+}
@@ -31,34 +31,49 @@ import android.content.res.Resources;
 import android.graphics.drawable.Drawable;
 import android.os.AsyncTask;
 import android.os.Bundle;
+import android.os.SystemClock;
 import android.support.annotation.NonNull;
 import android.support.annotation.Nullable;
 import android.support.v4.util.ArrayMap;
 import android.text.TextUtils;
 import android.util.TimingLogger;
 
+import dalvik.system.DexClassLoader;
 import dalvik.system.DexFile;
 
-import com.taobao.android.dex.interpret.ARTUtils;
 import com.wlqq.phantom.library.PhantomCore;
 import com.wlqq.phantom.library.PhantomEventCallback;
 import com.wlqq.phantom.library.env.Constants;
 import com.wlqq.phantom.library.log.LogReporter;
+import com.wlqq.phantom.library.pool.LaunchModeManager;
 import com.wlqq.phantom.library.proxy.ApplicationHostProxy;
+import com.wlqq.phantom.library.proxy.CommonLibraryClassLoader;
 import com.wlqq.phantom.library.proxy.PluginClassLoader;
 import com.wlqq.phantom.library.proxy.ResourcesProxy;
+import com.wlqq.phantom.library.proxy.ServiceHostProxyManager;
 import com.wlqq.phantom.library.utils.FileUtils;
 import com.wlqq.phantom.library.utils.SuppressFBWarnings;
+import com.wlqq.phantom.library.utils.ThreadUtils;
 import com.wlqq.phantom.library.utils.TimingUtils;
 import com.wlqq.phantom.library.utils.VLog;
 
 import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantLock;
 
@@ -134,9 +149,76 @@ public final class PluginInfo {
      * @see #isHotUpgrade()
      */
     public static final String META_DATA_KEY_HOT_UPGRADE = "phantom.hot_upgrade";
+    /**
+     * 该 APK 是否为 <b>公共库</b>，取值
+     * <ul>
+     * <li><code>true</code></li>
+     * <li><code>false(默认)</code></li>
+     * </ul>
+     * 公共库 APK 只包含多个插件共同依赖、而宿主未提供的第三方库代码，像插件一样安装，但不启动。
+     * 依赖公共库的插件（见 {@link #META_DATA_KEY_IMPORT_COMMON_LIBRARY_PREFIX}）的 ClassLoader 以公共库 ClassLoader
+     * 为 parent，同一公共库在进程中只加载、dexopt 一次
+     * <pre>{@code
+     *     <application>
+     *         ...
+     *         <meta-data android:name="phantom.common_library" android:value="true"/>
+     *         <!-- 公共库包含的包名，逗号分隔，依赖该公共库的插件优先从公共库中加载这些包中的类 -->
+     *         <meta-data android:name="phantom.common_library.packages" android:value="okhttp3,okio"/>
+     *         ...
+     *     </application>}
+     * </pre>
+     *
+     * @see #isCommonLibrary()
+     * @see #META_DATA_KEY_COMMON_LIBRARY_PACKAGES
+     */
+    public static final String META_DATA_KEY_COMMON_LIBRARY = "phantom.common_library";
+    /**
+     * 公共库包含的包名，逗号分隔
+     *
+     * @see #META_DATA_KEY_COMMON_LIBRARY
+     */
+    public static final String META_DATA_KEY_COMMON_LIBRARY_PACKAGES = "phantom.common_library.packages";
+    /**
+     * 通过 AndroidManifest.xml 中 meta-data 配置插件依赖的公共库及其最低版本号(versionCode). e.g.
+     * <pre>{@code
+     *     <application>
+     *         ...
+     *         <!-- 该插件依赖包名为 com.wlqq.phantom.library.network 的公共库，其 versionCode 必须大于等于 2 -->
+     *         <meta-data android:name="phantom.common_library.import.com.wlqq.phantom.library.network"
+     *             android:value="2"/>
+     *         ...
+     *     </application>}
+     * </pre>
+     * 插件打包时应通过 phantom-gradle-plugin 的 excludeLib 排除公共库中已包含的库
+     *
+     * @see #META_DATA_KEY_COMMON_LIBRARY
+     */
+    public static final String META_DATA_KEY_IMPORT_COMMON_LIBRARY_PREFIX = "phantom.common_library.import.";
+    /**
+     * 启动阶段：创建插件 ClassLoader
+     */
+    public static final String STAGE_CLASS_LOADER = "class_loader";
+    /**
+     * 启动阶段：校验插件 APK 完整性
+     */
+    public static final String STAGE_VERIFY_APK = "verify_apk";
+    /**
+     * 启动阶段：创建插件 AssetManager 及 Resources
+     */
+    public static final String STAGE_RESOURCES = "resources";
+    /**
+     * 启动阶段：创建插件 Application
+     */
+    public static final String STAGE_APPLICATION = "application";
+    /**
+     * 启动阶段：注册插件静态广播
+     */
+    public static final String STAGE_RECEIVERS = "receivers";
     static final String META_DATA_KEY_IMPORT_SERVICE_PREFIX = "phantom.service.import.";
     static final int META_DATA_KEY_EXPORT_SERVICE_PREFIX_LENGTH = META_DATA_KEY_EXPORT_SERVICE_PREFIX.length();
     static final int META_DATA_KEY_IMPORT_SERVICE_PREFIX_LENGTH = META_DATA_KEY_IMPORT_SERVICE_PREFIX.length();
+    static final int META_DATA_KEY_IMPORT_COMMON_LIBRARY_PREFIX_LENGTH =
+            META_DATA_KEY_IMPORT_COMMON_LIBRARY_PREFIX.length();
     /**
      * <pre>{@code
      *     <application>
@@ -151,13 +233,25 @@ public final class PluginInfo {
     private static final String META_DATA_KEY_JENKINS_BUILD_NUMBER = "JENKINS_BUILD_NUMBER";
     /**
      * 插件 AndroidManifest.xml 中 application 元素的 label 属性值
+     * <p>
+     * <b>行为变化</b>：开启懒加载插件信息（{@link com.wlqq.phantom.library.PhantomCore.Config#setLazyPluginInfo(boolean)}）
+     * 后该字段为 null；未开启时与之前一致
+     *
+     * @deprecated 使用 {@link #getLabel()}，在懒加载模式下同样可用
      */
+    @Deprecated
     @Nullable
     public final String label;
-    @Nullable
     /**
      * 插件 AndroidManifest.xml 中 application 元素的 icon 属性值
+     * <p>
+     * <b>行为变化</b>：开启懒加载插件信息（{@link com.wlqq.phantom.library.PhantomCore.Config#setLazyPluginInfo(boolean)}）
+     * 后该字段为 null；未开启时与之前一致
+     *
+     * @deprecated 使用 {@link #getIcon()}，在懒加载模式下同样可用
      */
+    @Deprecated
+    @Nullable
     public final Drawable icon;
     /**
      * 插件 AndroidManifest.xml 中 manifest 元素的 package 属性值
@@ -199,19 +293,27 @@ public final class PluginInfo {
     /**
      * key is Activity ComponentName
      */
-    private final ArrayMap<ComponentName, ActivityInfo> mActivitiesInfo;
+    private volatile ArrayMap<ComponentName, ActivityInfo> mActivitiesInfo;
     /**
      * Registered global BroadcastReceiver list
      */
     private final List<BroadcastReceiver> mGlobalBroadcastReceivers;
+    // 插件静态广播是否已注销（插件已卸载），之后不再注册
+    private boolean mReceiversUnregistered;
+    // 最近一次启动插件时各阶段耗时
+    private volatile Map<String, Long> mStartStageDurations;
     // 依赖宿主提供的公共库 GAV Set
     private final Map<String, String> mProvidedDependencies;
-    // activity -> intent filters
-    private final Map<String, List<IntentFilter>> mActivities;
-    // service -> intent filters
-    private final Map<String, List<IntentFilter>> mServices;
-    // receiver -> intent filters
-    private final Map<String, List<IntentFilter>> mReceivers;
+    // 宿主 PackageManager，懒加载模式下用于首次访问时加载 label 和 icon
+    private PackageManager mPackageManager;
+    private AndroidManifestParser.ComponentIntentFiltersProvider mComponentIntentFiltersProvider;
+    // 插件中各类型组件 Intent-Filter 列表，懒加载模式下首次访问时才解析
+    private volatile AndroidManifestParser.ComponentIntentFilters mComponentIntentFilters;
+    // 懒加载模式下首次访问 meta-data 相关信息时才解析
+    private volatile boolean mMetaDataParsed;
+    private volatile boolean mLabelAndIconLoaded;
+    private String mLabel;
+    private Drawable mIcon;
     private int mJenkinsBuildNumber;
     // 是否在插件管理页中隐藏该插件，默认 false
     private boolean mHidden;
@@ -221,18 +323,38 @@ public final class PluginInfo {
     private ArrayMap<String, Integer> mExportServiceMap;
     // 需要使用的服务 { service_name -> service_version }
     private ArrayMap<String, Integer> mImportServiceMap;
+    // 是否为公共库
+    private boolean mCommonLibrary;
+    // 公共库包含的包名
+    private List<String> mCommonLibraryPackages;
+    // 依赖的公共库 { package_name -> min_version_code }
+    private ArrayMap<String, Integer> mImportCommonLibraryMap;
+    // 公共库 ClassLoader，仅公共库使用
+    private volatile ClassLoader mCommonLibraryClassLoader;
     /**
      * The launcher Activities class list
      */
-    private List<String> mLauncherActivities;
+    private volatile List<String> mLauncherActivities;
     private AssetManager mPluginAssetManager;
     private Resources mPluginResources;
     private PluginClassLoader mPluginClassLoader;
     private ApplicationHostProxy mApplication;
 
     private volatile boolean mStarted;
+    // 安装时计算的插件 APK 文件 md5
+    private String mApkDigest;
+    // 最近一次校验通过的插件 APK 文件大小及修改时间，APK 文件未变化时不再校验
+    private long mVerifiedApkLength = -1;
+    private long mVerifiedApkLastModified = -1;
 
+    // 保护 mStartFuture
     private final Lock mLock = new ReentrantLock();
+    // 进行中或已成功的插件启动任务，多个线程同时启动插件时共享同一个启动任务
+    private FutureTask<Boolean> mStartFuture;
+    // 保证同一插件的 dexopt（后台 dexopt 与创建插件 ClassLoader）串行进行
+    private final Lock mDexOptLock = new ReentrantLock();
+    // 最近一次创建插件 ClassLoader 时是否禁用了 dex2oat（以解释执行方式运行）
+    private volatile boolean mInterpretedLoad;
 
     /**
      * 创建插件描述实例
@@ -250,6 +372,30 @@ public final class PluginInfo {
             PackageInfo packageInfo, PackageManager packageManager,
             AndroidManifestParser.ComponentIntentFilters componentIntentFilters,
             Map<String, String> providedDependencies) {
+        this(apkPath, libPath, odexDir, odexPath, packageInfo, packageManager, componentIntentFilters,
+                providedDependencies, false);
+    }
+
+    /**
+     * 创建插件描述实例
+     * <p>
+     * 懒加载模式下仅保留包名、版本及组件声明等轻量信息，ActivityInfo 表、组件 Intent-Filter 列表、meta-data 信息、
+     * label 和 icon 在首次访问时才构建，以减少安装了大量插件但只使用其中少数插件时的内存占用和启动耗时
+     *
+     * @param apkPath                插件 APK 路径
+     * @param libPath                插件 APK 中 so 释放路径
+     * @param odexDir                插件 odex 文件所在目录
+     * @param odexPath               插件 odex 文件路径
+     * @param packageInfo            插件对应的 PackageInfo 对象
+     * @param packageManager         宿主 PackageManager 实例
+     * @param componentIntentFilters 插件中各类型组件 Intent-Filter 列表
+     * @param providedDependencies   插件对宿主 maven 库依赖描述信息
+     * @param lazy                   是否启用懒加载模式
+     */
+    PluginInfo(String apkPath, String libPath, String odexDir, String odexPath,
+            PackageInfo packageInfo, PackageManager packageManager,
+            AndroidManifestParser.ComponentIntentFiltersProvider componentIntentFilters,
+            Map<String, String> providedDependencies, boolean lazy) {
         this.apkPath = apkPath;
         this.packageName = packageInfo.packageName;
         this.libPath = libPath;
@@ -260,17 +406,9 @@ public final class PluginInfo {
         this.packageInfo = packageInfo;
         this.installDir = new File(apkPath).getParentFile();
 
-        mActivitiesInfo = new ArrayMap<>();
         mProvidedDependencies = providedDependencies;
-
-        mActivities = componentIntentFilters.mActivities;
-        mServices = componentIntentFilters.mServices;
-        mReceivers = componentIntentFilters.mReceivers;
-        mLauncherActivities = new ArrayList<>(componentIntentFilters.mLauncherActivities);
-
-        parseActivityInfo();
-        parseMetaData();
-
+        mComponentIntentFiltersProvider = componentIntentFilters;
+        mPackageManager = packageManager;
         mGlobalBroadcastReceivers = new ArrayList<>();
 
         final ApplicationInfo applicationInfo = packageInfo.applicationInfo;
@@ -278,11 +416,60 @@ public final class PluginInfo {
             applicationInfo.sourceDir = apkPath;
             applicationInfo.publicSourceDir = apkPath;
             applicationInfo.nativeLibraryDir = libPath;
-            this.label = applicationInfo.loadLabel(packageManager).toString();
-            this.icon = loadApplicationIconSafe(applicationInfo, packageManager);
-        } else {
+        }
+
+        if (lazy) {
             this.label = null;
             this.icon = null;
+        } else {
+            getActivitiesInfo();
+            getLauncherActivities();
+            ensureMetaDataParsed();
+            ensureLabelAndIconLoaded();
+            this.label = mLabel;
+            this.icon = mIcon;
+        }
+    }
+
+    /**
+     * 获取插件 AndroidManifest.xml 中 application 元素的 label 属性值，懒加载模式下首次调用时加载
+     *
+     * @return label 属性值
+     */
+    @Nullable
+    public String getLabel() {
+        ensureLabelAndIconLoaded();
+        return mLabel;
+    }
+
+    /**
+     * 获取插件 AndroidManifest.xml 中 application 元素的 icon 属性值，懒加载模式下首次调用时加载
+     *
+     * @return icon 属性值
+     */
+    @Nullable
+    public Drawable getIcon() {
+        ensureLabelAndIconLoaded();
+        return mIcon;
+    }
+
+    private void ensureLabelAndIconLoaded() {
+        if (mLabelAndIconLoaded) {
+            return;
+        }
+
+        synchronized (this) {
+            if (mLabelAndIconLoaded) {
+                return;
+            }
+
+            final ApplicationInfo applicationInfo = packageInfo.applicationInfo;
+            if (applicationInfo != null) {
+                mLabel = applicationInfo.loadLabel(mPackageManager).toString();
+                mIcon = loadApplicationIconSafe(applicationInfo, mPackageManager);
+            }
+            mPackageManager = null;
+            mLabelAndIconLoaded = true;
         }
     }
 
@@ -305,6 +492,7 @@ public final class PluginInfo {
      * @return jenkins build number
      */
     public int getJenkinsBuildNumber() {
+        ensureMetaDataParsed();
         return mJenkinsBuildNumber;
     }
 
@@ -315,6 +503,7 @@ public final class PluginInfo {
      * @see #META_DATA_KEY_HIDDEN
      */
     public boolean isHidden() {
+        ensureMetaDataParsed();
         return mHidden;
     }
 
@@ -325,6 +514,7 @@ public final class PluginInfo {
      * @see #META_DATA_KEY_HOT_UPGRADE
      */
     public boolean isHotUpgrade() {
+        ensureMetaDataParsed();
         return mHotUpgrade;
     }
 
@@ -346,6 +536,16 @@ public final class PluginInfo {
         return getDexDir(PluginManager.EXTRA_ODEX_DIR);
     }
 
+    /**
+     * 插件启动类列表文件，每行一个类名，按插件版本区分
+     *
+     * @return 启动类列表文件
+     * @see com.wlqq.phantom.library.proxy.ClassLoadMonitor#writeClassList
+     */
+    public File getStartupClassListFile() {
+        return new File(installDir, StartupClassPreloader.CLASS_LIST_FILE_PREFIX + versionCode + ".txt");
+    }
+
     @SuppressFBWarnings("RV_RETURN_VALUE_IGNORED_BAD_PRACTICE")
     private File getDexDir(String dir) {
         File extraDexDir = new File(installDir, dir);
@@ -355,10 +555,25 @@ public final class PluginInfo {
         return extraDexDir;
     }
 
+    private void ensureMetaDataParsed() {
+        if (mMetaDataParsed) {
+            return;
+        }
+
+        synchronized (this) {
+            if (!mMetaDataParsed) {
+                parseMetaData();
+                mMetaDataParsed = true;
+            }
+        }
+    }
+
     // 解析插件 AndroidManifest 中的 meta-data 元素
     private void parseMetaData() {
         mExportServiceMap = new ArrayMap<>();
         mImportServiceMap = new ArrayMap<>();
+        mImportCommonLibraryMap = new ArrayMap<>();
+        mCommonLibraryPackages = new ArrayList<>();
 
         final ApplicationInfo applicationInfo = packageInfo.applicationInfo;
         if (applicationInfo == null) {
@@ -373,6 +588,15 @@ public final class PluginInfo {
         mJenkinsBuildNumber = appMetaData.getInt(META_DATA_KEY_JENKINS_BUILD_NUMBER);
         mHidden = appMetaData.getBoolean(META_DATA_KEY_HIDDEN);
         mHotUpgrade = appMetaData.getBoolean(META_DATA_KEY_HOT_UPGRADE);
+        mCommonLibrary = appMetaData.getBoolean(META_DATA_KEY_COMMON_LIBRARY);
+        final String commonLibraryPackages = appMetaData.getString(META_DATA_KEY_COMMON_LIBRARY_PACKAGES);
+        if (!TextUtils.isEmpty(commonLibraryPackages)) {
+            for (String pkg : commonLibraryPackages.split(",")) {
+                if (!TextUtils.isEmpty(pkg.trim())) {
+                    mCommonLibraryPackages.add(pkg.trim());
+                }
+            }
+        }
 
         for (String key : appMetaData.keySet()) {
             if (TextUtils.isEmpty(key)) {
@@ -389,20 +613,58 @@ public final class PluginInfo {
                 if (!TextUtils.isEmpty(serviceName)) {
                     mImportServiceMap.put(serviceName, appMetaData.getInt(key));
                 }
+            } else if (key.startsWith(META_DATA_KEY_IMPORT_COMMON_LIBRARY_PREFIX)) {
+                final String libraryName = key.substring(META_DATA_KEY_IMPORT_COMMON_LIBRARY_PREFIX_LENGTH);
+                if (!TextUtils.isEmpty(libraryName)) {
+                    mImportCommonLibraryMap.put(libraryName, appMetaData.getInt(key));
+                }
             }
         }
     }
 
-    private void parseActivityInfo() {
+    @NonNull
+    private ArrayMap<ComponentName, ActivityInfo> getActivitiesInfo() {
+        ArrayMap<ComponentName, ActivityInfo> activitiesInfo = mActivitiesInfo;
+        if (activitiesInfo == null) {
+            synchronized (this) {
+                activitiesInfo = mActivitiesInfo;
+                if (activitiesInfo == null) {
+                    activitiesInfo = parseActivityInfo();
+                    mActivitiesInfo = activitiesInfo;
+                }
+            }
+        }
+        return activitiesInfo;
+    }
+
+    private ArrayMap<ComponentName, ActivityInfo> parseActivityInfo() {
         final ActivityInfo[] activities = packageInfo.activities;
 
         if (activities == null) {
-            return;
+            return new ArrayMap<>();
         }
 
+        final ArrayMap<ComponentName, ActivityInfo> activitiesInfo = new ArrayMap<>(activities.length);
         for (ActivityInfo activityInfo : activities) {
-            mActivitiesInfo.put(new ComponentName(activityInfo.packageName, activityInfo.name), activityInfo);
+            activitiesInfo.put(new ComponentName(activityInfo.packageName, activityInfo.name), activityInfo);
+        }
+        return activitiesInfo;
+    }
+
+    @NonNull
+    private AndroidManifestParser.ComponentIntentFilters getComponentIntentFilters() {
+        AndroidManifestParser.ComponentIntentFilters componentIntentFilters = mComponentIntentFilters;
+        if (componentIntentFilters == null) {
+            synchronized (this) {
+                componentIntentFilters = mComponentIntentFilters;
+                if (componentIntentFilters == null) {
+                    componentIntentFilters = mComponentIntentFiltersProvider.get();
+                    mComponentIntentFilters = componentIntentFilters;
+                    mComponentIntentFiltersProvider = null;
+                }
+            }
         }
+        return componentIntentFilters;
     }
 
     /**
@@ -416,17 +678,17 @@ public final class PluginInfo {
 
     @NonNull
     public Map<String, List<IntentFilter>> getActivityIntentFilterMap() {
-        return mActivities;
+        return getComponentIntentFilters().mActivities;
     }
 
     @NonNull
     public Map<String, List<IntentFilter>> getServiceIntentFilterMap() {
-        return mServices;
+        return getComponentIntentFilters().mServices;
     }
 
     @NonNull
     public Map<String, List<IntentFilter>> getReceiverIntentFilterMap() {
-        return mReceivers;
+        return getComponentIntentFilters().mReceivers;
     }
 
     /**
@@ -436,7 +698,7 @@ public final class PluginInfo {
      */
     @NonNull
     public List<String> getActivities() {
-        return new ArrayList<>(mActivities.keySet());
+        return new ArrayList<>(getActivityIntentFilterMap().keySet());
     }
 
     /**
@@ -448,7 +710,17 @@ public final class PluginInfo {
     @NonNull
     public List<String> getLauncherActivities() {
         // FIXME: 11/3/16 return unmodifiable copy of list
-        return mLauncherActivities;
+        List<String> launcherActivities = mLauncherActivities;
+        if (launcherActivities == null) {
+            synchronized (this) {
+                launcherActivities = mLauncherActivities;
+                if (launcherActivities == null) {
+                    launcherActivities = new ArrayList<>(getComponentIntentFilters().mLauncherActivities);
+                    mLauncherActivities = launcherActivities;
+                }
+            }
+        }
+        return launcherActivities;
     }
 
     /**
@@ -478,6 +750,7 @@ public final class PluginInfo {
      * version
      */
     public ArrayMap<String, Integer> getExportServiceMap() {
+        ensureMetaDataParsed();
         return mExportServiceMap;
     }
 
@@ -488,85 +761,285 @@ public final class PluginInfo {
      * version
      */
     public ArrayMap<String, Integer> getImportServiceMap() {
+        ensureMetaDataParsed();
         return mImportServiceMap;
     }
 
+    /**
+     * 是否为公共库
+     *
+     * @return true 公共库；false 普通插件
+     * @see #META_DATA_KEY_COMMON_LIBRARY
+     */
+    public boolean isCommonLibrary() {
+        ensureMetaDataParsed();
+        return mCommonLibrary;
+    }
+
+    /**
+     * 获取公共库包含的包名
+     *
+     * @return 公共库包含的包名
+     * @see #META_DATA_KEY_COMMON_LIBRARY_PACKAGES
+     */
+    @NonNull
+    public List<String> getCommonLibraryPackages() {
+        ensureMetaDataParsed();
+        return mCommonLibraryPackages;
+    }
+
+    /**
+     * 获取插件依赖的公共库信息
+     *
+     * @return 插件依赖的公共库, map key: 公共库包名, value: 公共库最低 versionCode
+     * @see #META_DATA_KEY_IMPORT_COMMON_LIBRARY_PREFIX
+     */
+    public ArrayMap<String, Integer> getImportCommonLibraryMap() {
+        ensureMetaDataParsed();
+        return mImportCommonLibraryMap;
+    }
+
+    /**
+     * 获取公共库 ClassLoader，首次调用时创建，之后所有依赖该公共库的插件共用
+     *
+     * @param hostClassLoader 宿主 ClassLoader
+     * @return 公共库 ClassLoader
+     */
+    @NonNull
+    ClassLoader getCommonLibraryClassLoader(@NonNull ClassLoader hostClassLoader) {
+        ClassLoader classLoader = mCommonLibraryClassLoader;
+        if (classLoader != null) {
+            return classLoader;
+        }
+
+        // 与后台 dexopt 串行
+        mDexOptLock.lock();
+        try {
+            classLoader = mCommonLibraryClassLoader;
+            if (classLoader == null) {
+                FileUtils.ensureDirectoryCreated(new File(odexDir));
+                FileUtils.ensureDirectoryCreated(new File(libPath));
+                final DexLoadScope scope = DexLoadScope.enter();
+                try {
+                    classLoader = new DexClassLoader(apkPath, odexDir, libPath, hostClassLoader);
+                } finally {
+                    scope.exit();
+                }
+                mCommonLibraryClassLoader = classLoader;
+                VLog.i("create common library classloader: %s %s", packageName, versionName);
+            }
+        } finally {
+            mDexOptLock.unlock();
+        }
+        return classLoader;
+    }
+
+    /**
+     * 创建插件 ClassLoader 的 parent：不依赖公共库时为宿主 ClassLoader，否则为依赖的公共库 ClassLoader
+     *
+     * @param hostClassLoader 宿主 ClassLoader
+     * @param libraryPackages 输出参数，依赖的公共库包含的包名
+     * @return 插件 ClassLoader 的 parent
+     * @throws CommonLibraryNotFoundException 依赖的公共库未安装或版本过低
+     */
+    private ClassLoader createParentClassLoader(ClassLoader hostClassLoader, List<String> libraryPackages)
+            throws CommonLibraryNotFoundException {
+        final ArrayMap<String, Integer> importLibraries = getImportCommonLibraryMap();
+        if (importLibraries.isEmpty()) {
+            return hostClassLoader;
+        }
+
+        final PluginManager pluginManager = PluginManager.getInstance();
+        final List<ClassLoader> libraryClassLoaders = new ArrayList<>(importLibraries.size());
+        for (int i = 0; i < importLibraries.size(); i++) {
+            final String libraryName = importLibraries.keyAt(i);
+            final int minVersionCode = importLibraries.valueAt(i);
+            final PluginInfo library = pluginManager.findPluginByPackageName(libraryName);
+            if (library == null || !library.isCommonLibrary() || library.versionCode < minVersionCode) {
+                throw new CommonLibraryNotFoundException(String.format(Locale.ENGLISH,
+                        "common library %s (>= %d) required by %s not found, installed: %s", libraryName,
+                        minVersionCode, packageName, library == null ? null : library.versionCode));
+            }
+
+            libraryClassLoaders.add(library.getCommonLibraryClassLoader(hostClassLoader));
+            libraryPackages.addAll(library.getCommonLibraryPackages());
+        }
+
+        return libraryClassLoaders.size() == 1 ? libraryClassLoaders.get(0)
+                : new CommonLibraryClassLoader(hostClassLoader, libraryClassLoaders);
+    }
+
     /**
      * 启动插件
      * <ul>
      * <li>将插件加载到内存</li>
      * <li>执行插件 {@link Application#onCreate()} 中的代码</li>
      * </ul>
+     * 其它线程正在启动该插件时，等待其启动完成并返回其结果
+     * <p>
      * <b>注意</b><p>
      * 插件启动成功之后，才能调用 {@link PhantomCore} 中启动插件 Activity 的方法
      *
      * @return true 启动成功；false 启动失败
      */
     public boolean start() {
-        if (mLock.tryLock()) {
-            VLog.v("start tryLock ok");
-            try {
-                if (mStarted) {
-                    VLog.w("PluginInfo#start already started, skip this time");
-                    return true;
-                }
+        return start(0, TimeUnit.MILLISECONDS);
+    }
 
-                final boolean firstStart = isFirstStart();
+    /**
+     * 启动插件，其它线程正在启动该插件时，最长等待 timeout
+     *
+     * @param timeout 最长等待时间，小于等于 0 时一直等待
+     * @param unit    timeout 的单位
+     * @return true 启动成功；false 启动失败或等待超时
+     * @see #start()
+     */
+    public boolean start(long timeout, @NonNull TimeUnit unit) {
+        final boolean started = mStarted || awaitStart(obtainStartFuture(), timeout, unit);
+        if (started) {
+            PluginManager.getInstance().recordPluginLaunch(this);
+        }
+        return started;
+    }
 
-                Context context = PhantomCore.getInstance().getContext();
-                HashMap<String, Object> params = new HashMap<>(1);
-                params.put(LogReporter.Key.VERSION_NAME, versionName);
-                try {
-                    final String tagLoad = packageName;
+    /**
+     * 在指定线程池中启动插件。插件已启动或正在启动时，返回的是同一次启动的结果
+     *
+     * @param executor 执行插件启动的线程池
+     * @return 插件启动结果，true 启动成功；false 启动失败
+     */
+    @NonNull
+    public Future<Boolean> startAsync(@NonNull Executor executor) {
+        final FutureTask<Boolean> future = obtainStartFuture();
+        if (!future.isDone()) {
+            executor.execute(future);
+        }
+        return future;
+    }
 
-                    notifyPluginStartStartIfNeeded(this, firstStart);
+    /**
+     * 预热插件，在当前（后台）线程中启动插件，不记录插件启动历史
+     *
+     * @return true 启动成功；false 启动失败
+     * @see PluginWarmUp
+     */
+    boolean warmUp() {
+        return mStarted || awaitStart(obtainStartFuture(), 0, TimeUnit.MILLISECONDS);
+    }
 
-                    TimingUtils.startTime(tagLoad);
-                    loadPlugin(context, firstStart);
-                    final String normalizedDuration = TimingUtils.getNormalizedDuration(tagLoad,
-                            TimingUtils.SECTION_DURATION_500_MS, TimingUtils.MAX_SECTION_40);
-                    trackPluginLoadTime(firstStart, normalizedDuration);
+    /**
+     * 获取进行中或已成功的插件启动任务，没有时创建新的启动任务
+     */
+    private FutureTask<Boolean> obtainStartFuture() {
+        mLock.lock();
+        try {
+            if (mStartFuture == null) {
+                mStartFuture = new FutureTask<>(new Callable<Boolean>() {
+                    @Override
+                    public Boolean call() {
+                        return doStart();
+                    }
+                });
+            }
+            return mStartFuture;
+        } finally {
+            mLock.unlock();
+        }
+    }
 
-                    mStarted = true;
+    /**
+     * 执行（若尚未执行）并等待插件启动任务完成
+     */
+    private boolean awaitStart(FutureTask<Boolean> future, long timeout, TimeUnit unit) {
+        // FutureTask 只会被执行一次，其它线程正在执行时 run() 直接返回
+        future.run();
+        try {
+            // 启动插件时插件 Application#onCreate 需在主线程中执行，主线程等待期间需执行该任务，避免互相等待
+            return ThreadUtils.awaitFuture(future, timeout, unit);
+        } catch (TimeoutException e) {
+            VLog.w("PluginInfo#start wait timeout: %s %d %s", packageName, timeout, unit);
+            return false;
+        } catch (InterruptedException e) {
+            VLog.w(e, "PluginInfo#start wait interrupted: %s", packageName);
+            Thread.currentThread().interrupt();
+            return false;
+        } catch (ExecutionException e) {
+            VLog.w(e, "PluginInfo#start error: %s", packageName);
+            return false;
+        }
+    }
 
-                    VLog.i("PluginInfo#start ok, first start: %s, pn: %s, vn: %s, cost: %s", firstStart, packageName,
-                            versionName, normalizedDuration);
+    private boolean doStart() {
+        if (mStarted) {
+            VLog.w("PluginInfo#start already started, skip this time");
+            return true;
+        }
 
-                    LogReporter.reportState(LogReporter.EventId.PLUGIN_LOAD, true, packageName, params);
-                    if (firstStart) {
-                        LogReporter.reportState(LogReporter.EventId.PLUGIN_LOAD_FIRST, true, packageName, params);
-                    }
+        final boolean firstStart = isFirstStart();
 
-                    notifyPluginStartSuccessIfNeeded(this, firstStart);
-                } catch (Throwable throwable) {
-                    final String msg = String.format(Locale.ENGLISH,
-                            "PluginInfo#start error, first start: %s, pn: %s, vn: %s",
-                            firstStart, packageName, versionName);
-                    VLog.w(throwable, msg);
-                    LogReporter.reportState(LogReporter.EventId.PLUGIN_LOAD, false, packageName, params);
-                    if (firstStart) {
-                        LogReporter.reportState(LogReporter.EventId.PLUGIN_LOAD_FIRST, false, packageName, params);
-                    }
+        Context context = PhantomCore.getInstance().getContext();
+        HashMap<String, Object> params = new HashMap<>(2);
+        params.put(LogReporter.Key.VERSION_NAME, versionName);
+        try {
+            final String tagLoad = packageName;
 
-                    LogReporter.reportLog(String.format(Locale.ENGLISH, "%s_%s.apk, md5: %s", packageName, versionName,
-                            FileUtils.calculateMd5(new File(apkPath))));
-                    LogReporter.reportUsableSpaceMegabytes();
-                    LogReporter.reportException(new LoadPluginException(msg, throwable), null);
+            notifyPluginStartStartIfNeeded(this, firstStart);
 
-                    notifyPluginStartFailIfNeeded(this, firstStart, throwable);
+            TimingUtils.startTime(tagLoad);
+            loadPlugin(context, firstStart);
+            final String normalizedDuration = TimingUtils.getNormalizedDuration(tagLoad,
+                    TimingUtils.SECTION_DURATION_500_MS, TimingUtils.MAX_SECTION_40);
+            trackPluginLoadTime(firstStart, normalizedDuration);
+            params.put(LogReporter.Key.INTERPRETED, mInterpretedLoad);
 
-                    // ANDROID_PHANTOM-160 插件启动失败，卸载该插件
-                    PhantomCore.getInstance().uninstallPlugin(packageName);
-                }
+            mStarted = true;
+
+            VLog.i("PluginInfo#start ok, first start: %s, pn: %s, vn: %s, cost: %s", firstStart, packageName,
+                    versionName, normalizedDuration);
+
+            LogReporter.reportState(LogReporter.EventId.PLUGIN_LOAD, true, packageName, params);
+            if (firstStart) {
+                LogReporter.reportState(LogReporter.EventId.PLUGIN_LOAD_FIRST, true, packageName, params);
+            }
+
+            notifyPluginStartSuccessIfNeeded(this, firstStart);
+        } catch (Throwable throwable) {
+            final String msg = String.format(Locale.ENGLISH,
+                    "PluginInfo#start error, first start: %s, pn: %s, vn: %s",
+                    firstStart, packageName, versionName);
+            VLog.w(throwable, msg);
+            LogReporter.reportState(LogReporter.EventId.PLUGIN_LOAD, false, packageName, params);
+            if (firstStart) {
+                LogReporter.reportState(LogReporter.EventId.PLUGIN_LOAD_FIRST, false, packageName, params);
+            }
+
+            if (!(throwable instanceof ApkCorruptedException)) {
+                // 校验 APK 完整性失败时异常信息中已包含 APK 文件摘要
+                LogReporter.reportLog(String.format(Locale.ENGLISH, "%s_%s.apk, md5: %s, install md5: %s",
+                        packageName, versionName, FileUtils.calculateMd5(new File(apkPath)), mApkDigest));
+            }
+            LogReporter.reportUsableSpaceMegabytes();
+            LogReporter.reportException(new LoadPluginException(msg, throwable), null);
+
+            notifyPluginStartFailIfNeeded(this, firstStart, throwable);
+
+            // ANDROID_PHANTOM-160 插件启动失败，卸载该插件；缺少公共库时插件本身没有问题，不卸载。
+            // 只卸载当前注册的版本，启动期间插件已被升级安装时不卸载新版本
+            if (!(throwable instanceof CommonLibraryNotFoundException)) {
+                PluginManager.getInstance().uninstallPluginIfCurrent(this);
+            }
+        }
 
-                return mStarted;
+        if (!mStarted) {
+            // 启动失败，允许再次启动
+            mLock.lock();
+            try {
+                mStartFuture = null;
             } finally {
                 mLock.unlock();
             }
-        } else {
-            VLog.v("start tryLock fail");
-            return false;
         }
+        return mStarted;
     }
 
     /**
@@ -616,7 +1089,7 @@ public final class PluginInfo {
      */
     @Nullable
     public ActivityInfo getActivityInfo(@NonNull ComponentName componentName) {
-        return mActivitiesInfo.get(componentName);
+        return getActivitiesInfo().get(componentName);
     }
 
     /**
@@ -648,6 +1121,51 @@ public final class PluginInfo {
         return mPluginAssetManager;
     }
 
+    /**
+     * 获取安装时计算的插件 APK 文件 md5
+     *
+     * @return APK 文件 md5；若计算失败，则返回 null
+     */
+    @Nullable
+    String getApkDigest() {
+        return mApkDigest;
+    }
+
+    void setApkDigest(@Nullable String apkDigest) {
+        mApkDigest = apkDigest;
+    }
+
+    /**
+     * 校验插件 APK 完整性，APK 文件大小及修改时间与上次校验通过时相同时跳过
+     *
+     * @throws ApkCorruptedException APK 文件摘要与安装时计算的摘要不一致
+     */
+    private void verifyApkIntegrity() throws ApkCorruptedException {
+        final String expectedDigest = mApkDigest;
+        if (expectedDigest == null) {
+            VLog.w("skip verify apk integrity, install md5 unavailable: %s", packageName);
+            return;
+        }
+
+        final File apkFile = new File(apkPath);
+        final long length = apkFile.length();
+        final long lastModified = apkFile.lastModified();
+        if (length == mVerifiedApkLength && lastModified == mVerifiedApkLastModified) {
+            return;
+        }
+
+        final int result = ApkIntegrityVerifier.verify(apkFile, expectedDigest);
+        if (result == ApkIntegrityVerifier.RESULT_UNVERIFIED) {
+            // 本次无法校验，下次启动时重新校验
+            return;
+        }
+
+        VLog.i("verify apk integrity ok: %s, hashed: %s", packageName,
+                result == ApkIntegrityVerifier.RESULT_HASHED);
+        mVerifiedApkLength = length;
+        mVerifiedApkLastModified = lastModified;
+    }
+
     /**
      * 插件是否已启动
      *
@@ -657,9 +1175,87 @@ public final class PluginInfo {
         return mStarted;
     }
 
-    private void loadPlugin(Context ctx, boolean firstStart) throws Throwable {
+    /**
+     * 最近一次启动插件时，插件 ClassLoader 是否以禁用 dex2oat（解释执行）的方式创建
+     *
+     * @return true 禁用了 dex2oat；false 未开启 TurboDex、非首次启动或禁用 dex2oat 失败
+     */
+    public boolean isInterpretedLoad() {
+        return mInterpretedLoad;
+    }
+
+    /**
+     * 插件是否可以在空闲时释放：支持热升级（没有 so、Service 组件及供宿主嵌入的 View）、不对外提供服务，
+     * 且当前没有存活的 Activity、Service
+     *
+     * @return true 可以释放；false 不可以释放
+     * @see PluginIdleUnloader
+     */
+    boolean isUnloadable() {
+        if (!mStarted || !isHotUpgrade() || !getExportServiceMap().isEmpty()) {
+            return false;
+        }
+
+        final PluginClassLoader classLoader = mPluginClassLoader;
+        return LaunchModeManager.getInstance().getLiveActivityCount(packageName) == 0
+                && (classLoader == null || !ServiceHostProxyManager.INSTANCE.hasPluginService(classLoader));
+    }
+
+    /**
+     * 释放已启动的插件：注销插件静态广播，丢弃插件 ClassLoader、AssetManager、Resources 及 Application，
+     * 之后再次使用插件时重新启动。需在主线程中调用。
+     * 释放在 mLock 中完成，再次启动（{@link #obtainStartFuture()}）须等待释放完成，不会丢弃新启动创建的对象
+     *
+     * @param context the application context
+     * @return true 已释放；false 插件未启动或正在启动
+     */
+    boolean unload(Context context) {
+        mLock.lock();
+        try {
+            if (!mStarted || mStartFuture == null || !mStartFuture.isDone()) {
+                return false;
+            }
+            mStartFuture = null;
+            mStarted = false;
+
+            synchronized (mGlobalBroadcastReceivers) {
+                unregisterStaticBroadcastReceiverLocked(context);
+                mPluginClassLoader = null;
+            }
+            mApplication = null;
+            mPluginResources = null;
+            mPluginAssetManager = null;
+        } finally {
+            mLock.unlock();
+        }
+
+        VLog.i("plugin unloaded: %s %s", packageName, versionName);
+        return true;
+    }
+
+    /**
+     * 加载插件，分为以下阶段
+     * <ol>
+     * <li>在当前线程中创建插件 ClassLoader，同时在线程池中创建插件 AssetManager 及 Resources</li>
+     * <li>以上两个阶段都完成后，创建插件 Application</li>
+     * <li>注册插件静态广播，可推迟到第一个 Activity 可见之后，见
+     * {@link PluginManager#setReceiverRegistrationExecutor(Executor)}</li>
+     * </ol>
+     * 各阶段耗时见 {@link #getStartStageDurations()}
+     */
+    private void loadPlugin(final Context ctx, boolean firstStart) throws Throwable {
         TimingLogger logger = new TimingLogger(Constants.TAG,
                 "PluginInfo#loadPlugin -> " + packageName + ", firstStart: " + firstStart);
+        final Map<String, Long> stageDurations = new LinkedHashMap<>();
+
+        if (PluginManager.getInstance().isApkIntegrityCheckEnabled()) {
+            final long verifyBegin = SystemClock.elapsedRealtime();
+            verifyApkIntegrity();
+            putStageDuration(stageDurations, STAGE_VERIFY_APK, verifyBegin);
+            logger.addSplit("verify apk integrity");
+        }
+
+        long begin = SystemClock.elapsedRealtime();
 
         final String tagDexLoad =
                 (firstStart ? LogReporter.EventId.PLUGIN_DEX_LOAD_FIRST : LogReporter.EventId.PLUGIN_DEX_LOAD)
@@ -680,31 +1276,92 @@ public final class PluginInfo {
 
         // 首次加载插件是否需要加速 ?
         final boolean shouldBoostFirstDexLoad = firstStart && turboDexEnabled;
-        if (shouldBoostFirstDexLoad) {
-            // 优化 ART 虚拟机(Android 5.0 及更高版本)冷启动 **首次** 加载插件耗时
-            // 1. 使用 alibaba-atlas 中的 ARTUtils 禁用 dexopt
-            // 2. 创建插件 ClassLoader 加载插件(这里由于禁用了 dexopt ，耗时会在 1 秒以内)
-            // 3. 重新启用 dexopt
-            // 4. 在后台线程中进行 dexopt ，提升在后续冷启动 **非首次** 运行插件效率
-            ARTUtils.setIsDex2oatEnabled(false);
-            mPluginClassLoader = new PluginClassLoader(this, ctx.getClassLoader());
-            ARTUtils.setIsDex2oatEnabled(true);
-            AsyncTask.execute(new DexOptTask(apkPath, odexPath));
-        } else {
-            mPluginClassLoader = new PluginClassLoader(this, ctx.getClassLoader());
-        }
-
-        trackDexLoadTime(firstStart, TimingUtils.getNormalizedDuration(tagDexLoad, TimingUtils.SECTION_DURATION_500_MS,
-                TimingUtils.MAX_SECTION_40));
-        logger.addSplit("create plugin classloader, firstStart: " + firstStart);
-
-        mPluginAssetManager = createAssetManager(ctx);
+        // 开启启动类预加载时，当前版本还没有启动类列表则记录启动类，否则预加载列表中的类
+        final boolean preloadStartupClasses = PluginManager.getInstance().isStartupClassPreloadEnabled();
+        final File startupClassListFile = getStartupClassListFile();
+        final boolean recordStartupClasses = preloadStartupClasses && !startupClassListFile.exists();
+        final List<String> libraryPackages = new ArrayList<>();
+        final ClassLoader parentClassLoader = createParentClassLoader(ctx.getClassLoader(), libraryPackages);
+
+        // 插件 ClassLoader 与 AssetManager/Resources 的创建互不依赖，并行创建。任务只返回结果，在当前线程汇合后
+        // 才赋值给成员变量；汇合前出错（如创建 ClassLoader 失败）时取消任务，不会修改启动失败的插件
+        final AtomicReference<AssetManager> assetManagerRef = new AtomicReference<>();
+        final FutureTask<Resources> resourcesFuture = new FutureTask<>(new Callable<Resources>() {
+            @Override
+            public Resources call() throws Exception {
+                final long begin = SystemClock.elapsedRealtime();
+                final AssetManager assetManager = createAssetManager(ctx);
+                assetManagerRef.set(assetManager);
+                final Resources resources = createResources(ctx, assetManager);
+                putStageDuration(stageDurations, STAGE_RESOURCES, begin);
+                return resources;
+            }
+        });
+        AsyncTask.THREAD_POOL_EXECUTOR.execute(resourcesFuture);
+        boolean resourcesJoined = false;
+        try {
+            // 等待正在进行的后台 dexopt 完成，避免同时对同一插件进行 dexopt
+            mDexOptLock.lock();
+            try {
+                if (shouldBoostFirstDexLoad) {
+                    // 优化 ART 虚拟机(Android 5.0 及更高版本)冷启动 **首次** 加载插件耗时
+                    // 1. 使用 alibaba-atlas 中的 ARTUtils 禁用 dexopt（与其它线程的 dex 加载串行，见 DexLoadScope）
+                    // 2. 创建插件 ClassLoader 加载插件(这里由于禁用了 dexopt ，耗时会在 1 秒以内)
+                    // 3. 重新启用 dexopt
+                    // 4. 在后台线程中进行 dexopt ，提升在后续冷启动 **非首次** 运行插件效率
+                    final DexLoadScope scope = DexLoadScope.enterInterpreted();
+                    try {
+                        mPluginClassLoader = new PluginClassLoader(this, parentClassLoader, libraryPackages,
+                                recordStartupClasses);
+                        mInterpretedLoad = scope.isInterpreted();
+                    } finally {
+                        scope.exit();
+                    }
+                    if (mInterpretedLoad) {
+                        AsyncTask.execute(new DexOptTask(packageName, apkPath, odexPath, mDexOptLock));
+                    }
+                } else {
+                    final DexLoadScope scope = DexLoadScope.enter();
+                    try {
+                        mPluginClassLoader = new PluginClassLoader(this, parentClassLoader, libraryPackages,
+                                recordStartupClasses);
+                        mInterpretedLoad = scope.isInterpreted();
+                    } finally {
+                        scope.exit();
+                    }
+                }
+            } finally {
+                mDexOptLock.unlock();
+            }
+            VLog.i("create plugin classloader: %s, interpreted: %s", packageName, mInterpretedLoad);
+            if (recordStartupClasses) {
+                StartupClassPreloader.recordAfterStartup(mPluginClassLoader, startupClassListFile);
+            } else if (preloadStartupClasses) {
+                StartupClassPreloader.preload(mPluginClassLoader, startupClassListFile);
+            }
 
-        logger.addSplit("create asset manager");
+            trackDexLoadTime(firstStart, TimingUtils.getNormalizedDuration(tagDexLoad,
+                    TimingUtils.SECTION_DURATION_500_MS, TimingUtils.MAX_SECTION_40));
+            putStageDuration(stageDurations, STAGE_CLASS_LOADER, begin);
+            logger.addSplit("create plugin classloader, firstStart: " + firstStart);
 
-        mPluginResources = createResources(ctx, mPluginAssetManager);
-        logger.addSplit("create resource");
+            // 线程池繁忙、任务尚未开始执行时，直接在当前线程中执行
+            resourcesFuture.run();
+            try {
+                mPluginResources = resourcesFuture.get();
+                mPluginAssetManager = assetManagerRef.get();
+            } catch (ExecutionException e) {
+                throw e.getCause();
+            }
+            logger.addSplit("join asset manager and resources");
+            resourcesJoined = true;
+        } finally {
+            if (!resourcesJoined) {
+                resourcesFuture.cancel(true);
+            }
+        }
 
+        begin = SystemClock.elapsedRealtime();
         final String tagAppLoad = (firstStart ? LogReporter.EventId.PLUGIN_APPLICATION_LOAD_FIRST
                 : LogReporter.EventId.PLUGIN_APPLICATION_LOAD) + packageName;
         TimingUtils.startTime(tagAppLoad);
@@ -712,14 +1369,56 @@ public final class PluginInfo {
         trackAppCreateTime(firstStart,
                 TimingUtils.getNormalizedDuration(tagAppLoad, TimingUtils.SECTION_DURATION_100_MS,
                         TimingUtils.MAX_SECTION_20));
+        putStageDuration(stageDurations, STAGE_APPLICATION, begin);
         logger.addSplit("create application");
 
-        registerStaticBroadcastReceiver(ctx);
-        logger.addSplit("register static broadcast receiver");
+        final Executor receiverExecutor = PluginManager.getInstance().getReceiverRegistrationExecutor();
+        if (receiverExecutor == null) {
+            begin = SystemClock.elapsedRealtime();
+            registerStaticBroadcastReceiver(ctx, mPluginClassLoader);
+            putStageDuration(stageDurations, STAGE_RECEIVERS, begin);
+            logger.addSplit("register static broadcast receiver");
+        } else {
+            final PluginClassLoader classLoader = mPluginClassLoader;
+            receiverExecutor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    registerStaticBroadcastReceiver(ctx, classLoader);
+                }
+            });
+            logger.addSplit("defer static broadcast receiver registration");
+        }
 
+        mStartStageDurations = Collections.unmodifiableMap(stageDurations);
+        VLog.i("PluginInfo#loadPlugin %s stages: %s", packageName, stageDurations);
         logger.dumpToLog();
     }
 
+    private static void putStageDuration(Map<String, Long> stageDurations, String stage, long begin) {
+        final long duration = SystemClock.elapsedRealtime() - begin;
+        synchronized (stageDurations) {
+            stageDurations.put(stage, duration);
+        }
+    }
+
+    /**
+     * 获取最近一次启动插件时各阶段耗时
+     * <ul>
+     * <li>{@link #STAGE_VERIFY_APK} 校验插件 APK 完整性，未开启校验时没有该阶段</li>
+     * <li>{@link #STAGE_CLASS_LOADER} 创建插件 ClassLoader</li>
+     * <li>{@link #STAGE_RESOURCES} 创建插件 AssetManager 及 Resources，与创建 ClassLoader 并行</li>
+     * <li>{@link #STAGE_APPLICATION} 创建插件 Application</li>
+     * <li>{@link #STAGE_RECEIVERS} 注册插件静态广播，推迟注册时没有该阶段</li>
+     * </ul>
+     *
+     * @return { 阶段名 -> 耗时(ms) }，插件未启动时为空
+     */
+    @NonNull
+    public Map<String, Long> getStartStageDurations() {
+        final Map<String, Long> stageDurations = mStartStageDurations;
+        return stageDurations == null ? Collections.<String, Long>emptyMap() : stageDurations;
+    }
+
     /**
      * 是否安装插件后首次启动插件，包含以下场景
      * <ul>
@@ -731,27 +1430,69 @@ public final class PluginInfo {
      */
     private boolean isFirstStart() {
         // 通过判断 odex 目录是否有空判断是否插件是首次启动
-        return FileUtils.isDirectoryEmpty(new File(odexDir));
+        return !isDexOptimized();
+    }
+
+    /**
+     * 插件 dex 是否已优化（odex 目录非空）
+     *
+     * @return true 已优化；否则 false
+     */
+    public boolean isDexOptimized() {
+        return !FileUtils.isDirectoryEmpty(new File(odexDir));
+    }
+
+    /**
+     * 插件未启动且 dex 未优化时，在当前线程中进行 dexopt
+     *
+     * @return true 进行了 dexopt；false 插件已启动或 dex 已优化
+     * @see DexOptScheduler
+     */
+    boolean dexOptIfNeeded() {
+        mDexOptLock.lock();
+        try {
+            if (mStarted || isDexOptimized()) {
+                return false;
+            }
+
+            FileUtils.ensureDirectoryCreated(new File(odexDir));
+            new DexOptTask(packageName, apkPath, odexPath, null).run();
+            return true;
+        } finally {
+            mDexOptLock.unlock();
+        }
     }
 
     /**
      * 动态注册插件中的静态广播，参考 http://weishu.me/2016/04/12/understand-plugin-framework-receiver/
      */
-    private void registerStaticBroadcastReceiver(Context context) {
+    private void registerStaticBroadcastReceiver(Context context, PluginClassLoader classLoader) {
         final ActivityInfo[] receivers = packageInfo.receivers;
         if (receivers == null) {
             return;
         }
 
+        synchronized (mGlobalBroadcastReceivers) {
+            // 推迟注册时，插件可能已被卸载，或已被释放（此后可能已重新启动并注册）
+            if (mReceiversUnregistered || classLoader != mPluginClassLoader) {
+                VLog.w("plugin %s uninstalled or unloaded, skip register static broadcast receiver", packageName);
+                return;
+            }
+            registerStaticBroadcastReceiverLocked(context, receivers, classLoader);
+        }
+    }
+
+    private void registerStaticBroadcastReceiverLocked(Context context, ActivityInfo[] receivers,
+            PluginClassLoader classLoader) {
         for (ActivityInfo receiver : receivers) {
-            final List<IntentFilter> intentFilters = mReceivers.get(receiver.name);
+            final List<IntentFilter> intentFilters = getReceiverIntentFilterMap().get(receiver.name);
 
             if (intentFilters == null || intentFilters.isEmpty()) {
                 continue;
             }
 
             try {
-                BroadcastReceiver instance = (BroadcastReceiver) mPluginClassLoader.loadClass(
+                BroadcastReceiver instance = (BroadcastReceiver) classLoader.loadClass(
                         receiver.name).newInstance();
                 for (IntentFilter filter : intentFilters) {
                     context.registerReceiver(instance, filter);
@@ -766,6 +1507,13 @@ public final class PluginInfo {
     }
 
     void unregisterStaticBroadcastReceiver(Context context) {
+        synchronized (mGlobalBroadcastReceivers) {
+            mReceiversUnregistered = true;
+            unregisterStaticBroadcastReceiverLocked(context);
+        }
+    }
+
+    private void unregisterStaticBroadcastReceiverLocked(Context context) {
         for (BroadcastReceiver receiver : mGlobalBroadcastReceivers) {
             try {
                 context.unregisterReceiver(receiver);
@@ -778,7 +1526,7 @@ public final class PluginInfo {
         mGlobalBroadcastReceivers.clear();
     }
 
-    private AssetManager createAssetManager(Context ctx) throws Throwable {
+    private AssetManager createAssetManager(Context ctx) throws PackageManager.NameNotFoundException {
         PackageManager pm = ctx.getPackageManager();
         Resources res = pm.getResourcesForApplication(packageInfo.applicationInfo);
         AssetManager am = res.getAssets();
@@ -845,42 +1593,90 @@ public final class PluginInfo {
     }
 
     /**
-     * 在后台线程中进行 dexopt，以减少非首次加载插件的耗时
+     * 在后台线程中进行 dexopt，以减少非首次加载插件的耗时；完成后上报结果及耗时
      */
     private static class DexOptTask implements Runnable {
+        // dexopt 期间 dex2oat 被其它插件的解释执行加载禁用时，最多进行的次数
+        private static final int MAX_DEX_OPT_ATTEMPTS = 2;
 
+        private final String mPackageName;
         private final String mSourcePathName;
         private final String mOutputPathName;
+        // 不为 null 时，在 dexopt 期间持有该锁
+        @Nullable
+        private final Lock mDexOptLock;
 
         private final TimingLogger mTimingLogger;
 
-        DexOptTask(String sourcePathName, String outputPathName) {
+        DexOptTask(String packageName, String sourcePathName, String outputPathName, @Nullable Lock dexOptLock) {
             mTimingLogger = new TimingLogger(Constants.TAG, "DexOptTask");
+            mPackageName = packageName;
             mSourcePathName = sourcePathName;
             mOutputPathName = outputPathName;
+            mDexOptLock = dexOptLock;
         }
 
         @Override
         public void run() {
-            DexFile dexFile = null;
+            if (mDexOptLock == null) {
+                loadDex();
+                return;
+            }
+
+            mDexOptLock.lock();
             try {
-                mTimingLogger.addSplit("DexFile.loadDex E: " + mSourcePathName);
-                ARTUtils.setIsDex2oatEnabled(true);
-                dexFile = DexFile.loadDex(mSourcePathName, mOutputPathName, 0);
-                mTimingLogger.addSplit("DexFile.loadDex X");
-            } catch (IOException e) {
-                VLog.w(e, "DexFile.loadDex error");
-                mTimingLogger.addSplit("Error");
+                loadDex();
             } finally {
-                if (dexFile != null) {
-                    try {
-                        dexFile.close();
-                    } catch (IOException e) {
-                        // nothing can be done, just ignore it
+                mDexOptLock.unlock();
+            }
+        }
+
+        private void loadDex() {
+            final long begin = SystemClock.elapsedRealtime();
+            boolean success = false;
+            String message = null;
+            for (int attempt = 1; attempt <= MAX_DEX_OPT_ATTEMPTS; attempt++) {
+                // 等待禁用 dex2oat 的插件加载结束，但不在 dexopt 期间持有 DexLoadScope，以免阻塞插件首次启动；
+                // dexopt 期间 dex2oat 被禁用过时，可能未生成 odex，重新进行
+                final int interpretedLoadCount = DexLoadScope.awaitInterpretedLoads();
+                success = false;
+                message = null;
+                DexFile dexFile = null;
+                try {
+                    mTimingLogger.addSplit("DexFile.loadDex E: " + mSourcePathName);
+                    dexFile = DexFile.loadDex(mSourcePathName, mOutputPathName, 0);
+                    mTimingLogger.addSplit("DexFile.loadDex X");
+                    success = true;
+                } catch (IOException e) {
+                    VLog.w(e, "DexFile.loadDex error");
+                    mTimingLogger.addSplit("Error");
+                    message = e.getMessage();
+                } finally {
+                    if (dexFile != null) {
+                        try {
+                            dexFile.close();
+                        } catch (IOException e) {
+                            // nothing can be done, just ignore it
+                        }
                     }
                 }
+
+                if (!success || DexLoadScope.getInterpretedLoadCount() == interpretedLoadCount) {
+                    break;
+                }
+                VLog.w("dex2oat disabled during dexopt of %s, attempt: %d", mPackageName, attempt);
+                success = false;
+                message = "dex2oat disabled during dexopt";
             }
             mTimingLogger.dumpToLog();
+
+            final HashMap<String, Object> params = new HashMap<>(2);
+            params.put(LogReporter.Key.TIME, TimingUtils.normalizeDuration(SystemClock.elapsedRealtime() - begin,
+                    TimingUtils.SECTION_DURATION_500_MS, TimingUtils.MAX_SECTION_40));
+            if (message != null) {
+                params.put(LogReporter.Key.MESSAGE, message);
+            }
+            LogReporter.reportState(LogReporter.EventId.PLUGIN_DEX_OPT, success, mPackageName, params);
         }
     }
 }
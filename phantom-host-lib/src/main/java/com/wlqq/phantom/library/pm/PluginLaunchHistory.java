@@ -0,0 +1,285 @@
+/*
+ * Copyright (C) 2017-2018 Manbang Group
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.wlqq.phantom.library.pm;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.support.v4.util.ArrayMap;
+
+import com.wlqq.phantom.library.utils.VLog;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * 插件启动历史，记录各插件在进程中被使用的次数以及首次使用距进程启动的时间，持久化到 SharedPreferences 中，
+ * 用于预测本次进程中可能被使用的插件
+ * <p>
+ * 每个进程计为一次会话，同一插件在一次会话中只记录一次；会话数达到 {@link #MAX_SESSION_COUNT} 时各计数减半，
+ * 使历史随时间衰减
+ */
+final class PluginLaunchHistory {
+    static final String PREFS_PLUGIN_LAUNCH_HISTORY = "phantom_plugin_launch_history";
+
+    // 会话数达到该值时各计数减半
+    static final int MAX_SESSION_COUNT = 64;
+    // 超过该时间未使用的插件不再预测
+    static final long EXPIRE_MS = 7L * 24 * 60 * 60 * 1000;
+    // 首次使用距进程启动时间的平滑系数（新值所占权重）
+    private static final float DELAY_WEIGHT = 0.3f;
+
+    private static final String KEY_SESSION_COUNT = "__session_count";
+    private static final String SEPARATOR = ",";
+
+    private final SharedPreferences mSharedPreferences;
+    // package_name -> entry
+    private final ArrayMap<String, Entry> mEntries = new ArrayMap<>();
+    // 本次会话中已记录的插件
+    private final Set<String> mRecorded = new HashSet<>();
+    // 加载完成前记录的插件使用，加载完成后合并
+    private final List<Launch> mPendingLaunches = new ArrayList<>();
+    private int mSessionCount;
+    private boolean mLoaded;
+
+    PluginLaunchHistory(@NonNull Context context) {
+        mSharedPreferences = context.getSharedPreferences(PREFS_PLUGIN_LAUNCH_HISTORY, Context.MODE_PRIVATE);
+    }
+
+    /**
+     * 加载启动历史，并开始新的会话；会读取磁盘，不应在主线程中调用。只有首次调用有效
+     */
+    void load() {
+        synchronized (this) {
+            if (mLoaded) {
+                return;
+            }
+        }
+
+        // 在锁外读取，避免读取期间阻塞 record
+        final Map<String, ?> items = mSharedPreferences.getAll();
+        synchronized (this) {
+            if (mLoaded) {
+                return;
+            }
+            mergeLoaded(items);
+            mLoaded = true;
+        }
+    }
+
+    private void mergeLoaded(Map<String, ?> items) {
+        final SharedPreferences.Editor editor = mSharedPreferences.edit();
+        for (Map.Entry<String, ?> item : items.entrySet()) {
+            final String key = item.getKey();
+            if (KEY_SESSION_COUNT.equals(key)) {
+                continue;
+            }
+
+            final Entry entry = Entry.parse(key, String.valueOf(item.getValue()));
+            if (entry == null) {
+                editor.remove(key);
+            } else {
+                mEntries.put(key, entry);
+            }
+        }
+
+        mSessionCount = mSharedPreferences.getInt(KEY_SESSION_COUNT, 0) + 1;
+        if (mSessionCount >= MAX_SESSION_COUNT) {
+            mSessionCount = MAX_SESSION_COUNT / 2;
+            for (int i = mEntries.size() - 1; i >= 0; i--) {
+                final Entry entry = mEntries.valueAt(i);
+                entry.launchCount /= 2;
+                if (entry.launchCount == 0) {
+                    mEntries.removeAt(i);
+                    editor.remove(entry.packageName);
+                } else {
+                    editor.putString(entry.packageName, entry.toString());
+                }
+            }
+        }
+        editor.putInt(KEY_SESSION_COUNT, mSessionCount);
+
+        for (Launch launch : mPendingLaunches) {
+            putLaunch(editor, launch.packageName, launch.delayMs, launch.time);
+        }
+        mPendingLaunches.clear();
+        editor.apply();
+    }
+
+    /**
+     * 记录插件在本次会话中被使用，同一插件在一次会话中只记录一次；在 {@link #load()} 完成前调用时，
+     * 加载完成后合并到启动历史中
+     *
+     * @param packageName 插件包名
+     * @param delayMs     距进程启动的时间
+     * @param now         当前时间（{@link System#currentTimeMillis()}）
+     */
+    @SuppressWarnings("PMD.AvoidSynchronizedAtMethodLevel")
+    synchronized void record(@NonNull String packageName, long delayMs, long now) {
+        if (!mRecorded.add(packageName)) {
+            return;
+        }
+
+        if (!mLoaded) {
+            mPendingLaunches.add(new Launch(packageName, delayMs, now));
+            return;
+        }
+
+        final SharedPreferences.Editor editor = mSharedPreferences.edit();
+        putLaunch(editor, packageName, delayMs, now);
+        editor.apply();
+    }
+
+    private void putLaunch(SharedPreferences.Editor editor, String packageName, long delayMs, long now) {
+        Entry entry = mEntries.get(packageName);
+        if (entry == null) {
+            entry = new Entry(packageName, 0, delayMs, now);
+            mEntries.put(packageName, entry);
+        } else {
+            entry.avgDelayMs = (long) (entry.avgDelayMs * (1 - DELAY_WEIGHT) + delayMs * DELAY_WEIGHT);
+            entry.lastLaunchTime = now;
+        }
+        entry.launchCount = Math.min(entry.launchCount + 1, mSessionCount);
+
+        VLog.v("record plugin launch: %s -> %s", packageName, entry);
+        editor.putString(packageName, entry.toString());
+    }
+
+    /**
+     * 获取本次会话中可能被使用的插件
+     *
+     * @param minLikelihood 最小使用概率（使用次数 / 会话数）
+     * @param now           当前时间（{@link System#currentTimeMillis()}）
+     * @return 插件包名列表，按首次使用距进程启动时间升序排列
+     */
+    @NonNull
+    @SuppressWarnings("PMD.AvoidSynchronizedAtMethodLevel")
+    synchronized List<String> getLikelyPlugins(float minLikelihood, long now) {
+        return rank(mEntries.values(), mSessionCount, minLikelihood, now);
+    }
+
+    /**
+     * 筛选并排序可能被使用的插件
+     *
+     * @param entries       启动历史
+     * @param sessionCount  会话数
+     * @param minLikelihood 最小使用概率（使用次数 / 会话数）
+     * @param now           当前时间（{@link System#currentTimeMillis()}）
+     * @return 插件包名列表，按首次使用距进程启动时间升序排列，时间相同时使用概率高的在前
+     */
+    @NonNull
+    static List<String> rank(@NonNull Iterable<Entry> entries, int sessionCount, float minLikelihood, long now) {
+        if (sessionCount <= 0) {
+            return new ArrayList<>();
+        }
+
+        final List<Entry> candidates = new ArrayList<>();
+        for (Entry entry : entries) {
+            if (now - entry.lastLaunchTime > EXPIRE_MS) {
+                continue;
+            }
+            if ((float) entry.launchCount / sessionCount >= minLikelihood) {
+                candidates.add(entry);
+            }
+        }
+
+        Collections.sort(candidates, new Comparator<Entry>() {
+            @Override
+            public int compare(Entry lhs, Entry rhs) {
+                if (lhs.avgDelayMs != rhs.avgDelayMs) {
+                    return lhs.avgDelayMs < rhs.avgDelayMs ? -1 : 1;
+                }
+                return rhs.launchCount - lhs.launchCount;
+            }
+        });
+
+        final List<String> packageNames = new ArrayList<>(candidates.size());
+        for (Entry entry : candidates) {
+            packageNames.add(entry.packageName);
+        }
+        return packageNames;
+    }
+
+    /**
+     * 加载完成前记录的一次插件使用
+     */
+    private static final class Launch {
+        final String packageName;
+        final long delayMs;
+        final long time;
+
+        Launch(String packageName, long delayMs, long time) {
+            this.packageName = packageName;
+            this.delayMs = delayMs;
+            this.time = time;
+        }
+    }
+
+    /**
+     * 单个插件的启动历史
+     */
+    static final class Entry {
+        @NonNull
+        final String packageName;
+        int launchCount;
+        long avgDelayMs;
+        long lastLaunchTime;
+
+        Entry(@NonNull String packageName, int launchCount, long avgDelayMs, long lastLaunchTime) {
+            this.packageName = packageName;
+            this.launchCount = launchCount;
+            this.avgDelayMs = avgDelayMs;
+            this.lastLaunchTime = lastLaunchTime;
+        }
+
+        /**
+         * 解析持久化的启动历史
+         *
+         * @param packageName 插件包名
+         * @param value       持久化内容，格式为 launchCount,avgDelayMs,lastLaunchTime
+         * @return 启动历史；格式错误时返回 null
+         */
+        @Nullable
+        static Entry parse(@NonNull String packageName, @NonNull String value) {
+            final String[] parts = value.split(SEPARATOR);
+            if (parts.length != 3) {
+                return null;
+            }
+
+            try {
+                return new Entry(packageName, Integer.parseInt(parts[0]), Long.parseLong(parts[1]),
+                        Long.parseLong(parts[2]));
+            } catch (NumberFormatException e) {
+                VLog.w(e, "invalid plugin launch history: %s -> %s", packageName, value);
+                return null;
+            }
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.ENGLISH, "%d%s%d%s%d", launchCount, SEPARATOR, avgDelayMs, SEPARATOR,
+                    lastLaunchTime);
+        }
+    }
+}
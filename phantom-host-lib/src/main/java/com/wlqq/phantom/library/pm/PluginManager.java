@@ -62,6 +62,14 @@ import java.util.List;
 import java.util.Locale;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
 
 /**
  * 插件管理类
@@ -83,8 +91,8 @@ public class PluginManager {
     // 插件优化后多 dex 目录（Android 5.0 以下设备）
     static final String EXTRA_ODEX_DIR = "eod";
 
-    // 用于记录额外的 dex 数量（Android 5.0 以下设备）
-    static final String EXTRA_DEX_COUNT_FILE = PluginClassLoader.EXTRA_DEX_COUNT_FILE;
+    // 用于记录已解压的额外 dex 的 CRC（Android 5.0 以下设备）
+    static final String EXTRA_DEX_CRC_FILE = PluginClassLoader.EXTRA_DEX_CRC_FILE;
 
     // 插件原始 APK 文件名
     private static final String BASE_APK = "base.apk";
@@ -101,8 +109,23 @@ public class PluginManager {
     private Context mContext;
     // 插件安装目录
     private File mPluginDir;
-    private boolean mInitialized;
+    private volatile boolean mInitialized;
     private Signature[] mHostSignatures;
+    // 解析已安装插件使用的线程数，1 表示串行解析
+    private int mPreloadThreadCount = 1;
+    // 是否以懒加载模式创建 PluginInfo
+    private boolean mLazyPluginInfo;
+    // 插件安装后在后台进行 dexopt，为 null 时不进行
+    @Nullable
+    private volatile DexOptScheduler mDexOptScheduler;
+    // 插件预热，为 null 时不记录插件启动历史
+    @Nullable
+    private volatile PluginWarmUp mPluginWarmUp;
+    // 执行插件静态广播注册的 Executor，为 null 时在启动插件时直接注册
+    @Nullable
+    private volatile Executor mReceiverRegistrationExecutor;
+    private volatile boolean mStartupClassPreloadEnabled;
+    private volatile boolean mApkIntegrityCheckEnabled;
 
     // 信任的插件签名 MD5 列表，用于校验合作方的插件（插件签名与宿主签名不一致的情况）
     private List<String> mTrustedSignatures;
@@ -114,12 +137,11 @@ public class PluginManager {
     // groupId:artifactId:version e.g. ["junit:junit:4.12"]
     private Set<String> mHostCompileDependencySet;
 
-    // package_name -> PluginInfo
-    private ArrayMap<String, PluginInfo> mPackages = new ArrayMap<>();
-    // Activity ComponentName -> PluginInfo
-    private ArrayMap<ComponentName, PluginInfo> mActivities = new ArrayMap<>();
-    // Service ComponentName -> PluginInfo
-    private ArrayMap<ComponentName, PluginInfo> mServices = new ArrayMap<>();
+    // 已安装插件注册表，写时复制，查询无需加锁
+    private volatile Registry mRegistry = new Registry();
+    private final Object mRegistryLock = new Object();
+    // package_name -> 安装锁，同一插件的安装与卸载互斥，不同插件可以并发安装
+    private final ArrayMap<String, Lock> mInstallLocks = new ArrayMap<>();
 
     private PluginManager() {
     }
@@ -130,6 +152,20 @@ public class PluginManager {
 
     @SuppressWarnings("PMD.AvoidSynchronizedAtMethodLevel")
     public synchronized void init(@NonNull Context context, @NonNull List<String> trustedSignatures) {
+        init(context, trustedSignatures, 1, false);
+    }
+
+    /**
+     * 初始化插件管理，并解析已安装的插件
+     *
+     * @param context            the application context
+     * @param trustedSignatures  信任的插件签名 MD5 列表
+     * @param preloadThreadCount 解析已安装插件使用的线程数，小于等于 1 时串行解析
+     * @param lazyPluginInfo     是否以懒加载模式创建 PluginInfo，参考 {@link PluginInfo} 懒加载模式
+     */
+    @SuppressWarnings("PMD.AvoidSynchronizedAtMethodLevel")
+    public synchronized void init(@NonNull Context context, @NonNull List<String> trustedSignatures,
+            int preloadThreadCount, boolean lazyPluginInfo) {
         if (mInitialized) {
             VLog.w("already initialized, skip this time");
             return;
@@ -138,6 +174,8 @@ public class PluginManager {
         TimingLogger logger = new TimingLogger(Constants.TAG, "PluginManager init");
         mContext = context.getApplicationContext();
         mTrustedSignatures = trustedSignatures;
+        mPreloadThreadCount = Math.max(1, preloadThreadCount);
+        mLazyPluginInfo = lazyPluginInfo;
 
         mPluginDir = mContext.getDir("plugins", Context.MODE_PRIVATE);
         logger.addSplit("create plugin dir");
@@ -156,6 +194,80 @@ public class PluginManager {
         mInitialized = true;
     }
 
+    /**
+     * 设置插件 dexopt 调度器，设置后全新安装或升级安装插件成功时，在后台对插件进行 dexopt
+     *
+     * @param scheduler dexopt 调度器，为 null 时不进行
+     */
+    public void setDexOptScheduler(@Nullable DexOptScheduler scheduler) {
+        mDexOptScheduler = scheduler;
+    }
+
+    /**
+     * 设置插件预热，设置后记录插件启动历史
+     *
+     * @param warmUp 插件预热，为 null 时不记录
+     */
+    public void setPluginWarmUp(@Nullable PluginWarmUp warmUp) {
+        mPluginWarmUp = warmUp;
+    }
+
+    /**
+     * 设置执行插件静态广播注册的 Executor，用于将注册推迟到启动插件之后，如第一个 Activity 可见之后
+     *
+     * @param executor 执行插件静态广播注册的 Executor，为 null 时在启动插件时直接注册
+     * @see com.wlqq.phantom.library.utils.ActivityVisibleExecutor
+     */
+    public void setReceiverRegistrationExecutor(@Nullable Executor executor) {
+        mReceiverRegistrationExecutor = executor;
+    }
+
+    @Nullable
+    Executor getReceiverRegistrationExecutor() {
+        return mReceiverRegistrationExecutor;
+    }
+
+    /**
+     * 设置是否开启插件启动类预加载
+     *
+     * @param enabled true 开启；false 不开启
+     * @see StartupClassPreloader
+     */
+    public void setStartupClassPreloadEnabled(boolean enabled) {
+        mStartupClassPreloadEnabled = enabled;
+    }
+
+    boolean isStartupClassPreloadEnabled() {
+        return mStartupClassPreloadEnabled;
+    }
+
+    /**
+     * 设置是否在启动插件前校验插件 APK 完整性，校验失败时插件启动失败
+     *
+     * @param enabled true 开启；false 不开启
+     * @see ApkIntegrityVerifier
+     */
+    public void setApkIntegrityCheckEnabled(boolean enabled) {
+        mApkIntegrityCheckEnabled = enabled;
+    }
+
+    boolean isApkIntegrityCheckEnabled() {
+        return mApkIntegrityCheckEnabled;
+    }
+
+    /**
+     * 记录插件在本次进程中被使用（启动插件或创建插件组件），用于插件预热；同一插件在一个进程中只记录一次
+     *
+     * @param pluginInfo 插件信息
+     * @see PluginWarmUp
+     */
+    public void recordPluginLaunch(@NonNull PluginInfo pluginInfo) {
+        final PluginWarmUp warmUp = mPluginWarmUp;
+        if (warmUp != null) {
+            warmUp.recordLaunch(pluginInfo);
+        }
+    }
+
     private void initHostExportServices() {
         final List<IService> services = PhantomServiceManager.getServices(mContext.getPackageName());
         mHostExportServiceMap = new ArrayMap<>(services.size());
@@ -211,6 +323,15 @@ public class PluginManager {
         return new File(mPluginDir, packageName);
     }
 
+    /**
+     * 是否已初始化完成（已解析已安装的插件）
+     *
+     * @return true 已初始化
+     */
+    public boolean isInitialized() {
+        return mInitialized;
+    }
+
     private void checkInit() throws IllegalStateException {
         if (!mInitialized) {
             throw new IllegalStateException("should call init first");
@@ -226,9 +347,7 @@ public class PluginManager {
     public List<PluginInfo> getAllPlugins() {
         checkInit();
 
-        List<PluginInfo> settings = new ArrayList<>(getPluginCount());
-        settings.addAll(mPackages.values());
-        return settings;
+        return new ArrayList<>(mRegistry.packages.values());
     }
 
     /**
@@ -239,7 +358,7 @@ public class PluginManager {
     public int getPluginCount() {
         checkInit();
 
-        return mPackages.size();
+        return mRegistry.packages.size();
     }
 
     /**
@@ -248,13 +367,50 @@ public class PluginManager {
      * @param pkg 插件包名
      * @return true 若卸载成功；否则 false
      */
-    public synchronized boolean uninstallPlugin(String pkg) {
+    public boolean uninstallPlugin(String pkg) {
         checkInit();
 
         if (!isPluginInstalled(pkg)) {
             return false;
         }
 
+        final Lock installLock = getInstallLock(pkg);
+        installLock.lock();
+        try {
+            deletePackage(pkg);
+        } finally {
+            installLock.unlock();
+        }
+
+        return true;
+    }
+
+    /**
+     * 卸载插件，仅当 pluginInfo 仍是当前注册的版本时卸载。用于插件启动失败时卸载该插件：
+     * 启动期间插件可能已被升级安装，此时不能卸载新安装的版本
+     *
+     * @param pluginInfo 插件信息
+     * @return true 若卸载成功；false 插件未安装或已被替换
+     */
+    boolean uninstallPluginIfCurrent(@NonNull PluginInfo pluginInfo) {
+        final String pkg = pluginInfo.packageName;
+        final Lock installLock = getInstallLock(pkg);
+        installLock.lock();
+        try {
+            if (getPackage(pkg) != pluginInfo) {
+                VLog.w("skip uninstall plugin %s, it has been replaced or uninstalled", pkg);
+                return false;
+            }
+
+            deletePackage(pkg);
+        } finally {
+            installLock.unlock();
+        }
+
+        return true;
+    }
+
+    private void deletePackage(String pkg) {
         removePackage(pkg);
 
         final boolean ret = FileUtils.deleteDir(getPackageDirectory(pkg));
@@ -263,8 +419,6 @@ public class PluginManager {
             VLog.w(msg);
             LogReporter.reportException(new UninstallPluginException(msg));
         }
-
-        return true;
     }
 
     /**
@@ -282,14 +436,20 @@ public class PluginManager {
     /**
      * 卸载所有已安装的插件
      */
-    public synchronized void uninstallAllPlugins() {
+    public void uninstallAllPlugins() {
         checkInit();
 
         List<PluginInfo> allApps = getAllPlugins();
         for (PluginInfo pluginInfo : allApps) {
             final String packageName = pluginInfo.packageName;
-            FileUtils.deleteDir(getPackageDirectory(packageName));
-            removePackage(packageName);
+            final Lock installLock = getInstallLock(packageName);
+            installLock.lock();
+            try {
+                FileUtils.deleteDir(getPackageDirectory(packageName));
+                removePackage(packageName);
+            } finally {
+                installLock.unlock();
+            }
         }
     }
 
@@ -321,61 +481,139 @@ public class PluginManager {
 
     /**
      * 解析已安装的插件包，生成内存对象,需要在使用插件之前调用
+     * <p>
+     * 若配置了多个解析线程，则各插件 APK 在线程池中并行解析，解析结果仍在当前线程中按目录顺序注册
      */
-    private synchronized int scanInstalledPlugins() {
-        int pluginCount = 0;
+    private int scanInstalledPlugins() {
         final File[] files = mPluginDir.listFiles();
         if (files == null) {
             // should not happen
             return 0;
         }
+
+        final List<File> appDirs = new ArrayList<>(files.length);
         for (File appDir : files) {
-            final HashMap<String, Object> params = new HashMap<>(2);
-
-            final String pkgName = appDir.getName();
-            final File apkFile = new File(appDir, BASE_APK);
-            if (!apkFile.exists()) {
-                final boolean ret = FileUtils.deleteDir(appDir);
-
-                String msg = String.format("Unable to preload app %s, error: apk missing, remove it ret: %s", pkgName,
-                        ret);
-                VLog.e(msg);
-
-                params.put(LogReporter.Key.STATUS, String.valueOf(InstallResult.ERR_IO_EXCEPTION));
-                params.put(LogReporter.Key.MESSAGE, msg);
-                LogReporter.reportException(new PreloadPluginException(msg));
-                LogReporter.reportState(LogReporter.EventId.PLUGIN_PRELOAD, false,
-                        LogReporter.Label.FILE_PREFIX + pkgName, params);
-                continue;
-            }
-
-            TimingUtils.startTime(pkgName);
-            InstallResult res = scanInstalledPlugin(apkFile.getAbsolutePath());
-            final boolean success = res.isSuccess();
-            if (success) {
-                pluginCount++;
-                params.put(LogReporter.Key.VERSION_NAME, res.plugin == null ? "N/A" : res.plugin.versionName);
+            if (new File(appDir, BASE_APK).exists()) {
+                appDirs.add(appDir);
             } else {
-                final boolean ret = FileUtils.deleteDir(appDir);
-                VLog.e("Unable to preload app %s, error: %s, remove it ret: %s", pkgName, res, ret);
-                params.put(LogReporter.Key.STATUS, String.valueOf(res.status));
-                params.put(LogReporter.Key.MESSAGE, res.message);
-                LogReporter.reportException(new PreloadPluginException(res.message));
+                removeApkMissingPlugin(appDir);
             }
+        }
 
-            // TODO: remove this event report if it harm initialization performance
+        int pluginCount = 0;
+        final int threadCount = Math.min(mPreloadThreadCount, appDirs.size());
+        if (threadCount <= 1) {
+            for (File appDir : appDirs) {
+                if (registerScannedPlugin(appDir, scanInstalledPlugin(appDir))) {
+                    pluginCount++;
+                }
+            }
+            return pluginCount;
+        }
 
-            params.put(LogReporter.Key.TIME,
-                    TimingUtils.getNormalizedDuration(pkgName, TimingUtils.SECTION_DURATION_10_MS,
-                            TimingUtils.MAX_SECTION_20));
-            LogReporter.reportState(LogReporter.EventId.PLUGIN_PRELOAD, success,
-                    LogReporter.Label.FILE_PREFIX + pkgName, params);
+        VLog.i("scanInstalledPlugins in parallel, plugins: %d, threads: %d", appDirs.size(), threadCount);
+        final ExecutorService executor = Executors.newFixedThreadPool(threadCount);
+        try {
+            final List<Future<ScanResult>> futures = new ArrayList<>(appDirs.size());
+            for (final File appDir : appDirs) {
+                futures.add(executor.submit(new Callable<ScanResult>() {
+                    @Override
+                    public ScanResult call() {
+                        return scanInstalledPlugin(appDir);
+                    }
+                }));
+            }
+
+            for (int i = 0; i < appDirs.size(); i++) {
+                if (registerScannedPlugin(appDirs.get(i), getScanResult(futures.get(i)))) {
+                    pluginCount++;
+                }
+            }
+        } finally {
+            executor.shutdown();
         }
         return pluginCount;
     }
 
-    private InstallResult scanInstalledPlugin(String apkPath) {
-        return install(apkPath, true, false, false, false);
+    private void removeApkMissingPlugin(File appDir) {
+        final String pkgName = appDir.getName();
+        final boolean ret = FileUtils.deleteDir(appDir);
+
+        String msg = String.format("Unable to preload app %s, error: apk missing, remove it ret: %s", pkgName, ret);
+        VLog.e(msg);
+
+        final HashMap<String, Object> params = new HashMap<>(2);
+        params.put(LogReporter.Key.STATUS, String.valueOf(InstallResult.ERR_IO_EXCEPTION));
+        params.put(LogReporter.Key.MESSAGE, msg);
+        LogReporter.reportException(new PreloadPluginException(msg));
+        LogReporter.reportState(LogReporter.EventId.PLUGIN_PRELOAD, false,
+                LogReporter.Label.FILE_PREFIX + pkgName, params);
+    }
+
+    /**
+     * 注册解析成功的插件，解析失败则删除插件目录
+     *
+     * @param appDir     插件安装目录
+     * @param scanResult 插件解析结果
+     * @return true 若插件注册成功；否则 false
+     */
+    private boolean registerScannedPlugin(File appDir, ScanResult scanResult) {
+        final HashMap<String, Object> params = new HashMap<>(3);
+
+        final String pkgName = appDir.getName();
+        final InstallResult res = scanResult.installResult;
+        final boolean success = res.isSuccess() && res.plugin != null;
+        if (success) {
+            putPackage(res.plugin);
+            params.put(LogReporter.Key.VERSION_NAME, res.plugin.versionName);
+        } else {
+            final boolean ret = FileUtils.deleteDir(appDir);
+            VLog.e("Unable to preload app %s, error: %s, remove it ret: %s", pkgName, res, ret);
+            params.put(LogReporter.Key.STATUS, String.valueOf(res.status));
+            params.put(LogReporter.Key.MESSAGE, res.message);
+            LogReporter.reportException(new PreloadPluginException(res.message));
+        }
+
+        // TODO: remove this event report if it harm initialization performance
+
+        params.put(LogReporter.Key.TIME, TimingUtils.normalizeDuration(scanResult.duration,
+                TimingUtils.SECTION_DURATION_10_MS, TimingUtils.MAX_SECTION_20));
+        LogReporter.reportState(LogReporter.EventId.PLUGIN_PRELOAD, success,
+                LogReporter.Label.FILE_PREFIX + pkgName, params);
+        return success;
+    }
+
+    private ScanResult scanInstalledPlugin(File appDir) {
+        final long begin = SystemClock.elapsedRealtime();
+        final String apkPath = new File(appDir, BASE_APK).getAbsolutePath();
+        final InstallResult result = install(apkPath, true, false, false, false, new InstallSession(apkPath, null));
+        return new ScanResult(result, SystemClock.elapsedRealtime() - begin);
+    }
+
+    private static ScanResult getScanResult(Future<ScanResult> future) {
+        boolean interrupted = false;
+        try {
+            while (true) {
+                try {
+                    return future.get();
+                } catch (InterruptedException e) {
+                    // 等待所有插件解析完成，避免把尚未解析完的插件当作解析失败删除
+                    interrupted = true;
+                } catch (ExecutionException e) {
+                    final Throwable cause = e.getCause();
+                    if (cause instanceof RuntimeException) {
+                        throw (RuntimeException) cause;
+                    } else if (cause instanceof Error) {
+                        throw (Error) cause;
+                    }
+                    throw new IllegalStateException(cause);
+                }
+            }
+        } finally {
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
     }
 
     /**
@@ -387,15 +625,31 @@ public class PluginManager {
      * @param checkSignatures 是否校验签名，若为 true, 则插件与宿主签名一致才能安装
      * @return 安装结果
      */
-    public synchronized InstallResult installPluginFromAssets(String assetsApkPath, boolean checkVersion,
+    public InstallResult installPluginFromAssets(String assetsApkPath, boolean checkVersion,
             boolean checkSignatures) {
+        return installPluginFromAssets(assetsApkPath, checkVersion, checkSignatures, null);
+    }
+
+    /**
+     * 安装 assets 中的插件
+     *
+     * @param assetsApkPath   位于 assets 中的安装包文件路径（相对于 assets 根目录，比如：
+     *                        <code>"plugins/com.wlqq.phantom.plugin.test1_1.0.0.apk"</code>）
+     * @param checkVersion    是否检查版本号，若为 true, 则仅支持升级安装
+     * @param checkSignatures 是否校验签名，若为 true, 则插件与宿主签名一致才能安装
+     * @param session         安装过程，用于获取安装进度及取消安装，可为 null
+     * @return 安装结果
+     */
+    public InstallResult installPluginFromAssets(String assetsApkPath, boolean checkVersion,
+            boolean checkSignatures, @Nullable InstallSession session) {
+        // 不同插件可能并发安装，临时文件名中加入线程 id 避免冲突
         File tmpFile = new File(mContext.getDir("assets_plugins", Context.MODE_PRIVATE),
-                SystemClock.elapsedRealtime() + ".apk");
+                SystemClock.elapsedRealtime() + "_" + Thread.currentThread().getId() + ".apk");
         AssetManager assets = mContext.getAssets();
         InstallResult result;
         try {
             FileUtils.copyInputStreamToFile(assets.open(assetsApkPath), tmpFile);
-            result = installPlugin(tmpFile.getAbsolutePath(), checkVersion, checkSignatures, false);
+            result = installPlugin(tmpFile.getAbsolutePath(), checkVersion, checkSignatures, false, session);
         } catch (IOException e) {
             String msg = "error copy assets apk to tmp dir: " + assetsApkPath;
             VLog.e(e, msg);
@@ -417,10 +671,8 @@ public class PluginManager {
      * @param checkSignatures 是否校验签名，若为 true, 则插件与宿主签名一致才能安装
      * @return 安装结果
      */
-    public synchronized InstallResult installPlugin(String apkPath, boolean checkVersion, boolean checkSignatures) {
-        checkInit();
-
-        return install(apkPath, false, checkVersion, checkSignatures, false);
+    public InstallResult installPlugin(String apkPath, boolean checkVersion, boolean checkSignatures) {
+        return installPlugin(apkPath, checkVersion, checkSignatures, false, null);
     }
 
     /**
@@ -432,15 +684,51 @@ public class PluginManager {
      * @param forceReplace    是否忽略版本检查，是否支持热更新检查，强制替换插件
      * @return 安装结果
      */
-    public synchronized InstallResult installPlugin(String apkPath, boolean checkVersion, boolean checkSignatures,
+    public InstallResult installPlugin(String apkPath, boolean checkVersion, boolean checkSignatures,
             boolean forceReplace) {
+        return installPlugin(apkPath, checkVersion, checkSignatures, forceReplace, null);
+    }
+
+    /**
+     * 安装插件
+     *
+     * @param apkPath         安装包绝对路径
+     * @param checkVersion    是否检查版本号，若为 true, 则仅支持升级安装
+     * @param checkSignatures 是否校验签名，若为 true, 则插件与宿主签名一致才能安装
+     * @param forceReplace    是否忽略版本检查，是否支持热更新检查，强制替换插件
+     * @param session         安装过程，用于获取安装进度及取消安装，可为 null
+     * @return 安装结果
+     */
+    public InstallResult installPlugin(String apkPath, boolean checkVersion, boolean checkSignatures,
+            boolean forceReplace, @Nullable InstallSession session) {
         checkInit();
 
-        return install(apkPath, false, checkVersion, checkSignatures, forceReplace);
+        return install(apkPath, false, checkVersion, checkSignatures, forceReplace,
+                session != null ? session : new InstallSession(String.valueOf(apkPath), null));
     }
 
     private InstallResult install(String apkPath, boolean onlyScan, boolean checkVersion, boolean checkSignatures,
-            boolean forceReplace) {
+            boolean forceReplace, @NonNull InstallSession session) {
+        try {
+            return doInstall(apkPath, onlyScan, checkVersion, checkSignatures, forceReplace, session);
+        } finally {
+            session.finish();
+        }
+    }
+
+    @NonNull
+    private static InstallResult cancelled(String apkPath) {
+        final String msg = "install cancelled: " + apkPath;
+        VLog.w(msg);
+        return new InstallResult(InstallResult.ERR_INSTALL_CANCELLED, msg);
+    }
+
+    private InstallResult doInstall(String apkPath, boolean onlyScan, boolean checkVersion, boolean checkSignatures,
+            boolean forceReplace, @NonNull InstallSession session) {
+        if (!session.enterStage(InstallSession.STAGE_PARSE)) {
+            return cancelled(apkPath);
+        }
+
         if (apkPath == null) {
             final String msg = "install error, apkPath is null";
             VLog.w(msg);
@@ -454,55 +742,75 @@ public class PluginManager {
             return new InstallResult(InstallResult.ERR_FILE_NOT_EXIST, msg, new SourceFileNotExistException(msg));
         }
 
-        int flags = PackageManager.GET_META_DATA | PackageManager.GET_ACTIVITIES | PackageManager.GET_SERVICES
-                | PackageManager.GET_PROVIDERS | PackageManager.GET_RECEIVERS;
-        if (checkSignatures) {
-            flags |= PackageManager.GET_SIGNATURES;
-        }
+        // 解析已安装插件时优先使用安装时写入的元数据索引，避免重新解析 APK
+        final PluginMetadataIndex.Entry indexEntry = onlyScan
+                ? PluginMetadataIndex.read(new File(apk.getParentFile(), PluginMetadataIndex.INDEX_FILE), apk) : null;
+
+        final PackageInfo packageInfo;
+        AssetManager assets = null;
+        final Map<String, String> pluginProvidedDependencies;
+        if (indexEntry != null) {
+            VLog.i("scan plugin from metadata index: %s", apkPath);
+            packageInfo = indexEntry.packageInfo;
+            pluginProvidedDependencies = indexEntry.providedDependencies;
+        } else {
+            int flags = PackageManager.GET_META_DATA | PackageManager.GET_ACTIVITIES | PackageManager.GET_SERVICES
+                    | PackageManager.GET_PROVIDERS | PackageManager.GET_RECEIVERS;
+            if (checkSignatures) {
+                flags |= PackageManager.GET_SIGNATURES;
+            }
 
-        final PackageManager packageManager = mContext.getPackageManager();
-        final PackageInfo packageInfo = packageManager.getPackageArchiveInfo(apkPath, flags);
-        if (packageInfo == null) {
-            final String msg = "install error, packageInfo is null, parse apk: " + apkPath;
-            VLog.w(msg);
-            return new InstallResult(InstallResult.ERR_PARSE_APK, msg, new ParseApkException(msg));
-        }
+            final PackageManager packageManager = mContext.getPackageManager();
+            packageInfo = packageManager.getPackageArchiveInfo(apkPath, flags);
+            if (packageInfo == null) {
+                final String msg = "install error, packageInfo is null, parse apk: " + apkPath;
+                VLog.w(msg);
+                return new InstallResult(InstallResult.ERR_PARSE_APK, msg, new ParseApkException(msg));
+            }
 
-        final ApplicationInfo applicationInfo = packageInfo.applicationInfo;
-        if (applicationInfo == null) {
-            final String msg = "install error, applicationInfo is null, parse apk: " + apkPath;
-            VLog.w(msg);
-            return new InstallResult(InstallResult.ERR_PARSE_APK, msg, new ParseApkException(msg));
-        }
-        // fix sourceDir and publicSourceDir
-        applicationInfo.sourceDir = applicationInfo.publicSourceDir = apkPath;
+            final ApplicationInfo applicationInfo = packageInfo.applicationInfo;
+            if (applicationInfo == null) {
+                final String msg = "install error, applicationInfo is null, parse apk: " + apkPath;
+                VLog.w(msg);
+                return new InstallResult(InstallResult.ERR_PARSE_APK, msg, new ParseApkException(msg));
+            }
+            // fix sourceDir and publicSourceDir
+            applicationInfo.sourceDir = applicationInfo.publicSourceDir = apkPath;
 
-        Resources resources;
-        try {
-            resources = packageManager.getResourcesForApplication(applicationInfo);
-        } catch (PackageManager.NameNotFoundException e) {
-            final String msg = "install error, getResourcesForApplication NameNotFoundException, parse apk: " + apkPath;
-            VLog.w(e, msg);
-            return new InstallResult(InstallResult.ERR_PARSE_APK, msg, new ParseApkException(msg));
+            Resources resources;
+            try {
+                resources = packageManager.getResourcesForApplication(applicationInfo);
+            } catch (PackageManager.NameNotFoundException e) {
+                final String msg = "install error, getResourcesForApplication NameNotFoundException, parse apk: "
+                        + apkPath;
+                VLog.w(e, msg);
+                return new InstallResult(InstallResult.ERR_PARSE_APK, msg, new ParseApkException(msg));
+            }
+
+            assets = resources.getAssets();
+
+            try {
+                pluginProvidedDependencies = parsePluginProvidedDependencies(apkPath, assets);
+            } catch (ParseProvidedDependenciesException e) {
+                final String msg = "error parsePluginProvidedDependencies: " + apkPath;
+                VLog.w(e, msg);
+                return new InstallResult(InstallResult.ERR_PARSE_PROVIDED_LIBRARIES, msg, e);
+            }
         }
 
-        final AssetManager assets = resources.getAssets();
+        if (!session.enterStage(InstallSession.STAGE_CHECK_DEPENDENCIES)) {
+            return cancelled(apkPath);
+        }
 
         // check shared library dependencies
-        CheckSharedLibraryDependenciesResult sharedLibraryDependenciesResult;
-        try {
-            sharedLibraryDependenciesResult = checkSharedLibraryDependencies(apkPath, assets);
-            if (!sharedLibraryDependenciesResult.success) {
-                return new InstallResult(InstallResult.ERR_SHARED_LIBRARY_DEPENDENCY_MISMATCH,
-                        sharedLibraryDependenciesResult.message,
-                        new SharedLibraryDependenciesMismatchException(sharedLibraryDependenciesResult.message,
-                                sharedLibraryDependenciesResult.hostCompileDependencies,
-                                sharedLibraryDependenciesResult.pluginProvidedDependencies));
-            }
-        } catch (ParseProvidedDependenciesException e) {
-            final String msg = "error parsePluginProvidedDependencies: " + apkPath;
-            VLog.w(e, msg);
-            return new InstallResult(InstallResult.ERR_PARSE_PROVIDED_LIBRARIES, msg, e);
+        final CheckSharedLibraryDependenciesResult sharedLibraryDependenciesResult = checkSharedLibraryDependencies(
+                apkPath, pluginProvidedDependencies);
+        if (!sharedLibraryDependenciesResult.success) {
+            return new InstallResult(InstallResult.ERR_SHARED_LIBRARY_DEPENDENCY_MISMATCH,
+                    sharedLibraryDependenciesResult.message,
+                    new SharedLibraryDependenciesMismatchException(sharedLibraryDependenciesResult.message,
+                            sharedLibraryDependenciesResult.hostCompileDependencies,
+                            sharedLibraryDependenciesResult.pluginProvidedDependencies));
         }
 
         // check phantom service dependencies
@@ -511,132 +819,193 @@ public class PluginManager {
         VLog.i("phantomServiceDependenciesResult: %s, msg: %s", phantomServiceDependenciesResult.success,
                 phantomServiceDependenciesResult.message);
 
-        boolean isReplace = false;
+        // 安装、升级同一插件时与该插件的其他安装、卸载操作互斥；解析已安装插件时各插件目录互不相同，无需加锁
+        final Lock installLock = onlyScan ? null : getInstallLock(packageInfo.packageName);
+        if (installLock != null) {
+            installLock.lock();
+        }
+        try {
+            boolean isReplace = false;
+
+            // PackageManagerService holds all packages, try to check if need update.
+            // 解析已安装插件时由 scanInstalledPlugins 统一注册，此时不访问插件注册表
+            PluginInfo existOne = onlyScan ? null : getPackage(packageInfo.packageName);
+            if (existOne != null) {
+                if (!phantomServiceDependenciesResult.success) {
+                    // 宿主不满足插件对 PhantomService 的依赖
+                    final String msg = "install skip upgrade, PhantomService dependencies mismatch, apkPath: " + apkPath;
+                    VLog.w(msg);
+                    return new InstallResult(InstallResult.ERR_INSTALL_NOT_UPGRADE, msg, existOne);
+                }
+
+                if (!forceReplace && !checkVersion(existOne.packageInfo, packageInfo, checkVersion)) {
+                    // 若配置了检查版本信息，则不允许降版本或同版本覆盖
+                    final String msg = "install skip upgrade, version downgrade or replace, apkPath: " + apkPath;
+                    VLog.w(msg);
+                    return new InstallResult(InstallResult.ERR_INSTALL_NOT_UPGRADE, msg, existOne);
+                }
 
-        // PackageManagerService holds all packages, try to check if need update.
-        PluginInfo existOne = getPackage(packageInfo.packageName);
-        if (existOne != null) {
-            if (!phantomServiceDependenciesResult.success) {
-                // 宿主不满足插件对 PhantomService 的依赖
-                final String msg = "install skip upgrade, PhantomService dependencies mismatch, apkPath: " + apkPath;
+                if (!forceReplace && existOne.isStarted() && !existOne.isHotUpgrade()) {
+                    // 插件已启动，但不支持热升级
+                    final String msg = "install skip upgrade, the old does not support hot upgrade, apkPath: " + apkPath;
+                    VLog.w(msg);
+                    return new InstallResult(InstallResult.ERR_INSTALL_NOT_UPGRADE, msg, existOne);
+                }
+
+                isReplace = true;
+            } else if (!phantomServiceDependenciesResult.success) {
+                // 全新安装
+                return new InstallResult(InstallResult.ERR_PHANTOM_SERVICE_DEPENDENCY_MISMATCH,
+                        phantomServiceDependenciesResult.message,
+                        new PhantomServiceDependenciesMismatchException(phantomServiceDependenciesResult.message));
+            }
+
+            File appDir = createPackageDirectoryIfNeeded(packageInfo.packageName);
+            if (!appDir.isDirectory()) {
+                final String msg = "install error, unable to create app dir: " + appDir.getAbsolutePath();
                 VLog.w(msg);
-                return new InstallResult(InstallResult.ERR_INSTALL_NOT_UPGRADE, msg, existOne);
+                return new InstallResult(InstallResult.ERR_IO_EXCEPTION, msg, new IOException(msg));
             }
 
-            if (!forceReplace && !checkVersion(existOne.packageInfo, packageInfo, checkVersion)) {
-                // 若配置了检查版本信息，则不允许降版本或同版本覆盖
-                final String msg = "install skip upgrade, version downgrade or replace, apkPath: " + apkPath;
+            File libDir = new File(appDir, LIB_DIR);
+            if (!libDir.exists() && !libDir.mkdirs()) {
+                final String msg = "install error, unable to create lib dir: " + libDir.getAbsolutePath();
                 VLog.w(msg);
-                return new InstallResult(InstallResult.ERR_INSTALL_NOT_UPGRADE, msg, existOne);
+                return new InstallResult(InstallResult.ERR_IO_EXCEPTION, msg, new IOException(msg));
             }
 
-            if (!forceReplace && existOne.isStarted() && !existOne.isHotUpgrade()) {
-                // 插件已启动，但不支持热升级
-                final String msg = "install skip upgrade, the old does not support hot upgrade, apkPath: " + apkPath;
+            File odexDir = new File(appDir, VmUtils.IS_VM_ART ? OAT_DIR : ODEX_DIR);
+            if (!odexDir.exists() && !odexDir.mkdirs()) {
+                final String msg = "install error, unable to create odex folder: " + odexDir.getAbsolutePath();
                 VLog.w(msg);
-                return new InstallResult(InstallResult.ERR_INSTALL_NOT_UPGRADE, msg, existOne);
+                return new InstallResult(InstallResult.ERR_IO_EXCEPTION, msg, new IOException(msg));
             }
+            File odexFile = new File(odexDir, BASE_DEX);
+
+            String apkDigest = indexEntry != null ? indexEntry.digest : null;
+            if (!onlyScan) {
+                if (checkSignatures && !checkSignatures(packageInfo)) {
+                    final String msg = "install error, signature mismatch, apkPath: " + apkPath;
+                    VLog.w(msg);
+                    return new InstallResult(InstallResult.ERR_SIGNATURE_MISMATCH, msg,
+                            new SignatureMismatchException(msg));
+                }
 
-            isReplace = true;
-        } else if (!phantomServiceDependenciesResult.success) {
-            // 全新安装
-            return new InstallResult(InstallResult.ERR_PHANTOM_SERVICE_DEPENDENCY_MISMATCH,
-                    phantomServiceDependenciesResult.message,
-                    new PhantomServiceDependenciesMismatchException(phantomServiceDependenciesResult.message));
-        }
+                // 提交安装：此后开始修改插件安装目录，不能再取消
+                if (!session.commit() || !session.enterStage(InstallSession.STAGE_COPY_APK)) {
+                    return cancelled(apkPath);
+                }
 
-        File appDir = createPackageDirectoryIfNeeded(packageInfo.packageName);
-        if (!appDir.isDirectory()) {
-            final String msg = "install error, unable to create app dir: " + appDir.getAbsolutePath();
-            VLog.w(msg);
-            return new InstallResult(InstallResult.ERR_IO_EXCEPTION, msg, new IOException(msg));
-        }
+                if (isReplace) {
+                    // 修改安装目录前移除旧版本，避免查找到旧版本并在其文件被改写时启动
+                    removePackage(packageInfo.packageName);
+                }
 
-        File libDir = new File(appDir, LIB_DIR);
-        if (!libDir.exists() && !libDir.mkdirs()) {
-            final String msg = "install error, unable to create lib dir: " + libDir.getAbsolutePath();
-            VLog.w(msg);
-            return new InstallResult(InstallResult.ERR_IO_EXCEPTION, msg, new IOException(msg));
-        }
+                File dstApk = new File(appDir, BASE_APK);
 
-        File odexDir = new File(appDir, VmUtils.IS_VM_ART ? OAT_DIR : ODEX_DIR);
-        if (!odexDir.exists() && !odexDir.mkdirs()) {
-            final String msg = "install error, unable to create odex folder: " + odexDir.getAbsolutePath();
-            VLog.w(msg);
-            return new InstallResult(InstallResult.ERR_IO_EXCEPTION, msg, new IOException(msg));
-        }
-        File odexFile = new File(odexDir, BASE_DEX);
+                if (isReplace) {
+                    FileUtils.cleanDir(libDir);
+                    FileUtils.cleanDir(odexDir);
+                    StartupClassPreloader.deleteClassLists(appDir);
 
-        if (!onlyScan) {
-            if (checkSignatures && !checkSignatures(packageInfo)) {
-                final String msg = "install error, signature mismatch, apkPath: " + apkPath;
-                VLog.w(msg);
-                return new InstallResult(InstallResult.ERR_SIGNATURE_MISMATCH, msg,
-                        new SignatureMismatchException(msg));
-            }
+                    if (dstApk.exists() && (!dstApk.delete())) {
+                        VLog.w("delete %s error", dstApk.getName());
+                    }
+                }
 
-            File dstApk = new File(appDir, BASE_APK);
+                // 只完整读取一次源 APK：拷贝的同时计算摘要；so 库从刚写入的 base.apk 中按中央目录定位后读取
+                try {
+                    apkDigest = FileUtils.copyFileAndCalculateMd5(apk, dstApk);
+                } catch (IOException e) {
+                    final String msg = "install error, copyFile error base.apk: " + apkPath;
+                    VLog.w(e, msg);
+                    return new InstallResult(InstallResult.ERR_IO_EXCEPTION, msg, e);
+                }
 
-            if (isReplace) {
-                FileUtils.cleanDir(libDir);
-                FileUtils.cleanDir(odexDir);
+                session.enterStage(InstallSession.STAGE_EXTRACT_NATIVE_LIBRARIES);
+                try {
+                    NativeLibraryUtils.copyNativeBinaries(dstApk, libDir);
+                } catch (CopyNativeSoException e) {
+                    final String msg = "copyNativeBinaries error: " + apk;
+                    VLog.w(e, msg);
+                    return new InstallResult(InstallResult.ERR_COPY_NATIVE_SO, msg, e);
+                }
 
-                if (dstApk.exists() && (!dstApk.delete())) {
-                    VLog.w("delete %s error", dstApk.getName());
+                apk = dstApk;
+            }
+
+            AndroidManifestParser.ComponentIntentFiltersProvider componentIntentFilters;
+            if (indexEntry != null) {
+                componentIntentFilters = indexEntry.componentIntentFilters;
+            } else {
+                session.enterStage(InstallSession.STAGE_PARSE_MANIFEST);
+                try {
+                    componentIntentFilters = AndroidManifestParser.parse(assets);
+                } catch (ParseApkException e) {
+                    final String msg = "parse manifest from apk error: " + apk;
+                    VLog.w(e, msg);
+                    return new InstallResult(InstallResult.ERR_PARSE_APK, msg, e);
                 }
             }
 
-            try {
-                NativeLibraryUtils.copyNativeBinaries(apk, libDir);
-            } catch (CopyNativeSoException e) {
-                final String msg = "copyNativeBinaries error: " + apk;
-                VLog.w(e, msg);
-                return new InstallResult(InstallResult.ERR_COPY_NATIVE_SO, msg, e);
+            PluginInfo pluginInfo = new PluginInfo(apk.getAbsolutePath(), libDir.getAbsolutePath(),
+                    odexDir.getAbsolutePath(), odexFile.getAbsolutePath(), packageInfo, mContext.getPackageManager(),
+                    componentIntentFilters, sharedLibraryDependenciesResult.pluginProvidedDependencies, mLazyPluginInfo);
+            if (indexEntry == null) {
+                apkDigest = writeMetadataIndex(apk, apkDigest, packageInfo, componentIntentFilters.get(),
+                        sharedLibraryDependenciesResult.pluginProvidedDependencies);
             }
+            pluginInfo.setApkDigest(apkDigest);
 
-            try {
-                FileUtils.copyFile(apk, dstApk);
-            } catch (IOException e) {
-                final String msg = "install error, copyFile error base.apk: " + apkPath;
-                VLog.w(e, msg);
-                return new InstallResult(InstallResult.ERR_IO_EXCEPTION, msg, e);
+            if (!onlyScan) {
+                putPackage(pluginInfo);
+                scheduleDexOpt(pluginInfo, isReplace);
             }
 
-            apk = dstApk;
+            final int status = isReplace ? InstallResult.ERR_INSTALL_UPGRADE : InstallResult.ERR_INSTALL_NEW;
+            final String msg = "install ok, status: " + status;
+            VLog.i(msg);
+            return new InstallResult(status, msg, pluginInfo);
+        } finally {
+            if (installLock != null) {
+                installLock.unlock();
+            }
         }
+    }
 
-        if (isReplace) {
-            removePackage(packageInfo.packageName);
+    private void scheduleDexOpt(PluginInfo pluginInfo, boolean isReplace) {
+        final DexOptScheduler scheduler = mDexOptScheduler;
+        if (scheduler != null) {
+            // 升级安装的插件通常马上会被使用，优先进行 dexopt
+            scheduler.schedule(pluginInfo,
+                    isReplace ? DexOptScheduler.PRIORITY_HIGH : DexOptScheduler.PRIORITY_NORMAL);
         }
+    }
 
-        TimingLogger timingLogger = new TimingLogger(Constants.TAG, "install");
-        AndroidManifestParser.ComponentIntentFilters componentIntentFilters;
-        try {
-            componentIntentFilters = AndroidManifestParser.parse(assets);
-            timingLogger.addSplit("AndroidManifestParser#parse ok");
-        } catch (ParseApkException e) {
-            timingLogger.addSplit("AndroidManifestParser#parse error");
-            final String msg = "parse manifest from apk error: " + apk;
-            VLog.w(e, msg);
-            return new InstallResult(InstallResult.ERR_PARSE_APK, msg, e);
-        } finally {
-            timingLogger.dumpToLog();
+    /**
+     * 写入插件元数据索引，供下次冷启动解析已安装插件时使用
+     *
+     * @return APK 文件摘要；若未提供摘要且计算失败，则返回 null
+     */
+    @Nullable
+    private String writeMetadataIndex(File apk, @Nullable String apkDigest, PackageInfo packageInfo,
+            AndroidManifestParser.ComponentIntentFilters componentIntentFilters,
+            Map<String, String> providedDependencies) {
+        final File indexFile = new File(apk.getParentFile(), PluginMetadataIndex.INDEX_FILE);
+        final String digest = apkDigest != null ? apkDigest : FileUtils.calculateMd5(apk);
+        if (digest == null) {
+            PluginMetadataIndex.delete(indexFile);
+            return null;
         }
 
-        PluginInfo pluginInfo = new PluginInfo(apk.getAbsolutePath(), libDir.getAbsolutePath(),
-                odexDir.getAbsolutePath(), odexFile.getAbsolutePath(), packageInfo, mContext.getPackageManager(),
-                componentIntentFilters, sharedLibraryDependenciesResult.pluginProvidedDependencies);
-        putPackage(pluginInfo);
-        final int status = isReplace ? InstallResult.ERR_INSTALL_UPGRADE : InstallResult.ERR_INSTALL_NEW;
-        final String msg = "install ok, status: " + status;
-        VLog.i(msg);
-        return new InstallResult(status, msg, pluginInfo);
+        final boolean ret = PluginMetadataIndex.write(indexFile, apk, digest, packageInfo, componentIntentFilters,
+                providedDependencies);
+        VLog.i("write metadata index: %s, ret: %s", indexFile, ret);
+        return digest;
     }
 
     private CheckSharedLibraryDependenciesResult checkSharedLibraryDependencies(String apkPath,
-            AssetManager assetManager)
-            throws ParseProvidedDependenciesException {
-        final Map<String, String> pluginProvidedDependencies = parsePluginProvidedDependencies(apkPath, assetManager);
+            Map<String, String> pluginProvidedDependencies) {
         final Map<String, String> hostCompileDependencies = getHostCompileDependencyMap();
         final VersionVerifier.Result result = VersionVerifier.satisfies(hostCompileDependencies,
                 pluginProvidedDependencies);
@@ -795,58 +1164,80 @@ public class PluginManager {
         return dependencies;
     }
 
-    private synchronized void putPackage(@NonNull PluginInfo pluginInfo) {
-        mPackages.put(pluginInfo.packageName, pluginInfo);
+    @NonNull
+    private Lock getInstallLock(@NonNull String packageName) {
+        synchronized (mInstallLocks) {
+            Lock lock = mInstallLocks.get(packageName);
+            if (lock == null) {
+                lock = new ReentrantLock();
+                mInstallLocks.put(packageName, lock);
+            }
+            return lock;
+        }
+    }
+
+    private void putPackage(@NonNull PluginInfo pluginInfo) {
+        synchronized (mRegistryLock) {
+            final Registry registry = new Registry(mRegistry);
+            registry.packages.put(pluginInfo.packageName, pluginInfo);
 
-        final PackageInfo packageInfo = pluginInfo.packageInfo;
+            final PackageInfo packageInfo = pluginInfo.packageInfo;
 
-        final ActivityInfo[] activities = packageInfo.activities;
-        if (activities != null) {
-            for (ActivityInfo activity : activities) {
-                mActivities.put(new ComponentName(activity.packageName, activity.name), pluginInfo);
+            final ActivityInfo[] activities = packageInfo.activities;
+            if (activities != null) {
+                for (ActivityInfo activity : activities) {
+                    registry.activities.put(new ComponentName(activity.packageName, activity.name), pluginInfo);
+                }
             }
-        }
 
-        final ServiceInfo[] services = packageInfo.services;
-        if (services != null) {
-            for (ServiceInfo service : services) {
-                mServices.put(new ComponentName(service.packageName, service.name), pluginInfo);
+            final ServiceInfo[] services = packageInfo.services;
+            if (services != null) {
+                for (ServiceInfo service : services) {
+                    registry.services.put(new ComponentName(service.packageName, service.name), pluginInfo);
+                }
             }
+
+            mRegistry = registry;
         }
     }
 
     @Nullable
-    private synchronized PluginInfo getPackage(String packageName) {
+    private PluginInfo getPackage(String packageName) {
         if (TextUtils.isEmpty(packageName)) {
             return null;
         }
-        return mPackages.get(packageName);
+        return mRegistry.packages.get(packageName);
     }
 
-    @SuppressWarnings("PMD.AvoidSynchronizedAtMethodLevel")
-    private synchronized void removePackage(String packageName) {
+    private void removePackage(String packageName) {
         if (TextUtils.isEmpty(packageName)) {
             return;
         }
 
-        final PluginInfo removed = mPackages.remove(packageName);
+        final PluginInfo removed;
+        synchronized (mRegistryLock) {
+            final Registry registry = new Registry(mRegistry);
+            removed = registry.packages.remove(packageName);
 
-        if (removed == null) {
-            return;
-        }
+            if (removed == null) {
+                return;
+            }
 
-        final ActivityInfo[] activities = removed.packageInfo.activities;
-        if (activities != null) {
-            for (ActivityInfo activity : activities) {
-                mActivities.remove(new ComponentName(activity.packageName, activity.name));
+            final ActivityInfo[] activities = removed.packageInfo.activities;
+            if (activities != null) {
+                for (ActivityInfo activity : activities) {
+                    registry.activities.remove(new ComponentName(activity.packageName, activity.name));
+                }
             }
-        }
 
-        final ServiceInfo[] services = removed.packageInfo.services;
-        if (services != null) {
-            for (ServiceInfo service : services) {
-                mServices.remove(new ComponentName(service.packageName, service.name));
+            final ServiceInfo[] services = removed.packageInfo.services;
+            if (services != null) {
+                for (ServiceInfo service : services) {
+                    registry.services.remove(new ComponentName(service.packageName, service.name));
+                }
             }
+
+            mRegistry = registry;
         }
 
         PhantomServiceManager.unregisterService(packageName);
@@ -856,12 +1247,36 @@ public class PluginManager {
 
     @Nullable
     private PluginInfo getPluginByActivityName(@NonNull ComponentName activity) {
-        return mActivities.get(activity);
+        return mRegistry.activities.get(activity);
     }
 
     @Nullable
     private PluginInfo getPluginByServiceName(@NonNull ComponentName service) {
-        return mServices.get(service);
+        return mRegistry.services.get(service);
+    }
+
+    /**
+     * 已安装插件注册表快照，发布后不再修改，修改时复制一份新的快照
+     */
+    private static final class Registry {
+        // package_name -> PluginInfo
+        final ArrayMap<String, PluginInfo> packages;
+        // Activity ComponentName -> PluginInfo
+        final ArrayMap<ComponentName, PluginInfo> activities;
+        // Service ComponentName -> PluginInfo
+        final ArrayMap<ComponentName, PluginInfo> services;
+
+        Registry() {
+            packages = new ArrayMap<>();
+            activities = new ArrayMap<>();
+            services = new ArrayMap<>();
+        }
+
+        Registry(@NonNull Registry registry) {
+            packages = new ArrayMap<>(registry.packages);
+            activities = new ArrayMap<>(registry.activities);
+            services = new ArrayMap<>(registry.services);
+        }
     }
 
     @SuppressWarnings("PMD.AccessorClassGeneration")
@@ -894,6 +1309,18 @@ public class PluginManager {
         }
     }
 
+    private static final class ScanResult {
+        @NonNull
+        final InstallResult installResult;
+        // 解析耗时，单位毫秒
+        final long duration;
+
+        ScanResult(@NonNull InstallResult installResult, long duration) {
+            this.installResult = installResult;
+            this.duration = duration;
+        }
+    }
+
     private static final class CheckPhantomServiceDependenciesResult {
         public final boolean success;
         @NonNull
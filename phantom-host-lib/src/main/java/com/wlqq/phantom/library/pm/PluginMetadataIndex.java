@@ -0,0 +1,309 @@
+/*
+ * Copyright (C) 2017-2018 Manbang Group
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.wlqq.phantom.library.pm;
+
+import android.content.IntentFilter;
+import android.content.pm.PackageInfo;
+import android.os.Build;
+import android.os.Parcel;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.support.v4.util.ArrayMap;
+
+import com.wlqq.phantom.library.BuildConfig;
+import com.wlqq.phantom.library.utils.IoUtils;
+import com.wlqq.phantom.library.utils.SuppressFBWarnings;
+import com.wlqq.phantom.library.utils.VLog;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 插件元数据索引，安装插件时写入 base.apk 所在目录，冷启动解析已安装插件时直接从索引恢复插件信息，
+ * 避免重新解析 APK 中的 AndroidManifest.xml 与 provided_dependencies_v2.txt
+ * <p>
+ * 索引以 APK 文件大小、修改时间和安装时计算的摘要为键；系统版本（{@link Build#FINGERPRINT}）或 Phantom 版本变化时，
+ * 由于 {@link Parcel} 格式及解析逻辑可能变化，索引同样视为失效
+ * <p>
+ * 组件 Intent-Filter 列表单独存放，仅在首次访问时反序列化
+ */
+final class PluginMetadataIndex {
+    // 插件元数据索引文件名
+    static final String INDEX_FILE = "base.idx";
+
+    private static final int MAGIC = 0x50484958;   // "PHIX"
+    private static final int FORMAT_VERSION = 2;
+    private static final String TMP_SUFFIX = ".tmp";
+
+    private PluginMetadataIndex() {
+        // prevent instantiation
+    }
+
+    /**
+     * 读取插件元数据索引
+     *
+     * @param indexFile 索引文件
+     * @param apkFile   索引对应的 APK 文件
+     * @return 索引内容；若索引不存在或已失效，则返回 null
+     */
+    @Nullable
+    static Entry read(@NonNull File indexFile, @NonNull File apkFile) {
+        if (!indexFile.isFile()) {
+            return null;
+        }
+
+        DataInputStream input = null;
+        try {
+            input = new DataInputStream(new BufferedInputStream(new FileInputStream(indexFile)));
+            if (input.readInt() != MAGIC || input.readInt() != FORMAT_VERSION) {
+                VLog.w("metadata index format mismatch: %s", indexFile);
+                return null;
+            }
+
+            if (!Build.FINGERPRINT.equals(input.readUTF()) || input.readInt() != BuildConfig.VERSION_CODE) {
+                VLog.i("metadata index out of date, system or phantom upgraded: %s", indexFile);
+                return null;
+            }
+
+            final long apkLength = input.readLong();
+            final long apkLastModified = input.readLong();
+            final String digest = input.readUTF();
+            if (apkLength != apkFile.length() || apkLastModified != apkFile.lastModified()) {
+                VLog.i("metadata index stale, apk changed: %s", apkFile);
+                return null;
+            }
+
+            final byte[] payload = new byte[input.readInt()];
+            input.readFully(payload);
+            final byte[] intentFilters = new byte[input.readInt()];
+            input.readFully(intentFilters);
+            return readPayload(payload, intentFilters, digest);
+        } catch (Exception e) {
+            VLog.w(e, "error read metadata index: %s", indexFile);
+            delete(indexFile);
+            return null;
+        } finally {
+            IoUtils.closeQuietly(input);
+        }
+    }
+
+    /**
+     * 写入插件元数据索引，写入失败时删除不完整的索引文件
+     *
+     * @param indexFile              索引文件
+     * @param apkFile                索引对应的 APK 文件
+     * @param digest                 APK 文件摘要
+     * @param packageInfo            插件 PackageInfo
+     * @param componentIntentFilters 插件中各类型组件 Intent-Filter 列表
+     * @param providedDependencies   插件对宿主 maven 库依赖描述信息
+     * @return true 写入成功；否则 false
+     */
+    static boolean write(@NonNull File indexFile, @NonNull File apkFile, @NonNull String digest,
+            @NonNull PackageInfo packageInfo,
+            @NonNull AndroidManifestParser.ComponentIntentFilters componentIntentFilters,
+            @NonNull Map<String, String> providedDependencies) {
+        final File tmpFile = new File(indexFile.getPath() + TMP_SUFFIX);
+        DataOutputStream output = null;
+        try {
+            final byte[] payload = writePayload(packageInfo, providedDependencies);
+            final byte[] intentFilters = writeComponentIntentFilters(componentIntentFilters);
+
+            output = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmpFile)));
+            output.writeInt(MAGIC);
+            output.writeInt(FORMAT_VERSION);
+            output.writeUTF(Build.FINGERPRINT);
+            output.writeInt(BuildConfig.VERSION_CODE);
+            output.writeLong(apkFile.length());
+            output.writeLong(apkFile.lastModified());
+            output.writeUTF(digest);
+            output.writeInt(payload.length);
+            output.write(payload);
+            output.writeInt(intentFilters.length);
+            output.write(intentFilters);
+            output.close();
+            output = null;
+
+            if (!tmpFile.renameTo(indexFile)) {
+                throw new IOException("rename to " + indexFile + " fail");
+            }
+            return true;
+        } catch (Exception e) {
+            VLog.w(e, "error write metadata index: %s", indexFile);
+            delete(tmpFile);
+            delete(indexFile);
+            return false;
+        } finally {
+            IoUtils.closeQuietly(output);
+        }
+    }
+
+    @SuppressFBWarnings("RV_RETURN_VALUE_IGNORED_BAD_PRACTICE")
+    static void delete(@NonNull File indexFile) {
+        if (indexFile.exists()) {
+            indexFile.delete();
+        }
+    }
+
+    private static byte[] writePayload(PackageInfo packageInfo, Map<String, String> providedDependencies) {
+        final Parcel parcel = Parcel.obtain();
+        try {
+            packageInfo.writeToParcel(parcel, 0);
+
+            parcel.writeInt(providedDependencies.size());
+            for (Map.Entry<String, String> entry : providedDependencies.entrySet()) {
+                parcel.writeString(entry.getKey());
+                parcel.writeString(entry.getValue());
+            }
+
+            return parcel.marshall();
+        } finally {
+            parcel.recycle();
+        }
+    }
+
+    private static Entry readPayload(byte[] payload, byte[] intentFilters, String digest) {
+        final Parcel parcel = Parcel.obtain();
+        try {
+            parcel.unmarshall(payload, 0, payload.length);
+            parcel.setDataPosition(0);
+
+            final PackageInfo packageInfo = PackageInfo.CREATOR.createFromParcel(parcel);
+
+            final int dependencyCount = parcel.readInt();
+            final ArrayMap<String, String> providedDependencies = new ArrayMap<>(dependencyCount);
+            for (int i = 0; i < dependencyCount; i++) {
+                providedDependencies.put(parcel.readString(), parcel.readString());
+            }
+
+            return new Entry(digest, packageInfo, new LazyComponentIntentFilters(intentFilters),
+                    providedDependencies);
+        } finally {
+            parcel.recycle();
+        }
+    }
+
+    private static byte[] writeComponentIntentFilters(
+            AndroidManifestParser.ComponentIntentFilters componentIntentFilters) {
+        final Parcel parcel = Parcel.obtain();
+        try {
+            writeIntentFilters(parcel, componentIntentFilters.mActivities);
+            writeIntentFilters(parcel, componentIntentFilters.mServices);
+            writeIntentFilters(parcel, componentIntentFilters.mReceivers);
+            parcel.writeStringList(new ArrayList<>(componentIntentFilters.mLauncherActivities));
+
+            return parcel.marshall();
+        } finally {
+            parcel.recycle();
+        }
+    }
+
+    private static AndroidManifestParser.ComponentIntentFilters readComponentIntentFilters(byte[] data) {
+        final Parcel parcel = Parcel.obtain();
+        try {
+            parcel.unmarshall(data, 0, data.length);
+            parcel.setDataPosition(0);
+
+            final AndroidManifestParser.ComponentIntentFilters componentIntentFilters =
+                    new AndroidManifestParser.ComponentIntentFilters();
+            readIntentFilters(parcel, componentIntentFilters.mActivities);
+            readIntentFilters(parcel, componentIntentFilters.mServices);
+            readIntentFilters(parcel, componentIntentFilters.mReceivers);
+            final ArrayList<String> launcherActivities = new ArrayList<>();
+            parcel.readStringList(launcherActivities);
+            componentIntentFilters.mLauncherActivities.addAll(launcherActivities);
+            return componentIntentFilters;
+        } finally {
+            parcel.recycle();
+        }
+    }
+
+    private static void writeIntentFilters(Parcel parcel, Map<String, List<IntentFilter>> components) {
+        parcel.writeInt(components.size());
+        for (Map.Entry<String, List<IntentFilter>> entry : components.entrySet()) {
+            parcel.writeString(entry.getKey());
+            parcel.writeTypedList(entry.getValue());
+        }
+    }
+
+    private static void readIntentFilters(Parcel parcel, Map<String, List<IntentFilter>> components) {
+        final int count = parcel.readInt();
+        for (int i = 0; i < count; i++) {
+            final String name = parcel.readString();
+            final List<IntentFilter> filters = parcel.createTypedArrayList(IntentFilter.CREATOR);
+            components.put(name, filters);
+        }
+    }
+
+    /**
+     * 从索引中恢复的插件元数据
+     */
+    static final class Entry {
+        /**
+         * 安装时计算的 APK 文件摘要
+         */
+        @NonNull
+        final String digest;
+        @NonNull
+        final PackageInfo packageInfo;
+        @NonNull
+        final AndroidManifestParser.ComponentIntentFiltersProvider componentIntentFilters;
+        @NonNull
+        final Map<String, String> providedDependencies;
+
+        Entry(@NonNull String digest, @NonNull PackageInfo packageInfo,
+                @NonNull AndroidManifestParser.ComponentIntentFiltersProvider componentIntentFilters,
+                @NonNull Map<String, String> providedDependencies) {
+            this.digest = digest;
+            this.packageInfo = packageInfo;
+            this.componentIntentFilters = componentIntentFilters;
+            this.providedDependencies = providedDependencies;
+        }
+    }
+
+    /**
+     * 首次访问时才从索引数据中反序列化组件 Intent-Filter 列表
+     */
+    private static final class LazyComponentIntentFilters
+            implements AndroidManifestParser.ComponentIntentFiltersProvider {
+        private byte[] mData;
+        private AndroidManifestParser.ComponentIntentFilters mComponentIntentFilters;
+
+        LazyComponentIntentFilters(byte[] data) {
+            mData = data;
+        }
+
+        @NonNull
+        @Override
+        @SuppressWarnings("PMD.AvoidSynchronizedAtMethodLevel")
+        public synchronized AndroidManifestParser.ComponentIntentFilters get() {
+            if (mComponentIntentFilters == null) {
+                mComponentIntentFilters = readComponentIntentFilters(mData);
+                mData = null;
+            }
+            return mComponentIntentFilters;
+        }
+    }
+}
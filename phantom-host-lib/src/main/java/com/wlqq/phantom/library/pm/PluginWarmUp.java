@@ -0,0 +1,124 @@
+/*
+ * Copyright (C) 2017-2018 Manbang Group
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.wlqq.phantom.library.pm;
+
+import android.content.Context;
+import android.os.Build;
+import android.os.Process;
+import android.os.SystemClock;
+import android.support.annotation.NonNull;
+
+import com.wlqq.phantom.library.utils.VLog;
+
+import java.util.List;
+
+/**
+ * 插件预热：根据插件启动历史，在宿主初始化完成后于后台线程中预先启动本次进程中可能被使用的插件，
+ * 使用户首次进入插件时插件已加载完成
+ * <ul>
+ * <li>记录每个进程中各插件首次被使用的时间（距进程启动），见 {@link PluginLaunchHistory}</li>
+ * <li>预热使用概率不低于 {@link #MIN_LIKELIHOOD} 的插件，首次使用越早的插件越先预热</li>
+ * <li>预热总耗时达到时间预算，或预热导致的 Java 堆增长达到内存预算时停止预热</li>
+ * </ul>
+ * <b>注意</b>：插件 {@link android.app.Application#onCreate()} 仍在主线程中执行，预热线程等待其完成
+ *
+ * @see PluginInfo#start()
+ */
+public final class PluginWarmUp {
+    /**
+     * 预热插件的最小使用概率（使用次数 / 进程数）
+     */
+    static final float MIN_LIKELIHOOD = 0.5f;
+
+    private final PluginLaunchHistory mLaunchHistory;
+    private final long mTimeBudgetMs;
+    private final long mMemoryBudgetBytes;
+    // 进程启动时间（elapsedRealtime）
+    private final long mProcessStartTime;
+
+    /**
+     * 创建插件预热。插件启动历史在 {@link #loadHistory()} 中加载，不在调用线程中读取磁盘
+     *
+     * @param context           the application context
+     * @param timeBudgetMs      预热时间预算(ms)
+     * @param memoryBudgetBytes 预热内存预算(byte)，以预热前后 Java 堆使用量的增长计算
+     */
+    public PluginWarmUp(@NonNull Context context, long timeBudgetMs, long memoryBudgetBytes) {
+        mTimeBudgetMs = timeBudgetMs;
+        mMemoryBudgetBytes = memoryBudgetBytes;
+        mProcessStartTime = Build.VERSION.SDK_INT >= Build.VERSION_CODES.N
+                ? Process.getStartElapsedRealtime() : SystemClock.elapsedRealtime();
+
+        mLaunchHistory = new PluginLaunchHistory(context.getApplicationContext());
+    }
+
+    /**
+     * 在当前线程中加载插件启动历史，会读取磁盘，应在后台线程中调用。加载前记录的插件使用在加载完成后合并
+     */
+    public void loadHistory() {
+        mLaunchHistory.load();
+    }
+
+    /**
+     * 记录插件在本次进程中被使用
+     *
+     * @param pluginInfo 插件信息
+     */
+    void recordLaunch(@NonNull PluginInfo pluginInfo) {
+        mLaunchHistory.record(pluginInfo.packageName, SystemClock.elapsedRealtime() - mProcessStartTime,
+                System.currentTimeMillis());
+    }
+
+    /**
+     * 在当前线程中预热可能被使用的插件，需在 {@link PluginManager} 初始化完成后调用；
+     * 尚未加载插件启动历史时先加载
+     *
+     * @param pluginManager 插件管理
+     * @return 预热成功的插件数量
+     */
+    public int warmUp(@NonNull PluginManager pluginManager) {
+        mLaunchHistory.load();
+        final List<String> packageNames = mLaunchHistory.getLikelyPlugins(MIN_LIKELIHOOD,
+                System.currentTimeMillis());
+        VLog.i("warm up plugins: %s", packageNames);
+
+        final Runtime runtime = Runtime.getRuntime();
+        final long begin = SystemClock.elapsedRealtime();
+        final long beginHeap = runtime.totalMemory() - runtime.freeMemory();
+        int count = 0;
+        for (String packageName : packageNames) {
+            final long elapsed = SystemClock.elapsedRealtime() - begin;
+            final long heapGrowth = runtime.totalMemory() - runtime.freeMemory() - beginHeap;
+            if (elapsed >= mTimeBudgetMs || heapGrowth >= mMemoryBudgetBytes) {
+                VLog.i("warm up budget exhausted, cost: %dms, heap growth: %d", elapsed, heapGrowth);
+                break;
+            }
+
+            final PluginInfo pluginInfo = pluginManager.findPluginByPackageName(packageName);
+            if (pluginInfo == null || pluginInfo.isStarted()) {
+                continue;
+            }
+
+            if (pluginInfo.warmUp()) {
+                count++;
+            }
+        }
+
+        VLog.i("warm up %d plugins, cost: %dms", count, SystemClock.elapsedRealtime() - begin);
+        return count;
+    }
+}
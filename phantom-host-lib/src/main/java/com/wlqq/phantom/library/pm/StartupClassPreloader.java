@@ -0,0 +1,145 @@
+/*
+ * Copyright (C) 2017-2018 Manbang Group
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.wlqq.phantom.library.pm;
+
+import android.os.AsyncTask;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.support.annotation.NonNull;
+
+import com.wlqq.phantom.library.proxy.ClassLoadMonitor;
+import com.wlqq.phantom.library.proxy.PluginClassLoader;
+import com.wlqq.phantom.library.utils.IoUtils;
+import com.wlqq.phantom.library.utils.SuppressFBWarnings;
+import com.wlqq.phantom.library.utils.VLog;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.List;
+
+/**
+ * 插件启动类预加载
+ * <ul>
+ * <li>插件当前版本没有启动类列表时，记录 PluginClassLoader 创建后 {@link ClassLoadMonitor#STARTUP_WINDOW_MS}
+ * 内首次加载的插件类，写入启动类列表（见 {@link PluginInfo#getStartupClassListFile()}）</li>
+ * <li>已有启动类列表时，在创建 PluginClassLoader 后于后台线程中按列表顺序加载并链接这些类，
+ * 使插件第一个 Activity 启动时无需在主线程中加载、校验这些类</li>
+ * <li>升级插件时删除旧的启动类列表</li>
+ * </ul>
+ * 预加载不执行类的静态初始化，避免静态初始化代码在非主线程中执行
+ */
+final class StartupClassPreloader {
+    // 启动类列表文件名前缀
+    static final String CLASS_LIST_FILE_PREFIX = "startup_classes_";
+
+    private StartupClassPreloader() {
+    }
+
+    /**
+     * 在后台线程中预加载启动类列表中的类
+     *
+     * @param classLoader   插件 ClassLoader
+     * @param classListFile 启动类列表文件
+     */
+    static void preload(@NonNull final ClassLoader classLoader, @NonNull final File classListFile) {
+        AsyncTask.THREAD_POOL_EXECUTOR.execute(new Runnable() {
+            @Override
+            public void run() {
+                final long begin = SystemClock.elapsedRealtime();
+                final List<String> classNames;
+                InputStream input = null;
+                try {
+                    input = new FileInputStream(classListFile);
+                    classNames = IoUtils.readLines(input);
+                } catch (IOException e) {
+                    VLog.w(e, "error read startup class list %s", classListFile);
+                    return;
+                } finally {
+                    IoUtils.closeQuietly(input);
+                }
+
+                int count = 0;
+                for (String className : classNames) {
+                    try {
+                        Class.forName(className, false, classLoader);
+                        count++;
+                    } catch (ClassNotFoundException e) {
+                        VLog.v("preload %s error: %s", className, e);
+                    } catch (LinkageError e) {
+                        // 链接失败的类在主线程中加载时同样失败，忽略
+                        VLog.v("preload %s error: %s", className, e);
+                    }
+                }
+                VLog.i("preload %d/%d startup classes from %s, cost: %dms", count, classNames.size(),
+                        classListFile.getName(), SystemClock.elapsedRealtime() - begin);
+            }
+        });
+    }
+
+    /**
+     * 在启动阶段结束后，将插件 ClassLoader 记录的启动类写入启动类列表文件
+     *
+     * @param classLoader   创建时开启启动类记录的插件 ClassLoader
+     * @param classListFile 启动类列表文件
+     */
+    static void recordAfterStartup(@NonNull final PluginClassLoader classLoader, @NonNull final File classListFile) {
+        final Runnable writeTask = new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    final int count = classLoader.writeStartupClassList(classListFile);
+                    VLog.i("record %d startup classes to %s", count, classListFile.getName());
+                } catch (IOException e) {
+                    VLog.w(e, "error record startup classes to %s", classListFile);
+                    deleteQuietly(classListFile);
+                }
+            }
+        };
+        new Handler(Looper.getMainLooper()).postDelayed(new Runnable() {
+            @Override
+            public void run() {
+                AsyncTask.THREAD_POOL_EXECUTOR.execute(writeTask);
+            }
+        }, ClassLoadMonitor.STARTUP_WINDOW_MS);
+    }
+
+    /**
+     * 删除插件安装目录中所有版本的启动类列表
+     *
+     * @param installDir 插件安装目录
+     */
+    static void deleteClassLists(@NonNull File installDir) {
+        final File[] files = installDir.listFiles();
+        if (files == null) {
+            return;
+        }
+
+        for (File file : files) {
+            if (file.getName().startsWith(CLASS_LIST_FILE_PREFIX)) {
+                deleteQuietly(file);
+            }
+        }
+    }
+
+    @SuppressFBWarnings("RV_RETURN_VALUE_IGNORED_BAD_PRACTICE")
+    private static void deleteQuietly(File file) {
+        file.delete();
+    }
+}
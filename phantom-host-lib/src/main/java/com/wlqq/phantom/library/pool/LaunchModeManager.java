@@ -28,6 +28,7 @@ import android.os.Build;
 import android.service.notification.StatusBarNotification;
 import android.support.annotation.NonNull;
 import android.support.annotation.Nullable;
+import android.support.v4.util.ArrayMap;
 
 import com.wlqq.phantom.library.PhantomCore;
 import com.wlqq.phantom.library.log.LogReporter;
@@ -57,6 +58,8 @@ public class LaunchModeManager {
     private FixedActivityCache mCache;
     private boolean mInitialized;
     private Context mContext;
+    // plugin package name -> 存活（已 onCreate 未 onDestroy）的 Activity 数量
+    private final ArrayMap<String, Integer> mLiveActivityCounts = new ArrayMap<>();
 
     @SuppressWarnings("PMD.AccessorClassGeneration")
     private static class LazyHolder {
@@ -283,6 +286,47 @@ public class LaunchModeManager {
         mSingleInstancePool.dump();
     }
 
+    /**
+     * 插件 Activity 创建时调用，用于统计插件存活的 Activity 数量
+     *
+     * @param packageName 插件包名
+     */
+    public void onPluginActivityCreated(@NonNull String packageName) {
+        synchronized (mLiveActivityCounts) {
+            final Integer count = mLiveActivityCounts.get(packageName);
+            mLiveActivityCounts.put(packageName, count == null ? 1 : count + 1);
+        }
+    }
+
+    /**
+     * 插件 Activity 销毁时调用，与 {@link #onPluginActivityCreated(String)} 成对调用
+     *
+     * @param packageName 插件包名
+     */
+    public void onPluginActivityDestroyed(@NonNull String packageName) {
+        synchronized (mLiveActivityCounts) {
+            final Integer count = mLiveActivityCounts.get(packageName);
+            if (count == null || count <= 1) {
+                mLiveActivityCounts.remove(packageName);
+            } else {
+                mLiveActivityCounts.put(packageName, count - 1);
+            }
+        }
+    }
+
+    /**
+     * 获取插件存活的 Activity 数量
+     *
+     * @param packageName 插件包名
+     * @return 插件存活的 Activity 数量
+     */
+    public int getLiveActivityCount(@NonNull String packageName) {
+        synchronized (mLiveActivityCounts) {
+            final Integer count = mLiveActivityCounts.get(packageName);
+            return count == null ? 0 : count;
+        }
+    }
+
     /**
      * 减小proxyActivity的引用计数， 如果proxyActivity的引用计数小于0并且不是建立的固定映射关系的则会进行回收
      *
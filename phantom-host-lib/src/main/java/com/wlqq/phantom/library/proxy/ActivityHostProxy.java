@@ -44,6 +44,7 @@ import com.wlqq.phantom.library.PhantomCore;
 import com.wlqq.phantom.library.env.Constants;
 import com.wlqq.phantom.library.log.LogReporter;
 import com.wlqq.phantom.library.pm.PluginInfo;
+import com.wlqq.phantom.library.pm.PluginManager;
 import com.wlqq.phantom.library.pool.LaunchModeManager;
 import com.wlqq.phantom.library.utils.ClassUtils;
 import com.wlqq.phantom.library.utils.IntentUtils;
@@ -151,6 +152,8 @@ public class ActivityHostProxy extends FragmentActivity implements Cloneable {
     private int mHostThemeId = -1;
     private Intent mNewIntent;
     private boolean mHasSuperCalled = false;
+    // 是否已计入插件存活的 Activity
+    private boolean mLiveActivityCounted;
 
     @Override
     protected void onCreate(final Bundle savedInstanceState) {
@@ -170,6 +173,9 @@ public class ActivityHostProxy extends FragmentActivity implements Cloneable {
             return;
         }
         VLog.i("onCreate, originIntent.getComponent: %s", mPluginComponentName);
+        // 在启动插件前计入，避免插件在 Activity 创建过程中被空闲释放
+        LaunchModeManager.getInstance().onPluginActivityCreated(mPluginInfo.packageName);
+        mLiveActivityCounted = true;
         mTargetComponentStr = mPluginComponentName.flattenToString();
         mTargetPackageName = mPluginComponentName.getPackageName();
         mTargetClassName = mPluginComponentName.getClassName();
@@ -445,6 +451,8 @@ public class ActivityHostProxy extends FragmentActivity implements Cloneable {
                         String.format("start bundle %s from ActivityHostProxy fault", mPluginInfo.packageName));
             }
         }
+        // 插件可能已被预热启动，这里记录插件被使用
+        PluginManager.getInstance().recordPluginLaunch(mPluginInfo);
 
 
         mClassLoader = mPluginInfo.getPluginClassLoader();
@@ -521,6 +529,10 @@ public class ActivityHostProxy extends FragmentActivity implements Cloneable {
         if (this.isFinishing()) {
             LaunchModeManager.getInstance().unrefActivity(this.getClass().getName(), mTargetComponentStr);
         }
+        if (mLiveActivityCounted) {
+            mLiveActivityCounted = false;
+            LaunchModeManager.getInstance().onPluginActivityDestroyed(mPluginInfo.packageName);
+        }
     }
 
     public void callSuperOnDestroy() {
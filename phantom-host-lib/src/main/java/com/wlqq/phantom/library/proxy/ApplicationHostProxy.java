@@ -132,7 +132,7 @@ public class ApplicationHostProxy {
             if ("Can't create handler inside thread that has not called Looper.prepare()".equals(e.getMessage())) {
                 final AtomicReference<Throwable> innerThrowable = new AtomicReference<>();
                 final ConditionVariable conditionVariable = new ConditionVariable(false);
-                ThreadUtils.runOnUiThread(new Runnable() {
+                ThreadUtils.runOnUiThreadOrWhileWaiting(new Runnable() {
                     @Override
                     public void run() {
                         VLog.d("ProxyBuilder build application proxy runOnUiThread E");
@@ -186,7 +186,7 @@ public class ApplicationHostProxy {
         } else {
             final ConditionVariable conditionVariable = new ConditionVariable(false);
 
-            ThreadUtils.runOnUiThread(new Runnable() {
+            ThreadUtils.runOnUiThreadOrWhileWaiting(new Runnable() {
                 @Override
                 public void run() {
                     VLog.d("callApplicationOnCreateInUiThread runOnUiThread E");
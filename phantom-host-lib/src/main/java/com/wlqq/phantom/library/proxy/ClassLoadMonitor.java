@@ -0,0 +1,212 @@
+/*
+ * Copyright (C) 2017-2018 Manbang Group
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.wlqq.phantom.library.proxy;
+
+import android.support.annotation.NonNull;
+
+import com.wlqq.phantom.library.utils.IoUtils;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 插件类加载统计，记录 {@link PluginClassLoader} 加载的每个类的加载次数、来源、累计耗时，
+ * 各来源及各线程的加载次数，以及抛出的 {@link ClassNotFoundException}
+ * <p>
+ * 仅用于调试，通过 {@link PluginClassLoader#setInstrumentationEnabled(boolean)} 开启
+ */
+public final class ClassLoadMonitor {
+    /**
+     * 来源：boot classpath
+     */
+    public static final int SOURCE_BOOT = 0;
+    /**
+     * 来源：插件 dex
+     */
+    public static final int SOURCE_PLUGIN = 1;
+    /**
+     * 来源：宿主 ClassLoader
+     */
+    public static final int SOURCE_PARENT = 2;
+    /**
+     * 启动阶段时长，PluginClassLoader 创建后该时间内首次加载的插件类视为启动类
+     */
+    public static final long STARTUP_WINDOW_MS = 5 * 1000;
+
+    private static final String[] SOURCE_NAMES = {"boot", "plugin", "parent"};
+    // 报告中输出的耗时最多的类数量
+    private static final int TOP_CLASS_COUNT = 20;
+    // 记录的找不到的类名数量
+    private static final int MAX_NOT_FOUND_NAMES = 100;
+
+    private final long mStartTime = System.nanoTime();
+    // class name -> record，按首次加载顺序排列
+    private final Map<String, ClassRecord> mClasses = new LinkedHashMap<>();
+    // thread name -> 加载次数
+    private final Map<String, Integer> mThreadLoadCounts = new LinkedHashMap<>();
+    private final int[] mSourceLoadCounts = new int[SOURCE_NAMES.length];
+    private final long[] mSourceNanos = new long[SOURCE_NAMES.length];
+    private final List<String> mNotFoundNames = new ArrayList<>();
+    private int mNotFoundCount;
+    private long mNotFoundNanos;
+
+    ClassLoadMonitor() {
+    }
+
+    void onClassLoaded(@NonNull String className, int source, long nanos) {
+        synchronized (mClasses) {
+            ClassRecord record = mClasses.get(className);
+            if (record == null) {
+                record = new ClassRecord(className, source, System.nanoTime() - mStartTime);
+                mClasses.put(className, record);
+            }
+            record.loadCount++;
+            record.nanos += nanos;
+
+            mSourceLoadCounts[source]++;
+            mSourceNanos[source] += nanos;
+            increaseThreadLoadCount();
+        }
+    }
+
+    void onClassNotFound(@NonNull String className, long nanos) {
+        synchronized (mClasses) {
+            mNotFoundCount++;
+            mNotFoundNanos += nanos;
+            if (mNotFoundNames.size() < MAX_NOT_FOUND_NAMES && !mNotFoundNames.contains(className)) {
+                mNotFoundNames.add(className);
+            }
+            increaseThreadLoadCount();
+        }
+    }
+
+    private void increaseThreadLoadCount() {
+        final String threadName = Thread.currentThread().getName();
+        final Integer count = mThreadLoadCounts.get(threadName);
+        mThreadLoadCounts.put(threadName, count == null ? 1 : count + 1);
+    }
+
+    /**
+     * 获取指定来源、在开始统计后 window 时间内首次加载的类名
+     *
+     * @param source 来源，见 {@link #SOURCE_BOOT}、{@link #SOURCE_PLUGIN}、{@link #SOURCE_PARENT}
+     * @param window 开始统计后的时间窗口，小于等于 0 时不限
+     * @param unit   window 的单位
+     * @return 类名列表，按首次加载顺序排列
+     */
+    @NonNull
+    public List<String> getClassNames(int source, long window, @NonNull TimeUnit unit) {
+        final long windowNanos = window > 0 ? unit.toNanos(window) : Long.MAX_VALUE;
+        final List<String> classNames = new ArrayList<>();
+        synchronized (mClasses) {
+            for (ClassRecord record : mClasses.values()) {
+                if (record.source == source && record.firstLoadNanos <= windowNanos) {
+                    classNames.add(record.className);
+                }
+            }
+        }
+        return classNames;
+    }
+
+    /**
+     * 将指定来源、在开始统计后 window 时间内首次加载的类名写入文件，每行一个类名
+     *
+     * @param file   输出文件
+     * @param source 来源
+     * @param window 开始统计后的时间窗口，小于等于 0 时不限
+     * @param unit   window 的单位
+     * @return 写入的类名数量
+     * @throws IOException 写入失败
+     */
+    public int writeClassList(@NonNull File file, int source, long window, @NonNull TimeUnit unit)
+            throws IOException {
+        final List<String> classNames = getClassNames(source, window, unit);
+        BufferedWriter writer = null;
+        try {
+            writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file), IoUtils.DEFAULT_CHARSET));
+            for (String className : classNames) {
+                writer.write(className);
+                writer.newLine();
+            }
+        } finally {
+            IoUtils.closeQuietly(writer);
+        }
+        return classNames.size();
+    }
+
+    /**
+     * 生成统计报告
+     *
+     * @return 统计报告
+     */
+    @NonNull
+    public String dump() {
+        final StringBuilder sb = new StringBuilder(1024);
+        synchronized (mClasses) {
+            sb.append(String.format(Locale.ENGLISH, "classes: %d, elapsed: %dms%n", mClasses.size(),
+                    TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - mStartTime)));
+            for (int i = 0; i < SOURCE_NAMES.length; i++) {
+                sb.append(String.format(Locale.ENGLISH, "  %s: %d loads, %.2fms%n", SOURCE_NAMES[i],
+                        mSourceLoadCounts[i], mSourceNanos[i] / 1e6));
+            }
+            sb.append(String.format(Locale.ENGLISH, "  ClassNotFoundException: %d, %.2fms %s%n", mNotFoundCount,
+                    mNotFoundNanos / 1e6, mNotFoundNames));
+            sb.append("threads: ").append(mThreadLoadCounts).append('\n');
+
+            final List<ClassRecord> records = new ArrayList<>(mClasses.values());
+            Collections.sort(records, new Comparator<ClassRecord>() {
+                @Override
+                public int compare(ClassRecord lhs, ClassRecord rhs) {
+                    return lhs.nanos == rhs.nanos ? 0 : (lhs.nanos > rhs.nanos ? -1 : 1);
+                }
+            });
+            sb.append("hot classes:\n");
+            for (int i = 0; i < records.size() && i < TOP_CLASS_COUNT; i++) {
+                final ClassRecord record = records.get(i);
+                sb.append(String.format(Locale.ENGLISH, "  %s [%s] %d loads, %.2fms%n", record.className,
+                        SOURCE_NAMES[record.source], record.loadCount, record.nanos / 1e6));
+            }
+        }
+        return sb.toString();
+    }
+
+    private static final class ClassRecord {
+        final String className;
+        final int source;
+        // 首次加载距开始统计的时间
+        final long firstLoadNanos;
+        int loadCount;
+        long nanos;
+
+        ClassRecord(String className, int source, long firstLoadNanos) {
+            this.className = className;
+            this.source = source;
+            this.firstLoadNanos = firstLoadNanos;
+        }
+    }
+}
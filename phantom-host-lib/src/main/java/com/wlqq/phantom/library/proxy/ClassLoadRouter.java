@@ -0,0 +1,115 @@
+/*
+ * Copyright (C) 2017-2018 Manbang Group
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.wlqq.phantom.library.proxy;
+
+import android.support.annotation.NonNull;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * 按类名包前缀决定 {@link PluginClassLoader} 首先从哪个 ClassLoader 加载类，避免逐个尝试时抛出并捕获
+ * {@link ClassNotFoundException}
+ * <ul>
+ * <li>{@link #ROUTE_BOOT} 系统类（java.*、android.* 等），首先从 boot classpath 加载</li>
+ * <li>{@link #ROUTE_PARENT} 明确列出的包（插件依赖的公共库 APK 中的包），首先从 parent ClassLoader 加载。
+ * 不根据宿主公共库依赖的 groupId 推断包前缀：groupId 覆盖同组的所有库（插件可能自带其中一部分），
+ * 且常与 Java 包名不一致</li>
+ * <li>{@link #ROUTE_PLUGIN} 其它类，首先从插件 dex 中加载</li>
+ * </ul>
+ * 路由只决定首先尝试的 ClassLoader，首选 ClassLoader 找不到时按插件 dex、parent 的顺序查找其余的 ClassLoader。
+ * 只有 {@link #ROUTE_BOOT} 的类直接从 boot classpath 加载，其它类只能经 parent 委托找到 boot classpath 中的类，
+ * 因此 boot classpath 中的类须包含在 boot 包前缀中，否则会被插件自带的同名类覆盖
+ */
+final class ClassLoadRouter {
+    static final int ROUTE_PLUGIN = 0;
+    static final int ROUTE_BOOT = 1;
+    static final int ROUTE_PARENT = 2;
+
+    // 系统类及各版本 boot classpath 中的库类（如 API 28 以下的 junit.framework、API 23 以下的
+    // org.apache.commons.logging），插件自带的同名类不能覆盖 boot classpath 中的类
+    private static final String[] BOOT_PACKAGE_PREFIXES = {
+            "java.", "javax.", "android.", "dalvik.", "libcore.", "sun.",
+            // 系统内部类及系统重新打包的库，不包含 com.android.volley 等由 App 自身打包的库
+            "com.android.internal.", "com.android.org.", "com.android.okhttp.", "com.android.i18n.",
+            "org.json.", "org.w3c.dom.", "org.xml.sax.", "org.xmlpull.v1.", "org.kxml2.", "org.apache.http.",
+            "org.apache.commons.logging.", "junit.framework.",
+    };
+
+    // 以 android. 开头，但由 App 自身打包的库
+    private static final String[] APP_PACKAGE_PREFIXES = {
+            "android.support.", "android.arch.", "android.databinding.",
+    };
+
+    private final String[] mParentPackagePrefixes;
+
+    /**
+     * 创建类加载路由
+     *
+     * @param pluginPackageName 插件包名，包含插件包名的包前缀不会路由到 parent
+     * @param parentPackages    首先从 parent 加载的包名，如插件依赖的公共库 APK 中的包
+     */
+    ClassLoadRouter(@NonNull String pluginPackageName, @NonNull Collection<String> parentPackages) {
+        final String pluginPackagePrefix = pluginPackageName + ".";
+        final List<String> prefixes = new ArrayList<>(parentPackages.size());
+        for (String pkg : parentPackages) {
+            addParentPackagePrefix(prefixes, pkg + ".", pluginPackagePrefix);
+        }
+        mParentPackagePrefixes = prefixes.toArray(new String[prefixes.size()]);
+    }
+
+    private static void addParentPackagePrefix(List<String> prefixes, String prefix, String pluginPackagePrefix) {
+        if (!prefixes.contains(prefix) && !isBootClass(prefix) && !pluginPackagePrefix.startsWith(prefix)) {
+            prefixes.add(prefix);
+        }
+    }
+
+    /**
+     * 获取类首先尝试的 ClassLoader
+     *
+     * @param className 类名
+     * @return {@link #ROUTE_PLUGIN}、{@link #ROUTE_BOOT} 或 {@link #ROUTE_PARENT}
+     */
+    int route(@NonNull String className) {
+        if (isBootClass(className)) {
+            return ROUTE_BOOT;
+        }
+
+        for (String prefix : mParentPackagePrefixes) {
+            if (className.startsWith(prefix)) {
+                return ROUTE_PARENT;
+            }
+        }
+        return ROUTE_PLUGIN;
+    }
+
+    private static boolean isBootClass(String className) {
+        for (String prefix : APP_PACKAGE_PREFIXES) {
+            if (className.startsWith(prefix)) {
+                return false;
+            }
+        }
+
+        for (String prefix : BOOT_PACKAGE_PREFIXES) {
+            if (className.startsWith(prefix)) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,54 @@
+/*
+ * Copyright (C) 2017-2018 Manbang Group
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.wlqq.phantom.library.proxy;
+
+import android.support.annotation.NonNull;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 依赖多个公共库的插件 ClassLoader 的 parent：先从宿主查找，再依次从各公共库 ClassLoader 查找
+ * <p>
+ * 只依赖一个公共库时直接以该公共库 ClassLoader 为 parent，无需使用该类
+ */
+public class CommonLibraryClassLoader extends ClassLoader {
+    private final List<ClassLoader> mLibraryClassLoaders;
+
+    /**
+     * 创建公共库 ClassLoader
+     *
+     * @param hostClassLoader     宿主 ClassLoader
+     * @param libraryClassLoaders 公共库 ClassLoader，parent 均为宿主 ClassLoader
+     */
+    public CommonLibraryClassLoader(@NonNull ClassLoader hostClassLoader,
+            @NonNull List<ClassLoader> libraryClassLoaders) {
+        super(hostClassLoader);
+        mLibraryClassLoaders = new ArrayList<>(libraryClassLoaders);
+    }
+
+    @Override
+    protected Class<?> findClass(String name) throws ClassNotFoundException {
+        for (ClassLoader classLoader : mLibraryClassLoaders) {
+            try {
+                return classLoader.loadClass(name);
+            } catch (ClassNotFoundException ignored) {
+            }
+        }
+        throw new ClassNotFoundException(name);
+    }
+}
@@ -17,6 +17,7 @@
 package com.wlqq.phantom.library.proxy;
 
 import android.os.Build;
+import android.support.annotation.Nullable;
 import android.util.Log;
 import android.util.TimingLogger;
 
@@ -31,27 +32,48 @@ import com.wlqq.phantom.library.utils.SuppressFBWarnings;
 import com.wlqq.phantom.library.utils.VLog;
 
 import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
 import java.lang.reflect.Array;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipFile;
 
 
 /**
  * A {@code ClassLoader} implementation that implements a <b>delegate last</b> lookup policy.
- * For every class or resource this loader is requested to load, the following lookup order
- * is employed:
+ * For every class this loader is requested to load, the lookup order depends on the route
+ * chosen by {@link ClassLoadRouter}:
  *
  * <ul>
- *     <li>The boot classpath is always searched first</li>
- *     <li>Then, the list of {@code dex} files associated with this classloaders's
- *     {@code dexPath} is searched.</li>
- *     <li>Finally, this classloader will delegate to the specified {@code parent}.</li>
+ *     <li>System classes ({@link ClassLoadRouter#ROUTE_BOOT}): the boot classpath, then the
+ *     {@code dex} files of this classloader, then the {@code parent}.</li>
+ *     <li>Host libraries ({@link ClassLoadRouter#ROUTE_PARENT}): the {@code parent}, then the
+ *     {@code dex} files of this classloader.</li>
+ *     <li>Other classes ({@link ClassLoadRouter#ROUTE_PLUGIN}): the {@code dex} files of this
+ *     classloader, then the {@code parent}. The boot classpath is not searched directly.</li>
  * </ul>
+ * 按路由首先尝试最可能的 ClassLoader，以减少逐个尝试时抛出的 {@link ClassNotFoundException}，
+ * 并缓存最近找不到的类名（见 {@link #NEGATIVE_CACHE_SIZE}）
+ * <p>
+ * 调用 {@link #setInstrumentationEnabled(boolean)} 开启类加载统计后，之后创建的 PluginClassLoader 通过
+ * {@link #getClassLoadMonitor()} 提供统计结果
  */
 public class PluginClassLoader extends DexClassLoader {
     private static final String TAG = "PluginClassLoader";
@@ -65,30 +87,155 @@ public class PluginClassLoader extends DexClassLoader {
      */
     private static final String DEX_PREFIX = "classes";
     private static final String DEX_SUFFIX = ".dex";
-    // 用于记录额外的 dex 数量
+    /**
+     * 用于记录额外的 dex 数量
+     *
+     * @deprecated 已不再使用，由 {@link #EXTRA_DEX_CRC_FILE} 代替
+     */
+    @Deprecated
     public static final String EXTRA_DEX_COUNT_FILE = "multidex.count";
+    // 用于记录已解压的额外 dex 的 CRC 与大小
+    public static final String EXTRA_DEX_CRC_FILE = "multidex.crc";
+    /**
+     * 找不到的类名缓存数量
+     */
+    static final int NEGATIVE_CACHE_SIZE = 256;
+
+    private static volatile boolean sInstrumentationEnabled;
+
+    private final ClassLoadRouter mRouter;
+    // 是否开启了类加载统计
+    private final boolean mInstrumented;
+    // 开启类加载统计或记录启动类时不为 null，启动类记录完成且未开启类加载统计时置为 null
+    @Nullable
+    private volatile ClassLoadMonitor mMonitor;
+    // 最近找不到的类名，插件与宿主 ClassLoader 加载的类不会变化，无需失效
+    private final Map<String, Boolean> mNegativeCache = new LinkedHashMap<String, Boolean>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Boolean> eldest) {
+            return size() > NEGATIVE_CACHE_SIZE;
+        }
+    };
 
     public PluginClassLoader(PluginInfo pluginInfo, ClassLoader parent) {
+        this(pluginInfo, parent, Collections.<String>emptyList(), false);
+    }
+
+    /**
+     * 创建插件 ClassLoader
+     *
+     * @param pluginInfo           插件信息
+     * @param parent               宿主 ClassLoader，或插件依赖的公共库 ClassLoader
+     * @param parentPackages       首先从 parent 加载的包名，如插件依赖的公共库包含的包名
+     * @param recordStartupClasses 是否记录启动类，见 {@link #writeStartupClassList(File)}
+     */
+    public PluginClassLoader(PluginInfo pluginInfo, ClassLoader parent, Collection<String> parentPackages,
+            boolean recordStartupClasses) {
         super(pluginInfo.apkPath, pluginInfo.odexDir, pluginInfo.libPath, parent);
+        mRouter = new ClassLoadRouter(pluginInfo.packageName, parentPackages);
+        mInstrumented = sInstrumentationEnabled;
+        mMonitor = mInstrumented || recordStartupClasses ? new ClassLoadMonitor() : null;
 
         if (Build.VERSION.SDK_INT < Build.VERSION_CODES.LOLLIPOP) {
             installMultiDexBeforeLollipop(pluginInfo, parent);
         }
     }
 
-    // copied from https://android.googlesource.com/platform/libcore/+/master/dalvik/src/main/java/dalvik/system/DelegateLastClassLoader.java
+    /**
+     * 开启或关闭类加载统计，仅对之后创建的 PluginClassLoader 生效，统计有额外开销，仅用于调试
+     *
+     * @param enabled 是否开启
+     */
+    public static void setInstrumentationEnabled(boolean enabled) {
+        sInstrumentationEnabled = enabled;
+    }
+
+    /**
+     * 获取类加载统计
+     *
+     * @return 类加载统计，创建时未开启统计返回 null
+     */
+    @Nullable
+    public ClassLoadMonitor getClassLoadMonitor() {
+        return mInstrumented ? mMonitor : null;
+    }
+
+    /**
+     * 将创建后 {@link ClassLoadMonitor#STARTUP_WINDOW_MS} 内首次加载的插件类写入启动类列表文件，每行一个类名；
+     * 未开启类加载统计时，之后不再记录
+     *
+     * @param file 启动类列表文件
+     * @return 写入的类名数量
+     * @throws IOException 写入失败
+     * @throws IllegalStateException 创建时未开启启动类记录或类加载统计
+     */
+    public int writeStartupClassList(File file) throws IOException {
+        final ClassLoadMonitor monitor = mMonitor;
+        if (monitor == null) {
+            throw new IllegalStateException("startup classes not recorded");
+        }
+
+        if (!mInstrumented) {
+            mMonitor = null;
+        }
+        return monitor.writeClassList(file, ClassLoadMonitor.SOURCE_PLUGIN, ClassLoadMonitor.STARTUP_WINDOW_MS,
+                TimeUnit.MILLISECONDS);
+    }
+
     @Override
     public Class<?> loadClass(String name, boolean resolve) throws ClassNotFoundException {
+        final ClassLoadMonitor monitor = mMonitor;
+        if (monitor == null) {
+            return loadClassInternal(name);
+        }
+
+        final long begin = System.nanoTime();
+        try {
+            final Class<?> clazz = loadClassInternal(name);
+            monitor.onClassLoaded(name, getSource(clazz), System.nanoTime() - begin);
+            return clazz;
+        } catch (ClassNotFoundException e) {
+            monitor.onClassNotFound(name, System.nanoTime() - begin);
+            throw e;
+        }
+    }
+
+    private int getSource(Class<?> clazz) {
+        final ClassLoader classLoader = clazz.getClassLoader();
+        if (classLoader == this) {
+            return ClassLoadMonitor.SOURCE_PLUGIN;
+        }
+        return classLoader == null || classLoader == Object.class.getClassLoader()
+                ? ClassLoadMonitor.SOURCE_BOOT : ClassLoadMonitor.SOURCE_PARENT;
+    }
+
+    // copied from https://android.googlesource.com/platform/libcore/+/master/dalvik/src/main/java/dalvik/system/DelegateLastClassLoader.java
+    private Class<?> loadClassInternal(String name) throws ClassNotFoundException {
         // First, check whether the class has already been loaded. Return it if that's the
         // case.
         Class<?> cl = findLoadedClass(name);
         if (cl != null) {
             return cl;
         }
+        if (isNegativeCached(name)) {
+            throw new CachedClassNotFoundException(name);
+        }
+
+        // 首先尝试路由到的 ClassLoader，找不到时再按 delegate last 顺序尝试其它 ClassLoader
+        final int route = mRouter.route(name);
+        if (route == ClassLoadRouter.ROUTE_PARENT) {
+            try {
+                return getParent().loadClass(name);
+            } catch (ClassNotFoundException ignored) {
+            }
+        }
         // Next, check whether the class in question is present in the boot classpath.
-        try {
-            return Object.class.getClassLoader().loadClass(name);
-        } catch (ClassNotFoundException ignored) {
+        // 只有系统类（见 ClassLoadRouter 的 boot 包前缀）直接从 boot classpath 加载
+        if (route == ClassLoadRouter.ROUTE_BOOT) {
+            try {
+                return Object.class.getClassLoader().loadClass(name);
+            } catch (ClassNotFoundException ignored) {
+            }
         }
         // Next, check whether the class in question is present in the dexPath that this classloader
         // operates on, or its shared libraries.
@@ -99,18 +246,50 @@ public class PluginClassLoader extends DexClassLoader {
             fromSuper = ex;
         }
         // Finally, check whether the class in question is present in the parent classloader.
-        try {
-            return getParent().loadClass(name);
-        } catch (ClassNotFoundException cnfe) {
-            // The exception we're catching here is the CNFE thrown by the parent of this
-            // classloader. However, we would like to throw a CNFE that provides details about
-            // the class path / list of dex files associated with *this* classloader, so we choose
-            // to throw the exception thrown from that lookup.
-            throw fromSuper;
+        if (route != ClassLoadRouter.ROUTE_PARENT) {
+            try {
+                return getParent().loadClass(name);
+            } catch (ClassNotFoundException ignored) {
+            }
+        }
+        // The exception we're catching here is the CNFE thrown by the parent of this
+        // classloader. However, we would like to throw a CNFE that provides details about
+        // the class path / list of dex files associated with *this* classloader, so we choose
+        // to throw the exception thrown from that lookup.
+        putNegativeCache(name);
+        throw fromSuper;
+    }
+
+    private boolean isNegativeCached(String name) {
+        synchronized (mNegativeCache) {
+            return mNegativeCache.get(name) != null;
+        }
+    }
+
+    private void putNegativeCache(String name) {
+        synchronized (mNegativeCache) {
+            mNegativeCache.put(name, Boolean.TRUE);
         }
     }
 
     Class<?> findClassFast(String className) throws ClassNotFoundException {
+        final ClassLoadMonitor monitor = mMonitor;
+        if (monitor == null) {
+            return findClassFastInternal(className);
+        }
+
+        final long begin = System.nanoTime();
+        try {
+            final Class<?> clazz = findClassFastInternal(className);
+            monitor.onClassLoaded(className, ClassLoadMonitor.SOURCE_PLUGIN, System.nanoTime() - begin);
+            return clazz;
+        } catch (ClassNotFoundException e) {
+            monitor.onClassNotFound(className, System.nanoTime() - begin);
+            throw e;
+        }
+    }
+
+    private Class<?> findClassFastInternal(String className) throws ClassNotFoundException {
         Class<?> clazz = findLoadedClass(className);
         if (clazz != null) {
             return clazz;
@@ -121,6 +300,8 @@ public class PluginClassLoader extends DexClassLoader {
 
     /**
      * install extra dexes for Android 4.x
+     * <p>
+     * 各 dex 的解压与 dexopt 在线程池中并行进行；已解压的 dex 只有在其 CRC 与大小与 APK 中一致时才复用
      *
      * @see <a href="https://github.com/Qihoo360/RePlugin/pull/264/files">
      *     support multidex feature in plugin application for the ROM below LOLLIPOP</a>
@@ -130,20 +311,20 @@ public class PluginClassLoader extends DexClassLoader {
         VLog.e("for plugin: %s", pi.packageName);
         TimingLogger logger = new TimingLogger(TAG, "installMultiDexBeforeLollipop");
         try {
-            List<File> files = loadSecondaryDexes(pi, false);
-            logger.addSplit("loadSecondaryDexes, forceReload: false");
             try {
-                installSecondaryDexes(pi, parent, files);
-                logger.addSplit("installSecondaryDexes first");
+                List<Object[]> elements = loadSecondaryDexElements(pi, parent, false);
+                logger.addSplit("loadSecondaryDexElements, forceExtract: false");
+                installSecondaryDexElements(elements);
+                logger.addSplit("installSecondaryDexElements first");
                 // Some IOException causes may be fixed by a clean extraction.
             } catch (Exception e) {
                 VLog.e(e, "Failed to install extracted secondary dex files, retrying with "
                         + "forced extraction");
-                files = loadSecondaryDexes(pi, true);
-                logger.addSplit("loadSecondaryDexes, forceReload: true");
+                List<Object[]> elements = loadSecondaryDexElements(pi, parent, true);
+                logger.addSplit("loadSecondaryDexElements, forceExtract: true");
 
-                installSecondaryDexes(pi, parent, files);
-                logger.addSplit("installSecondaryDexes second");
+                installSecondaryDexElements(elements);
+                logger.addSplit("installSecondaryDexElements second");
             }
         } catch (Exception e) {
             VLog.e(e, "error install multidex");
@@ -154,47 +335,146 @@ public class PluginClassLoader extends DexClassLoader {
 
     }
 
-    private void installSecondaryDexes(PluginInfo pi, ClassLoader parent, List<File> dexFiles)
+    private void installSecondaryDexElements(List<Object[]> secondaryElements)
             throws ClassNotFoundException, IllegalAccessException, NoSuchFieldException {
-        if (dexFiles != null && dexFiles.size() > 0) {
+        if (secondaryElements.isEmpty()) {
+            return;
+        }
 
-            List<Object[]> allElements = new LinkedList<>();
+        List<Object[]> allElements = new LinkedList<>();
 
-            // get dexElements of main dex
-            Class<?> clz = Class.forName("dalvik.system.BaseDexClassLoader");
-            Object pathList = ReflectUtils.readField(clz, this, "pathList");
-            Object[] mainElements = (Object[]) ReflectUtils.readField(pathList.getClass(), pathList, "dexElements");
-            allElements.add(mainElements);
+        // get dexElements of main dex
+        Class<?> clz = Class.forName("dalvik.system.BaseDexClassLoader");
+        Object pathList = ReflectUtils.readField(clz, this, "pathList");
+        Object[] mainElements = (Object[]) ReflectUtils.readField(pathList.getClass(), pathList, "dexElements");
+        allElements.add(mainElements);
+        allElements.addAll(secondaryElements);
 
-            // get dexElements of extra dex (need to load dex first)
-            String optimizedDirectory = pi.getExtraOdexesDir().getAbsolutePath();
+        // combine Elements
+        Object combineElements = combineArray(allElements);
 
-            for (File file : dexFiles) {
-                if (PRINT_DETAIL_LOG) {
-                    VLog.e("dex file: %s", file.getName());
-                }
+        // rewrite Elements combined to classLoader
+        ReflectUtils.writeField(pathList.getClass(), pathList, "dexElements", combineElements);
+
+        // Test whether the Extra Dex is installed
+        if (PRINT_DETAIL_LOG) {
+            Object object = ReflectUtils.readField(pathList.getClass(), pathList, "dexElements");
+            int length = Array.getLength(object);
+            VLog.e("dexElements length: %d", length);
+        }
+    }
+
+    /**
+     * 并行解压（必要时）并加载 classes2.dex ~ classesN.dex
+     *
+     * @param pi           插件信息
+     * @param parent       宿主 ClassLoader
+     * @param forceExtract 是否忽略已解压的 dex 重新解压
+     * @return 各 dex 的 dexElements，按 dex 序号排列
+     * @throws IOException 读取 APK、解压或加载 dex 失败
+     */
+    private static List<Object[]> loadSecondaryDexElements(final PluginInfo pi, final ClassLoader parent,
+                                                           boolean forceExtract) throws IOException {
+        final File extraDexesDir = pi.getExtraDexesDir();
+        final String optimizedDirectory = pi.getExtraOdexesDir().getAbsolutePath();
+        final List<ZipEntry> dexEntries = getSecondaryDexEntries(pi);
+        if (dexEntries.isEmpty()) {
+            return new ArrayList<>();
+        }
 
-                DexClassLoader dexClassLoader = new DexClassLoader(file.getAbsolutePath(), optimizedDirectory,
-                        optimizedDirectory, parent);
+        if (forceExtract) {
+            FileUtils.cleanDir(extraDexesDir);
+        }
+        final Map<String, String> extractedCrcs = forceExtract
+                ? new LinkedHashMap<String, String>() : readExtractedDexCrcs(pi);
+
+        // 需要解压时先删除 CRC 记录，解压中断时下次全部重新解压
+        final List<Boolean> needExtract = new ArrayList<>(dexEntries.size());
+        boolean anyExtract = false;
+        for (ZipEntry entry : dexEntries) {
+            final File dexFile = new File(extraDexesDir, entry.getName());
+            final boolean extract = !getDexCrc(entry).equals(extractedCrcs.get(entry.getName()))
+                    || dexFile.length() != entry.getSize();
+            needExtract.add(extract);
+            anyExtract |= extract;
+        }
+        final File crcFile = getDexesCrcFile(pi);
+        if (anyExtract && crcFile.exists() && !crcFile.delete()) {
+            throw new IOException("Failed to delete " + crcFile);
+        }
+
+        final int threadCount = Math.min(dexEntries.size(), Runtime.getRuntime().availableProcessors());
+        final ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, threadCount));
+        final List<Object[]> elements = new ArrayList<>(dexEntries.size());
+        try {
+            final List<Future<Object[]>> futures = new ArrayList<>(dexEntries.size());
+            for (int i = 0; i < dexEntries.size(); i++) {
+                final String dexName = dexEntries.get(i).getName();
+                final boolean extract = needExtract.get(i);
+                futures.add(executor.submit(new Callable<Object[]>() {
+                    @Override
+                    public Object[] call() throws Exception {
+                        final File dexFile = new File(extraDexesDir, dexName);
+                        if (extract) {
+                            extractFile(pi.apkPath, dexName, dexFile);
+                        }
+                        return loadDexElements(dexFile, optimizedDirectory, parent);
+                    }
+                }));
+            }
 
-                Object obj = ReflectUtils.readField(clz, dexClassLoader, "pathList");
-                Object[] dexElements = (Object[]) ReflectUtils.readField(obj.getClass(), obj, "dexElements");
-                allElements.add(dexElements);
+            for (Future<Object[]> future : futures) {
+                elements.add(future.get());
             }
+        } catch (ExecutionException e) {
+            final Throwable cause = e.getCause();
+            throw cause instanceof IOException ? (IOException) cause : new IOException(cause);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("interrupted while loading secondary dex files");
+        } finally {
+            executor.shutdownNow();
+        }
 
-            // combine Elements
-            Object combineElements = combineArray(allElements);
+        if (anyExtract) {
+            putExtractedDexCrcs(pi, dexEntries);
+        }
+        if (PRINT_DETAIL_LOG) {
+            VLog.e("load %d secondary dex files, extracted: %s", dexEntries.size(), needExtract);
+        }
+        return elements;
+    }
 
-            // rewrite Elements combined to classLoader
-            ReflectUtils.writeField(pathList.getClass(), pathList, "dexElements", combineElements);
+    private static List<ZipEntry> getSecondaryDexEntries(PluginInfo pi) throws IOException {
+        final List<ZipEntry> entries = new ArrayList<>();
+        final ZipFile apk = new ZipFile(pi.apkPath);
+        try {
+            int secondaryNumber = 2;
+            ZipEntry dexFile = apk.getEntry(DEX_PREFIX + secondaryNumber + DEX_SUFFIX);
+            while (dexFile != null) {
+                entries.add(dexFile);
 
-            // Test whether the Extra Dex is installed
-            if (PRINT_DETAIL_LOG) {
-                Object object = ReflectUtils.readField(pathList.getClass(), pathList, "dexElements");
-                int length = Array.getLength(object);
-                VLog.e("dexElements length: %d", length);
+                secondaryNumber++;
+                dexFile = apk.getEntry(DEX_PREFIX + secondaryNumber + DEX_SUFFIX);
             }
+        } finally {
+            FileUtils.closeZipFileQuietly(apk);
+        }
+        return entries;
+    }
+
+    private static Object[] loadDexElements(File dexFile, String optimizedDirectory, ClassLoader parent)
+            throws ClassNotFoundException, IllegalAccessException, NoSuchFieldException {
+        if (PRINT_DETAIL_LOG) {
+            VLog.e("dex file: %s", dexFile.getName());
         }
+
+        DexClassLoader dexClassLoader = new DexClassLoader(dexFile.getAbsolutePath(), optimizedDirectory,
+                optimizedDirectory, parent);
+
+        Class<?> clz = Class.forName("dalvik.system.BaseDexClassLoader");
+        Object obj = ReflectUtils.readField(clz, dexClassLoader, "pathList");
+        return (Object[]) ReflectUtils.readField(obj.getClass(), obj, "dexElements");
     }
 
     /**
@@ -230,104 +510,90 @@ public class PluginClassLoader extends DexClassLoader {
         return combined;
     }
 
-    private static List<File> loadSecondaryDexes(PluginInfo pi, boolean forceReload) throws IOException {
-        List<File> files;
-        if (forceReload) {
-            if (PRINT_DETAIL_LOG) {
-                VLog.e("Forced extraction must be performed.");
-            }
-            files = performExtractions(pi);
-            putSecondaryDexesCount(pi, files);
-        } else {
-            try {
-                files = loadExistingExtractions(pi);
-            } catch (IOException ioe) {
-                VLog.e(ioe, "Failed to reload existing extracted secondary dex files, "
-                        + "falling back to fresh extraction");
-                files = performExtractions(pi);
-                putSecondaryDexesCount(pi, files);
-            }
-        }
-        if (PRINT_DETAIL_LOG) {
-            VLog.e("load found %d secondary dex files", files.size());
-        }
-        return files;
+    private static String getDexCrc(ZipEntry entry) {
+        return entry.getCrc() + "," + entry.getSize();
     }
 
-    private static List<File> loadExistingExtractions(PluginInfo pi) throws IOException {
-        if (PRINT_DETAIL_LOG) {
-            VLog.e("loadExistingExtractions");
+    /**
+     * 读取已解压 dex 的 CRC 记录
+     *
+     * @param pi 插件信息
+     * @return dex 文件名 -> "crc,size"，没有记录时为空
+     */
+    private static Map<String, String> readExtractedDexCrcs(PluginInfo pi) {
+        final Map<String, String> crcs = new LinkedHashMap<>();
+        final File crcFile = getDexesCrcFile(pi);
+        if (!crcFile.isFile()) {
+            return crcs;
         }
 
-        final File extraDexesDir = pi.getExtraDexesDir();
-
-        final int totalDexNumber = getSecondaryDexesCount(pi);
-        List<File> files = new ArrayList<>(totalDexNumber - 1);
-
-        for (int secondaryNumber = 2; secondaryNumber <= totalDexNumber; secondaryNumber++) {
-            File dexFile = new File(extraDexesDir, DEX_PREFIX + secondaryNumber + DEX_SUFFIX);
-            if (dexFile.isFile()) {
-                files.add(dexFile);
-            } else {
-                throw new IOException("Missing extracted secondary dex file '" + dexFile.getPath() + "'");
+        InputStream in = null;
+        try {
+            in = new FileInputStream(crcFile);
+            for (String line : IoUtils.readLines(in)) {
+                final int index = line.indexOf(':');
+                if (index > 0) {
+                    crcs.put(line.substring(0, index), line.substring(index + 1));
+                }
             }
+        } catch (IOException e) {
+            VLog.e(e, "error readExtractedDexCrcs");
+            crcs.clear();
+        } finally {
+            IoUtils.closeQuietly(in);
         }
-
-        return files;
+        return crcs;
     }
 
-    private static List<File> performExtractions(PluginInfo pi) throws IOException {
-        if (PRINT_DETAIL_LOG) {
-            VLog.e("performExtractions");
+    @SuppressFBWarnings("RV_RETURN_VALUE_IGNORED_BAD_PRACTICE")
+    private static void putExtractedDexCrcs(PluginInfo pi, List<ZipEntry> dexEntries) {
+        final StringBuilder sb = new StringBuilder();
+        for (ZipEntry entry : dexEntries) {
+            sb.append(entry.getName()).append(':').append(getDexCrc(entry)).append('\n');
         }
 
-        final File extraDexesDir = pi.getExtraDexesDir();
-        FileUtils.cleanDir(extraDexesDir);
-
-        List<File> files = new ArrayList<>();
-
-        final ZipFile apk = new ZipFile(pi.apkPath);
-
+        final File crcFile = getDexesCrcFile(pi);
+        OutputStream out = null;
         try {
-            int secondaryNumber = 2;
-            ZipEntry dexFile = apk.getEntry(DEX_PREFIX + secondaryNumber + DEX_SUFFIX);
-            while (dexFile != null) {
-                final File outFile = new File(extraDexesDir, dexFile.getName());
-                extractFile(apk, dexFile, outFile);
-                files.add(outFile);
-
-                secondaryNumber++;
-                dexFile = apk.getEntry(DEX_PREFIX + secondaryNumber + DEX_SUFFIX);
-            }
-        } finally {
-            FileUtils.closeZipFileQuietly(apk);
+            out = new FileOutputStream(crcFile);
+            out.write(sb.toString().getBytes(IoUtils.DEFAULT_CHARSET));
+            out.close();
+        } catch (IOException e) {
+            VLog.e(e, "error putExtractedDexCrcs");
+            IoUtils.closeQuietly(out);
+            crcFile.delete();
         }
-
-        return files;
     }
 
-    private static int getSecondaryDexesCount(PluginInfo pi) throws IOException {
-        return FileUtils.readFileToInt(getDexesCountFile(pi));
+    private static File getDexesCrcFile(PluginInfo pi) {
+        return new File(pi.installDir, EXTRA_DEX_CRC_FILE);
     }
 
-    @SuppressFBWarnings("RV_RETURN_VALUE_IGNORED_BAD_PRACTICE")
-    private static void putSecondaryDexesCount(PluginInfo pi, List<File> extractedDexes) {
-        final File dexesCountFile = getDexesCountFile(pi);
-        try {
-            FileUtils.writeIntToFile(dexesCountFile, extractedDexes.size() + 1);
-        } catch (IOException e) {
-            VLog.e(e, "error putSecondaryDexesCount");
-            dexesCountFile.delete();
+    /**
+     * 命中找不到的类名缓存时抛出，不填充调用栈以减少开销
+     */
+    private static final class CachedClassNotFoundException extends ClassNotFoundException {
+        private static final long serialVersionUID = 1L;
+
+        CachedClassNotFoundException(String className) {
+            super(className);
         }
-    }
 
-    private static File getDexesCountFile(PluginInfo pi) {
-        return new File(pi.installDir, EXTRA_DEX_COUNT_FILE);
+        @Override
+        public synchronized Throwable fillInStackTrace() {
+            return this;
+        }
     }
 
-    private static void extractFile(ZipFile zipFile, ZipEntry ze, File outFile) throws IOException {
+    private static void extractFile(String apkPath, String entryName, File outFile) throws IOException {
+        // 每个解压任务使用独立的 ZipFile，避免并行解压时竞争同一文件句柄
+        final ZipFile zipFile = new ZipFile(apkPath);
         InputStream in = null;
         try {
+            final ZipEntry ze = zipFile.getEntry(entryName);
+            if (ze == null) {
+                throw new IOException("Missing secondary dex entry '" + entryName + "' in " + apkPath);
+            }
             in = zipFile.getInputStream(ze);
             FileUtils.copyInputStreamToFile(in, outFile);
             if (PRINT_DETAIL_LOG) {
@@ -335,6 +601,7 @@ public class PluginClassLoader extends DexClassLoader {
             }
         } finally {
             IoUtils.closeQuietly(in);
+            FileUtils.closeZipFileQuietly(zipFile);
         }
     }
 }
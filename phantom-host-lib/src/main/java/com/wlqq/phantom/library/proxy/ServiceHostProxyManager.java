@@ -17,6 +17,7 @@
 package com.wlqq.phantom.library.proxy;
 
 import android.app.Service;
+import android.support.annotation.NonNull;
 import android.support.v4.util.ArrayMap;
 
 import com.wlqq.phantom.library.utils.VLog;
@@ -104,6 +105,21 @@ public enum ServiceHostProxyManager {
         return mProxyServiceInstanceMap.remove(proxyServiceName);
     }
 
+    /**
+     * 是否有指定 ClassLoader 加载的插件 Service 存活
+     *
+     * @param classLoader 插件 ClassLoader
+     * @return true 有存活的插件 Service；false 没有
+     */
+    public boolean hasPluginService(@NonNull ClassLoader classLoader) {
+        for (Service service : mProxyServiceInstanceMap.values()) {
+            if (service.getClass().getClassLoader() == classLoader) {
+                return true;
+            }
+        }
+        return false;
+    }
+
     public void dumpProxyServiceClassMap() {
         VLog.w("============ mProxyServiceClassMap ==============");
         for (Map.Entry<String, String> entry : mProxyServiceClassMap.entrySet()) {
@@ -0,0 +1,155 @@
+/*
+ * Copyright (C) 2017-2018 Manbang Group
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.wlqq.phantom.library.utils;
+
+import android.app.Activity;
+import android.app.Application;
+import android.content.Context;
+import android.os.Bundle;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.MessageQueue;
+import android.support.annotation.NonNull;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+/**
+ * 在进程中第一个 Activity 可见（首次 onResume 之后主线程空闲）后执行任务的 Executor，用于推迟启动路径上非必需的工作
+ * <ul>
+ * <li>第一个 Activity 可见之前提交的任务在主线程中依次执行</li>
+ * <li>第一个 Activity 可见之后提交的任务在提交线程中立即执行</li>
+ * <li>创建后 {@link #MAX_DEFER_MS} 毫秒内仍没有 Activity 可见时（如后台进程），不再推迟</li>
+ * </ul>
+ */
+public final class ActivityVisibleExecutor implements Executor {
+    /**
+     * 最长推迟时间
+     */
+    public static final long MAX_DEFER_MS = 10 * 1000;
+
+    private final Application mApplication;
+    private final Handler mMainHandler = new Handler(Looper.getMainLooper());
+    private final List<Runnable> mPendingTasks = new ArrayList<>();
+    private final LifecycleCallbacks mLifecycleCallbacks = new LifecycleCallbacks();
+    private boolean mVisible;
+
+    /**
+     * 创建 Executor，需在第一个 Activity 启动前（如 {@link Application#onCreate()} 中）创建
+     *
+     * @param context the application context
+     */
+    public ActivityVisibleExecutor(@NonNull Context context) {
+        mApplication = (Application) context.getApplicationContext();
+        mApplication.registerActivityLifecycleCallbacks(mLifecycleCallbacks);
+        mMainHandler.postDelayed(new Runnable() {
+            @Override
+            public void run() {
+                onVisible();
+            }
+        }, MAX_DEFER_MS);
+    }
+
+    @Override
+    public void execute(@NonNull Runnable command) {
+        synchronized (mPendingTasks) {
+            if (!mVisible) {
+                mPendingTasks.add(command);
+                return;
+            }
+        }
+        command.run();
+    }
+
+    /**
+     * 是否已有 Activity 可见
+     *
+     * @return true 已有 Activity 可见或已超过最长推迟时间；否则 false
+     */
+    public boolean isVisible() {
+        synchronized (mPendingTasks) {
+            return mVisible;
+        }
+    }
+
+    private void onVisible() {
+        final List<Runnable> tasks;
+        synchronized (mPendingTasks) {
+            if (mVisible) {
+                return;
+            }
+            mVisible = true;
+            tasks = new ArrayList<>(mPendingTasks);
+            mPendingTasks.clear();
+        }
+
+        mApplication.unregisterActivityLifecycleCallbacks(mLifecycleCallbacks);
+        VLog.v("activity visible, run %d deferred tasks", tasks.size());
+        for (Runnable task : tasks) {
+            try {
+                task.run();
+            } catch (Exception e) {
+                VLog.w(e, "error run deferred task");
+            }
+        }
+    }
+
+    private final class LifecycleCallbacks implements Application.ActivityLifecycleCallbacks {
+        @Override
+        public void onActivityResumed(Activity activity) {
+            // onResume 之后主线程首次空闲时，Activity 已完成首帧绘制
+            Looper.myQueue().addIdleHandler(new MessageQueue.IdleHandler() {
+                @Override
+                public boolean queueIdle() {
+                    onVisible();
+                    return false;
+                }
+            });
+        }
+
+        @Override
+        public void onActivityCreated(Activity activity, Bundle savedInstanceState) {
+            // ignore
+        }
+
+        @Override
+        public void onActivityStarted(Activity activity) {
+            // ignore
+        }
+
+        @Override
+        public void onActivityPaused(Activity activity) {
+            // ignore
+        }
+
+        @Override
+        public void onActivityStopped(Activity activity) {
+            // ignore
+        }
+
+        @Override
+        public void onActivitySaveInstanceState(Activity activity, Bundle outState) {
+            // ignore
+        }
+
+        @Override
+        public void onActivityDestroyed(Activity activity) {
+            // ignore
+        }
+    }
+}
@@ -30,6 +30,8 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
 import java.nio.channels.FileChannel;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
@@ -52,6 +54,9 @@ public final class FileUtils {
      */
     private static final long FILE_COPY_BUFFER_SIZE = ONE_MB * 30;
     private static final int DEFAULT_BUFFER_SIZE = 1024 * 4;
+    private static final int COPY_DIGEST_BUFFER_SIZE = 1024 * 256;
+    // 内存映射计算 md5 时每次映射的区域大小，避免一次映射大文件占用过多虚拟地址空间
+    private static final long MAP_DIGEST_REGION_SIZE = ONE_MB * 8;
     private static final int EOF = -1;
 
     private FileUtils() {
@@ -208,6 +213,61 @@ public final class FileUtils {
         }
     }
 
+    /**
+     * 拷贝文件，并在同一次读取中计算文件的 md5，避免拷贝后再次读取整个文件
+     *
+     * @param srcFile  the validated source file, must not be {@code null}
+     * @param destFile the validated destination file, must not be {@code null}
+     * @return the md5 string for the source file
+     * @throws IOException if an error occurs
+     */
+    @NonNull
+    public static String copyFileAndCalculateMd5(File srcFile, File destFile) throws IOException {
+        if (destFile.exists() && destFile.isDirectory()) {
+            throw new IOException("Destination '" + destFile + "' exists but is a directory");
+        }
+
+        final MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("MD5");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IOException("MD5 digest unavailable", e);
+        }
+
+        FileInputStream fis = null;
+        FileOutputStream fos = null;
+        FileChannel input = null;
+        FileChannel output = null;
+        try {
+            fis = new FileInputStream(srcFile);
+            fos = new FileOutputStream(destFile);
+            input = fis.getChannel();
+            output = fos.getChannel();
+            final ByteBuffer buffer = ByteBuffer.allocateDirect(COPY_DIGEST_BUFFER_SIZE);
+            while (input.read(buffer) != EOF) {
+                buffer.flip();
+                digest.update(buffer);
+                buffer.rewind();
+                while (buffer.hasRemaining()) {
+                    output.write(buffer);
+                }
+                buffer.clear();
+            }
+        } finally {
+            IoUtils.closeQuietly(output);
+            IoUtils.closeQuietly(fos);
+            IoUtils.closeQuietly(input);
+            IoUtils.closeQuietly(fis);
+        }
+
+        if (srcFile.length() != destFile.length()) {
+            throw new IOException("Failed to copy full contents from '"
+                    + srcFile + "' to '" + destFile + "'");
+        }
+
+        return toMd5String(digest.digest());
+    }
+
     public static void closeZipFileQuietly(@Nullable ZipFile zipFile) {
         if (zipFile != null) {
             try {
@@ -260,12 +320,7 @@ public final class FileUtils {
             while ((read = inputStream.read(buffer)) > 0) {
                 digest.update(buffer, 0, read);
             }
-            byte[] md5sum = digest.digest();
-            BigInteger bigInt = new BigInteger(1, md5sum);
-            String output = bigInt.toString(16);
-            // Fill to 32 chars
-            output = String.format("%32s", output).replace(' ', '0');
-            return output;
+            return toMd5String(digest.digest());
         } catch (IOException e) {
             VLog.w(e, "Unable to process file for MD5");
             return null;
@@ -274,6 +329,13 @@ public final class FileUtils {
         }
     }
 
+    private static String toMd5String(byte[] md5sum) {
+        BigInteger bigInt = new BigInteger(1, md5sum);
+        String output = bigInt.toString(16);
+        // Fill to 32 chars
+        return String.format("%32s", output).replace(' ', '0');
+    }
+
     /**
      * Calculate the md5 string for the given file
      *
@@ -289,4 +351,43 @@ public final class FileUtils {
             return null;
         }
     }
+
+    /**
+     * 通过内存映射分段读取文件并计算 md5，相比流式读取减少一次内核到用户空间的数据拷贝
+     *
+     * @param file the given file
+     * @return the md5 string for the given file or <code>null</code> if error
+     */
+    @Nullable
+    public static String calculateMd5Mapped(@NonNull File file) {
+        final MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("MD5");
+        } catch (NoSuchAlgorithmException e) {
+            VLog.w(e, "Exception while getting digest");
+            return null;
+        }
+
+        FileInputStream fis = null;
+        FileChannel channel = null;
+        try {
+            fis = new FileInputStream(file);
+            channel = fis.getChannel();
+            final long size = channel.size();
+            long position = 0;
+            while (position < size) {
+                final long regionSize = Math.min(MAP_DIGEST_REGION_SIZE, size - position);
+                final MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, position, regionSize);
+                digest.update(buffer);
+                position += regionSize;
+            }
+            return toMd5String(digest.digest());
+        } catch (IOException e) {
+            VLog.w(e, "Unable to map file for MD5");
+            return null;
+        } finally {
+            IoUtils.closeQuietly(channel);
+            IoUtils.closeQuietly(fis);
+        }
+    }
 }
@@ -18,10 +18,23 @@ package com.wlqq.phantom.library.utils;
 
 import android.os.Handler;
 import android.os.Looper;
+import android.os.SystemClock;
+
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 public final class ThreadUtils {
     private static Handler sMainHandler = new Handler(Looper.getMainLooper());
     private static long sMainThreadId = sMainHandler.getLooper().getThread().getId();
+    // 主线程在 awaitFuture 中等待时，每次等待的最长时间(ms)，之后执行 sUiThreadTasks 中的任务
+    private static final long UI_THREAD_WAIT_SLICE_MS = 10;
+    // 通过 runOnUiThreadOrWhileWaiting 提交，尚未执行的任务
+    private static final BlockingQueue<Runnable> sUiThreadTasks = new LinkedBlockingQueue<>();
 
     private ThreadUtils() {
     }
@@ -34,6 +47,68 @@ public final class ThreadUtils {
         }
     }
 
+    /**
+     * 在主线程中执行任务。若主线程正在 {@link #awaitFuture(Future, long, TimeUnit)} 中等待，
+     * 则由等待中的主线程直接执行，避免当前线程与主线程互相等待
+     *
+     * @param action 任务，只会执行一次
+     */
+    public static void runOnUiThreadOrWhileWaiting(final Runnable action) {
+        if (isInUiThread()) {
+            action.run();
+            return;
+        }
+
+        final Runnable task = new Runnable() {
+            private final AtomicBoolean mRan = new AtomicBoolean();
+
+            @Override
+            public void run() {
+                if (mRan.compareAndSet(false, true)) {
+                    sUiThreadTasks.remove(this);
+                    action.run();
+                }
+            }
+        };
+        sUiThreadTasks.add(task);
+        sMainHandler.post(task);
+    }
+
+    /**
+     * 等待 Future 完成。在主线程中等待时，期间执行通过 {@link #runOnUiThreadOrWhileWaiting(Runnable)} 提交的任务
+     *
+     * @param future  等待的 Future
+     * @param timeout 最长等待时间，小于等于 0 时一直等待
+     * @param unit    timeout 的单位
+     * @param <V>     结果类型
+     * @return Future 的结果
+     * @throws InterruptedException 等待被中断
+     * @throws ExecutionException   Future 执行异常
+     * @throws TimeoutException     等待超时
+     */
+    public static <V> V awaitFuture(Future<V> future, long timeout, TimeUnit unit)
+            throws InterruptedException, ExecutionException, TimeoutException {
+        if (!isInUiThread()) {
+            return timeout > 0 ? future.get(timeout, unit) : future.get();
+        }
+
+        final long deadline = timeout > 0 ? SystemClock.elapsedRealtime() + unit.toMillis(timeout) : Long.MAX_VALUE;
+        while (true) {
+            Runnable task;
+            while ((task = sUiThreadTasks.poll()) != null) {
+                task.run();
+            }
+
+            try {
+                return future.get(UI_THREAD_WAIT_SLICE_MS, TimeUnit.MILLISECONDS);
+            } catch (TimeoutException e) {
+                if (SystemClock.elapsedRealtime() >= deadline) {
+                    throw e;
+                }
+            }
+        }
+    }
+
     public static boolean isInUiThread() {
         return Thread.currentThread().getId() == sMainThreadId;
     }
@@ -0,0 +1,64 @@
+/*
+ * Copyright (C) 2017-2018 Manbang Group
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.wlqq.phantom.library.pm;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+
+
+public class PluginLaunchHistoryTest {
+    private static final long NOW = 1500000000000L;
+
+    @Test
+    public void rank_filtersAndSorts() throws Exception {
+        final List<PluginLaunchHistory.Entry> entries = Arrays.asList(
+                new PluginLaunchHistory.Entry("com.a", 8, 5000, NOW),
+                new PluginLaunchHistory.Entry("com.b", 10, 1000, NOW),
+                // 使用概率低于 0.5
+                new PluginLaunchHistory.Entry("com.c", 2, 100, NOW),
+                // 超过 7 天未使用
+                new PluginLaunchHistory.Entry("com.d", 10, 100, NOW - PluginLaunchHistory.EXPIRE_MS - 1),
+                new PluginLaunchHistory.Entry("com.e", 9, 1000, NOW));
+
+        Assert.assertEquals(Arrays.asList("com.b", "com.e", "com.a"),
+                PluginLaunchHistory.rank(entries, 10, 0.5f, NOW));
+    }
+
+    @Test
+    public void rank_noSession() throws Exception {
+        final List<PluginLaunchHistory.Entry> entries = Arrays.asList(
+                new PluginLaunchHistory.Entry("com.a", 1, 5000, NOW));
+
+        Assert.assertTrue(PluginLaunchHistory.rank(entries, 0, 0.5f, NOW).isEmpty());
+    }
+
+    @Test
+    public void parseEntry() throws Exception {
+        final PluginLaunchHistory.Entry entry = new PluginLaunchHistory.Entry("com.a", 3, 1200, NOW);
+        final PluginLaunchHistory.Entry parsed = PluginLaunchHistory.Entry.parse("com.a", entry.toString());
+
+        Assert.assertNotNull(parsed);
+        Assert.assertEquals(3, parsed.launchCount);
+        Assert.assertEquals(1200, parsed.avgDelayMs);
+        Assert.assertEquals(NOW, parsed.lastLaunchTime);
+        Assert.assertNull(PluginLaunchHistory.Entry.parse("com.a", "3,1200"));
+    }
+}
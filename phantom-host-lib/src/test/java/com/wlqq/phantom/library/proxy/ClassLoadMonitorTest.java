@@ -0,0 +1,45 @@
+/*
+ * Copyright (C) 2017-2018 Manbang Group
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.wlqq.phantom.library.proxy;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+
+public class ClassLoadMonitorTest {
+
+    @Test
+    public void getClassNames() throws Exception {
+        final ClassLoadMonitor monitor = new ClassLoadMonitor();
+        monitor.onClassLoaded("com.wlqq.B", ClassLoadMonitor.SOURCE_PLUGIN, 10);
+        monitor.onClassLoaded("java.lang.String", ClassLoadMonitor.SOURCE_BOOT, 10);
+        monitor.onClassLoaded("com.wlqq.A", ClassLoadMonitor.SOURCE_PLUGIN, 10);
+        monitor.onClassLoaded("com.wlqq.B", ClassLoadMonitor.SOURCE_PLUGIN, 10);
+        monitor.onClassNotFound("com.wlqq.C", 10);
+
+        // 按首次加载顺序排列，不重复
+        Assert.assertEquals(Arrays.asList("com.wlqq.B", "com.wlqq.A"),
+                monitor.getClassNames(ClassLoadMonitor.SOURCE_PLUGIN, 0, TimeUnit.MILLISECONDS));
+        Assert.assertEquals(Arrays.asList("java.lang.String"),
+                monitor.getClassNames(ClassLoadMonitor.SOURCE_BOOT, 1, TimeUnit.HOURS));
+        Assert.assertTrue(monitor.getClassNames(ClassLoadMonitor.SOURCE_PARENT, 0, TimeUnit.MILLISECONDS).isEmpty());
+    }
+}
@@ -0,0 +1,74 @@
+/*
+ * Copyright (C) 2017-2018 Manbang Group
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.wlqq.phantom.library.proxy;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+
+public class ClassLoadRouterTest {
+    private final ClassLoadRouter mRouter = new ClassLoadRouter("com.wlqq.phantom.plugin.view",
+            Arrays.asList("okhttp3", "okio", "com.wlqq.utils", "com.wlqq"));
+
+    @Test
+    public void route_boot() throws Exception {
+        Assert.assertEquals(ClassLoadRouter.ROUTE_BOOT, mRouter.route("java.lang.String"));
+        Assert.assertEquals(ClassLoadRouter.ROUTE_BOOT, mRouter.route("android.app.Activity"));
+        Assert.assertEquals(ClassLoadRouter.ROUTE_BOOT, mRouter.route("org.json.JSONObject"));
+        // 旧版本 boot classpath 中的库类
+        Assert.assertEquals(ClassLoadRouter.ROUTE_BOOT, mRouter.route("junit.framework.Assert"));
+        Assert.assertEquals(ClassLoadRouter.ROUTE_BOOT, mRouter.route("org.apache.commons.logging.Log"));
+        Assert.assertEquals(ClassLoadRouter.ROUTE_BOOT, mRouter.route("org.kxml2.io.KXmlParser"));
+        Assert.assertEquals(ClassLoadRouter.ROUTE_BOOT, mRouter.route("com.android.internal.R"));
+        Assert.assertEquals(ClassLoadRouter.ROUTE_BOOT, mRouter.route("com.android.org.conscrypt.OpenSSLProvider"));
+    }
+
+    @Test
+    public void route_parent() throws Exception {
+        Assert.assertEquals(ClassLoadRouter.ROUTE_PARENT, mRouter.route("okhttp3.OkHttpClient"));
+        Assert.assertEquals(ClassLoadRouter.ROUTE_PARENT, mRouter.route("okio.Buffer"));
+        Assert.assertEquals(ClassLoadRouter.ROUTE_PARENT, mRouter.route("com.wlqq.utils.StringUtils"));
+    }
+
+    @Test
+    public void route_plugin() throws Exception {
+        Assert.assertEquals(ClassLoadRouter.ROUTE_PLUGIN, mRouter.route("android.support.v4.app.Fragment"));
+        Assert.assertEquals(ClassLoadRouter.ROUTE_PLUGIN, mRouter.route("okhttp3x.Foo"));
+        // 包含插件包名的包（com.wlqq）不路由到 parent
+        Assert.assertEquals(ClassLoadRouter.ROUTE_PLUGIN, mRouter.route("com.wlqq.phantom.plugin.view.MainActivity"));
+        Assert.assertEquals(ClassLoadRouter.ROUTE_PLUGIN, mRouter.route("com.wlqq.phantom.Foo"));
+        // 由 App 自身打包的 com.android.* 库
+        Assert.assertEquals(ClassLoadRouter.ROUTE_PLUGIN, mRouter.route("com.android.volley.RequestQueue"));
+        Assert.assertEquals(ClassLoadRouter.ROUTE_PLUGIN,
+                mRouter.route("com.android.billingclient.api.BillingClient"));
+        // 宿主公共库不按 groupId 路由，其包名（com.google.gson）与 groupId（com.google.code.gson）不一致
+        Assert.assertEquals(ClassLoadRouter.ROUTE_PLUGIN, mRouter.route("com.google.gson.Gson"));
+        Assert.assertEquals(ClassLoadRouter.ROUTE_PLUGIN, mRouter.route("io.reactivex.Observable"));
+    }
+
+    @Test
+    public void route_noParentPackages() throws Exception {
+        final ClassLoadRouter router = new ClassLoadRouter("com.wlqq.phantom.plugin.view",
+                Collections.<String>emptyList());
+        Assert.assertEquals(ClassLoadRouter.ROUTE_PLUGIN, router.route("okhttp3.OkHttpClient"));
+        Assert.assertEquals(ClassLoadRouter.ROUTE_BOOT, router.route("java.lang.String"));
+    }
+}
@@ -20,6 +20,7 @@ package com.wlqq.phantom.library.utils;
 import org.junit.Assert;
 import org.junit.Test;
 
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 
@@ -30,6 +31,23 @@ public class FileUtilsTest {
                 FileUtils.calculateMd5(getInputStream("com.wlqq.phantom.plugin.sample1_1.0.0.apk")));
     }
 
+    @Test
+    public void testCopyFileAndCalculateMd5() throws Exception {
+        final File src = File.createTempFile("src", ".apk");
+        final File dest = File.createTempFile("dest", ".apk");
+        try {
+            FileUtils.copyInputStreamToFile(getInputStream("com.wlqq.phantom.plugin.sample1_1.0.0.apk"), src);
+
+            Assert.assertEquals("2a66a876a40630539e220890dc897550", FileUtils.copyFileAndCalculateMd5(src, dest));
+            Assert.assertEquals(src.length(), dest.length());
+            Assert.assertEquals("2a66a876a40630539e220890dc897550", FileUtils.calculateMd5(dest));
+            Assert.assertEquals("2a66a876a40630539e220890dc897550", FileUtils.calculateMd5Mapped(dest));
+        } finally {
+            Assert.assertTrue(src.delete());
+            Assert.assertTrue(dest.delete());
+        }
+    }
+
     private InputStream getInputStream(String filename) throws IOException {
         return getClass().getClassLoader().getResourceAsStream(filename);
     }